@@ -0,0 +1,99 @@
+package Benchmarks;
+
+import Server.BoardGrid;
+import Server.GameManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the board engine: dropping discs, detecting a win and rendering the board.
+ * A move cannot be undone, so move benchmarks replay a whole sequence from an empty
+ * board per invocation and report the cost per move.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardGridBenchmark {
+
+    private static final int ROWS = 6;
+    private static final int COLS = 9;
+    private static final int FULL_BOARD_MOVES = ROWS * COLS;
+
+    // Builds a descending diagonal for player 0 on stacks of player 1 discs.
+    // The last disc lands in the middle of the diagonal, the cell with the most windows through it.
+    private static final int[] DIAGONAL_COLUMNS = {0, 0, 0, 0, 0, 1, 1, 1, 1, 3, 3, 4, 2, 2, 2};
+    private static final int[] DIAGONAL_PLAYERS = {1, 1, 1, 1, 0, 1, 1, 1, 0, 1, 0, 0, 1, 1, 0};
+    private static final int DIAGONAL_MOVES = 15;
+
+    private BoardGrid boardGrid;
+    private BoardGrid renderedBoard;
+
+    @Setup
+    public void setUp() {
+        // The board reports a win to its game, which needs players to name the winner.
+        GameManager gameManager = new GameManager();
+        gameManager.addPlayer("first");
+        gameManager.addPlayer("second");
+        boardGrid = new BoardGrid(gameManager);
+
+        renderedBoard = new BoardGrid(gameManager);
+        for (int move = 0; move < FULL_BOARD_MOVES / 2; move++) {
+            renderedBoard.makeMove(move % COLS, move % 2);
+        }
+    }
+
+    /**
+     * Fills the whole board, alternating players column by column.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FULL_BOARD_MOVES)
+    public void makeMove(Blackhole blackhole) {
+        boardGrid.initializeMatrix();
+        for (int move = 0; move < FULL_BOARD_MOVES; move++) {
+            blackhole.consume(boardGrid.makeMove(move % COLS, move % 2));
+        }
+    }
+
+    /**
+     * Plays the moves leading up to a descending diagonal, then the winning disc.
+     * This covers what used to be checkForWinningLine: a win is detected inside makeMove.
+     */
+    @Benchmark
+    @OperationsPerInvocation(DIAGONAL_MOVES)
+    public void makeMoveDiagonalWin(Blackhole blackhole) {
+        boardGrid.initializeMatrix();
+        for (int move = 0; move < DIAGONAL_MOVES; move++) {
+            blackhole.consume(boardGrid.makeMove(DIAGONAL_COLUMNS[move], DIAGONAL_PLAYERS[move]));
+        }
+    }
+
+    @Benchmark
+    public int countOpenWindows() {
+        return renderedBoard.countOpenWindows(0, 3) + renderedBoard.countOpenWindows(1, 4);
+    }
+
+    @Benchmark
+    public String getGridAsText() {
+        return renderedBoard.getGridAsText();
+    }
+
+    @Benchmark
+    public byte[] getGridAsBytes() {
+        return renderedBoard.getGridAsBytes();
+    }
+}
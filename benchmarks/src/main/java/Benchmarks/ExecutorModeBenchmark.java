@@ -0,0 +1,159 @@
+package Benchmarks;
+
+import Server.networking.ExecutorMode;
+import Server.networking.WebServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the WebServer's fixed handler pool with one virtual thread per exchange.
+ * Each simulated client keeps exactly one /state request in flight against its own
+ * game and sends the next one as soon as the previous answer arrives, so the number
+ * of clients is the number of concurrent requests the server has to absorb.
+ *
+ * Each mode runs twice: once with the active clients alone, and once with parked clients
+ * on top. A parked client holds a /state long poll with the game's current version open
+ * until the server's long-poll timeout, then opens the next one, the way waiting players do.
+ * Only the active clients are measured, which shows what the held-open polls cost them.
+ *
+ * Usage: ExecutorModeBenchmark [clients] [seconds per run] [parked clients]
+ * The virtual thread mode is skipped when not running on JDK 21 or later.
+ */
+public class ExecutorModeBenchmark {
+
+    private static final int DEFAULT_CLIENTS = 2000;
+    private static final int DEFAULT_SECONDS = 20;
+    private static final int DEFAULT_PARKED_CLIENTS = 2000;
+    private static final int WARMUP_SECONDS = 5;
+    private static final int FIRST_PORT = 8190;
+
+    public static void main(String[] args) throws Exception {
+        int clients = (args.length >= 1) ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+        int seconds = (args.length >= 2) ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        int parkedClients = (args.length >= 3) ? Integer.parseInt(args[2]) : DEFAULT_PARKED_CLIENTS;
+
+        System.out.printf("%-16s %8s %10s %12s %10s %10s %10s%n",
+                "mode", "parked", "requests", "req/s", "p50 (us)", "p99 (us)", "max (us)");
+        int port = FIRST_PORT;
+        for (ExecutorMode mode : ExecutorMode.values()) {
+            WebServer server = new WebServer(port, mode);
+            try {
+                server.startServer();
+            } catch (IllegalStateException e) {
+                System.out.printf("%-16s skipped: %s%n", mode, e.getMessage());
+                continue;
+            }
+            try {
+                run(mode, "http://localhost:" + port, clients, 0, seconds);
+                run(mode, "http://localhost:" + port, clients, parkedClients, seconds);
+            } finally {
+                server.shutdown();
+            }
+            port++;
+        }
+        System.exit(0);
+    }
+
+    private static void run(ExecutorMode mode, String address, int clients, int parkedClients, int seconds)
+            throws Exception {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+
+        // Two players per game, so every /state returns a full, non-waiting game.
+        String[] gameIds = new String[(clients + 1) / 2];
+        for (int i = 0; i < gameIds.length; i++) {
+            HttpResponse<String> joined = httpClient.send(post(address + "/join?game=new", "bench-a"),
+                    HttpResponse.BodyHandlers.ofString());
+            gameIds[i] = joined.headers().firstValue("X-Game-Id").orElseThrow();
+            httpClient.send(post(address + "/join?game=" + gameIds[i], "bench-b"),
+                    HttpResponse.BodyHandlers.discarding());
+        }
+
+        // Nobody moves, so the polls stay parked until the server's long-poll timeout.
+        String[] pollAddresses = new String[Math.min(parkedClients, gameIds.length)];
+        for (int i = 0; i < pollAddresses.length; i++) {
+            String state = address + "/state?game=" + gameIds[i];
+            String version = httpClient.send(HttpRequest.newBuilder().GET().uri(URI.create(state)).build(),
+                    HttpResponse.BodyHandlers.discarding()).headers().firstValue("X-State-Version").orElseThrow();
+            pollAddresses[i] = state + "&since=" + version;
+        }
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+        for (int client = 0; client < parkedClients; client++) {
+            HttpRequest poll = HttpRequest.newBuilder()
+                    .GET()
+                    .uri(URI.create(pollAddresses[client % pollAddresses.length]))
+                    .build();
+            keepParked(httpClient, poll, end);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        AtomicLong completed = new AtomicLong();
+        CountDownLatch finished = new CountDownLatch(clients);
+        for (int client = 0; client < clients; client++) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .GET()
+                    .uri(URI.create(address + "/state?game=" + gameIds[client / 2]))
+                    .build();
+            sendNext(httpClient, request, warmupEnd, end, histogram, completed, finished);
+        }
+        finished.await();
+
+        long requests = completed.get();
+        System.out.printf("%-16s %8d %10d %12.0f %10d %10d %10d%n", mode, parkedClients, requests,
+                requests / (double) seconds, histogram.valueAtPercentile(50), histogram.valueAtPercentile(99),
+                histogram.valueAtPercentile(100));
+        clientExecutor.shutdownNow();
+    }
+
+    /**
+     * Sends one request and chains the next one onto its completion until the run ends.
+     * Only requests started after the warmup are recorded.
+     */
+    private static void sendNext(HttpClient httpClient, HttpRequest request, long warmupEnd, long end,
+                                 LatencyHistogram histogram, AtomicLong completed, CountDownLatch finished) {
+        long start = System.nanoTime();
+        if (start >= end) {
+            finished.countDown();
+            return;
+        }
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error == null && start >= warmupEnd) {
+                        histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                        completed.incrementAndGet();
+                    }
+                    sendNext(httpClient, request, warmupEnd, end, histogram, completed, finished);
+                });
+    }
+
+    /**
+     * Sends a long poll, and the next one each time the server answers, until the run ends.
+     * The server's shutdown ends the polls still open after a mode's last run.
+     */
+    private static void keepParked(HttpClient httpClient, HttpRequest poll, long end) {
+        if (System.nanoTime() >= end) return;
+        httpClient.sendAsync(poll, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error == null) keepParked(httpClient, poll, end);
+                });
+    }
+
+    private static HttpRequest post(String url, String body) {
+        return HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .uri(URI.create(url))
+                .build();
+    }
+}
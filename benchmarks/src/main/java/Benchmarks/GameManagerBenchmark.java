@@ -0,0 +1,65 @@
+package Benchmarks;
+
+import Server.GameManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the GameManager: the player list text sent on /join, snapshot reads
+ * done by every /state, and moves applied through the game's command queue.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameManagerBenchmark {
+
+    private static final int COLS = 9;
+    private static final int MOVES_PER_GAME = 54;
+
+    private GameManager gameManager;
+
+    @Setup
+    public void setUp() {
+        gameManager = new GameManager();
+        gameManager.addPlayer("first");
+        gameManager.addPlayer("second");
+    }
+
+    @Benchmark
+    public String getPlayers() {
+        return gameManager.getPlayers();
+    }
+
+    @Benchmark
+    public String getPlayerTurn() {
+        return gameManager.getSnapshot().getPlayerTurn();
+    }
+
+    /**
+     * Quits and rejoins the second player, which clears the board, then fills it.
+     */
+    @Benchmark
+    @OperationsPerInvocation(MOVES_PER_GAME)
+    public long handlePlayerMove() {
+        gameManager.removePlayer("second");
+        gameManager.addPlayer("second");
+        for (int move = 0; move < MOVES_PER_GAME; move++) {
+            gameManager.handlePlayerMove(move % COLS);
+        }
+        return gameManager.getStateVersion();
+    }
+}
@@ -0,0 +1,227 @@
+package Benchmarks;
+
+import Server.BoardGeometry;
+import Server.networking.WebServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hammers /join, /move and /quit from a growing number of threads and checks that
+ * no update is lost. Each run has three phases:
+ *
+ *  - seats: every thread races to join the same fresh games; each game must seat exactly two.
+ *  - shared: every thread sends moves for either player to one shared game, which refuses those
+ *    out of turn or into a full column; its state version must end up at two joins plus the number
+ *    of moves the server acknowledged.
+ *  - games: every thread plays its own games (join twice, move, check state, quit twice);
+ *    each game's version must match its own requests. This is the phase that should scale
+ *    with cores, since separate games never wait for each other.
+ *
+ * Usage: GameStressBenchmark [seconds per phase] [max threads]
+ */
+public class GameStressBenchmark {
+
+    private static final int DEFAULT_SECONDS = 5;
+    private static final int FIRST_PORT = 8290;
+    private static final int MOVES_PER_GAME = 20;
+    private static final int SEAT_RACES = 50;
+    // The shared game gets the largest board, so it takes long to fill up.
+    private static final int SHARED_BOARD_SIZE = BoardGeometry.MAX_SIZE;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    private final String address;
+
+    private GameStressBenchmark(String address) {
+        this.address = address;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = (args.length >= 1) ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+        int maxThreads = (args.length >= 2) ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors() * 2;
+
+        System.out.printf("%8s %14s %14s %14s %8s%n", "threads", "seats ok", "shared mv/s", "games req/s", "lost");
+        int port = FIRST_PORT;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            WebServer server = new WebServer(port);
+            server.startServer();
+            try {
+                GameStressBenchmark benchmark = new GameStressBenchmark("http://localhost:" + port);
+                AtomicInteger lost = new AtomicInteger();
+                int seatRacesOk = benchmark.raceForSeats(threads, lost);
+                double sharedMoves = benchmark.moveInSharedGame(threads, seconds, lost);
+                double gameRequests = benchmark.playSeparateGames(threads, seconds, lost);
+                System.out.printf("%8d %14s %14.0f %14.0f %8d%n", threads, seatRacesOk + "/" + SEAT_RACES,
+                        sharedMoves, gameRequests, lost.get());
+            } finally {
+                server.shutdown();
+            }
+            port++;
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return Number of games that ended up with exactly two players.
+     */
+    private int raceForSeats(int threads, AtomicInteger lost) throws Exception {
+        int correct = 0;
+        for (int race = 0; race < SEAT_RACES; race++) {
+            String gameId = gameId(newGame("host"));
+            List<Callable<Boolean>> joins = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String name = "guest-" + t;
+                joins.add(() -> send("/join?game=" + gameId, name).headers().firstValue("X-Game-Id").isPresent());
+            }
+            int seated = 1;
+            for (boolean joined : runAll(joins)) {
+                if (joined) seated++;
+            }
+            int expected = Math.min(2, threads + 1);
+            if (seated == expected) {
+                correct++;
+            } else {
+                lost.incrementAndGet();
+            }
+        }
+        return correct;
+    }
+
+    /**
+     * Ends early if the board fills up, since the server refuses moves into a full column.
+     *
+     * @return Acknowledged moves per second on a single contended game.
+     */
+    private double moveInSharedGame(int threads, int seconds, AtomicInteger lost) throws Exception {
+        HttpResponse<String> first = send("/join?game=new&rows=" + SHARED_BOARD_SIZE + "&cols=" + SHARED_BOARD_SIZE,
+                "first");
+        String gameId = gameId(first);
+        String[] tokens = {token(first), token(send("/join?game=" + gameId, "second"))};
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        List<Callable<Integer>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int firstColumn = t % SHARED_BOARD_SIZE;
+            int firstPlayer = t % 2;
+            workers.add(() -> {
+                int moves = 0;
+                int column = firstColumn;
+                int fullColumns = 0;
+                for (int attempt = firstPlayer; System.nanoTime() < end && fullColumns < SHARED_BOARD_SIZE;
+                     attempt++) {
+                    int status = send("/move", tokens[attempt % 2], String.valueOf(column + 1)).statusCode();
+                    if (status == 200) {
+                        moves++;
+                    } else if (status == 400) {
+                        // Columns only fill up in this phase, so once every one was full, the board is.
+                        column = (column + 1) % SHARED_BOARD_SIZE;
+                        fullColumns++;
+                    }
+                }
+                return moves;
+            });
+        }
+        int moves = 0;
+        for (int workerMoves : runAll(workers)) {
+            moves += workerMoves;
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        if (stateVersion(gameId) != 2 + moves) lost.incrementAndGet();
+        return moves / elapsedSeconds;
+    }
+
+    /**
+     * @return Requests per second with every thread playing its own games.
+     */
+    private double playSeparateGames(int threads, int seconds, AtomicInteger lost) throws Exception {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Callable<Integer>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(() -> {
+                int requests = 0;
+                while (System.nanoTime() < end) {
+                    HttpResponse<String> first = newGame("first");
+                    String gameId = gameId(first);
+                    String[] tokens = {token(first), token(send("/join?game=" + gameId, "second"))};
+                    for (int move = 0; move < MOVES_PER_GAME; move++) {
+                        send("/move", tokens[move % 2], String.valueOf(move % 9 + 1));
+                    }
+                    if (stateVersion(gameId) != 2 + MOVES_PER_GAME) lost.incrementAndGet();
+                    send("/quit", tokens[1], "second");
+                    send("/quit", tokens[0], "first");
+                    requests += 5 + MOVES_PER_GAME;
+                }
+                return requests;
+            });
+        }
+        int requests = 0;
+        for (int workerRequests : runAll(workers)) {
+            requests += workerRequests;
+        }
+        return requests / (double) seconds;
+    }
+
+    private static <T> List<T> runAll(List<Callable<T>> tasks) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : threads.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    private HttpResponse<String> newGame(String playerName) throws Exception {
+        return send("/join?game=new", playerName);
+    }
+
+    private static String gameId(HttpResponse<String> joined) {
+        return joined.headers().firstValue("X-Game-Id").orElseThrow();
+    }
+
+    private static String token(HttpResponse<String> joined) {
+        return joined.headers().firstValue("X-Session-Token").orElseThrow();
+    }
+
+    private long stateVersion(String gameId) throws Exception {
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder()
+                        .GET()
+                        .uri(URI.create(address + "/state?game=" + gameId))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        return Long.parseLong(response.headers().firstValue("X-State-Version").orElseThrow());
+    }
+
+    private HttpResponse<String> send(String endpoint, String body) throws Exception {
+        return httpClient.send(HttpRequest.newBuilder()
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .uri(URI.create(address + endpoint))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String endpoint, String sessionToken, String body) throws Exception {
+        return httpClient.send(HttpRequest.newBuilder()
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .header("X-Session-Token", sessionToken)
+                        .uri(URI.create(address + endpoint))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,31 @@
+package Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler, so every result comes with its
+ * allocation rate per operation (gc.alloc.rate.norm, in bytes/op) next to ops/s.
+ * Results are also written to jmh-result.json, to keep as a baseline and compare
+ * against after an engine or protocol change.
+ *
+ * Accepts the usual JMH command line, e.g. a benchmark name pattern: "BoardGrid".
+ */
+public class JmhBenchmarks {
+
+    private static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULT_FILE)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,315 @@
+package Benchmarks;
+
+import Client.networking.WebClient;
+
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Drives simulated player pairs against a running WebServer through WebClient, the way
+ * real clients play: both players join a fresh game, then the player on turn checks
+ * /state and sends a /move until the game is won or the board is full, and both quit.
+ * Pairs arrive at a fixed rate and keep playing games until the run ends.
+ *
+ * Every request has an intended start time on a fixed schedule (the pair's arrival plus
+ * one think time per action). Latency is measured from that intended time, not from when
+ * the request actually went out, so a server stall also counts against every request that
+ * should have been sent during it. Without this correction for coordinated omission, a
+ * stalled server would just slow the load down and hide its own worst latencies; the raw
+ * p99 from the actual send time is reported next to the corrected one for comparison.
+ * A request the server answers with a 4xx or 5xx status counts as an error, not as a latency.
+ *
+ * Games are random unless a script file is given, holding one recorded game per line as
+ * columns counted from 1, separated by spaces or commas. Lines starting with '#' are skipped.
+ *
+ * Usage: LoadGenerator [port] [pairs] [pairs per second] [seconds] [think millis] [script file]
+ */
+public class LoadGenerator {
+
+    private static final int DEFAULT_PORT = 8082;
+    private static final int DEFAULT_PAIRS = 1000;
+    private static final double DEFAULT_ARRIVALS_PER_SECOND = 100;
+    private static final int DEFAULT_SECONDS = 30;
+    private static final long DEFAULT_THINK_MILLIS = 100;
+    // Time to let the last games finish and quit after the run ends.
+    private static final long DRAIN_SECONDS = 60;
+
+    private static final String[] ENDPOINTS = {"/join", "/state", "/move", "/quit"};
+
+    private final String address;
+    private final WebClient webClient = new WebClient();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+    private final long thinkNanos;
+    private final List<int[]> script;
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+    private long end;
+
+    private LoadGenerator(String address, long thinkMillis, List<int[]> script) {
+        this.address = address;
+        this.thinkNanos = TimeUnit.MILLISECONDS.toNanos(thinkMillis);
+        this.script = script;
+        for (String endpoint : ENDPOINTS) {
+            stats.put(endpoint, new EndpointStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = (args.length >= 1) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int pairs = (args.length >= 2) ? Integer.parseInt(args[1]) : DEFAULT_PAIRS;
+        double arrivalsPerSecond = (args.length >= 3) ? Double.parseDouble(args[2]) : DEFAULT_ARRIVALS_PER_SECOND;
+        int seconds = (args.length >= 4) ? Integer.parseInt(args[3]) : DEFAULT_SECONDS;
+        long thinkMillis = (args.length >= 5) ? Long.parseLong(args[4]) : DEFAULT_THINK_MILLIS;
+        List<int[]> script = (args.length >= 6) ? readScript(args[5]) : null;
+
+        String address = "http://localhost:" + port;
+        LoadGenerator generator = new LoadGenerator(address, thinkMillis, script);
+        try {
+            generator.webClient.sendStatusCheck(address + "/status").get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.out.println("No server is answering on " + address + ": " + e);
+            System.exit(1);
+        }
+        System.out.printf("%d pairs arriving at %.1f/s, %ds, %dms think time, %s games against %s%n",
+                pairs, arrivalsPerSecond, seconds, thinkMillis, (script == null) ? "random" : "scripted", address);
+        generator.run(pairs, arrivalsPerSecond, seconds);
+        System.exit(0);
+    }
+
+    private void run(int pairs, double arrivalsPerSecond, int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        end = start + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch finished = new CountDownLatch(pairs);
+        long arrivalInterval = (long) (TimeUnit.SECONDS.toNanos(1) / arrivalsPerSecond);
+        for (int pair = 0; pair < pairs; pair++) {
+            long arrival = start + pair * arrivalInterval;
+            if (arrival >= end) {
+                finished.countDown();
+                continue;
+            }
+            new SimulatedPair(pair, arrival, finished).startGame();
+        }
+        if (!finished.await(seconds + DRAIN_SECONDS, TimeUnit.SECONDS)) {
+            System.out.println("Some games did not finish, the server may be overloaded.");
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        scheduler.shutdownNow();
+        report(elapsedSeconds);
+    }
+
+    private void report(double elapsedSeconds) {
+        System.out.printf("%-8s %10s %10s %8s %10s %10s %10s %10s %12s%n", "endpoint", "requests", "req/s",
+                "errors", "p50 (us)", "p99 (us)", "p999 (us)", "max (us)", "raw p99 (us)");
+        for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+            EndpointStats endpoint = entry.getValue();
+            LatencyHistogram latency = endpoint.latency;
+            long requests = latency.totalCount();
+            System.out.printf("%-8s %10d %10.0f %8d %10d %10d %10d %10d %12d%n", entry.getKey(), requests,
+                    requests / elapsedSeconds, endpoint.errors.get(),
+                    latency.valueAtPercentile(50), latency.valueAtPercentile(99),
+                    latency.valueAtPercentile(99.9), latency.valueAtPercentile(100),
+                    endpoint.serviceTime.valueAtPercentile(99));
+        }
+    }
+
+    private static List<int[]> readScript(String file) throws Exception {
+        List<int[]> games = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file))) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] moves = line.split("[\\s,]+");
+            int[] columns = new int[moves.length];
+            for (int i = 0; i < moves.length; i++) {
+                columns[i] = Integer.parseInt(moves[i]);
+            }
+            games.add(columns);
+        }
+        if (games.isEmpty()) throw new IllegalArgumentException("The script " + file + " holds no games.");
+        return games;
+    }
+
+    /**
+     * Latency from each request's intended start, and from its actual start.
+     */
+    private static class EndpointStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    /**
+     * Two players sharing one game at a time. Each pair runs one action at a time, so its
+     * state needs no locking: every action is started from the completion of the one before.
+     */
+    private class SimulatedPair {
+        private final String[] names;
+        // Session tokens of both players in the current game.
+        private final String[] tokens = new String[2];
+        private final CountDownLatch finished;
+        private long intendedStart;
+        private int gamesPlayed;
+        private String gameId;
+        private int[] scriptedMoves;
+        private int movesMade;
+        private int maxMoves;
+        private int rows;
+        private int columns;
+        // Discs in each column of the current game, for picking random moves that fit.
+        private int[] heights;
+
+        SimulatedPair(int pair, long arrival, CountDownLatch finished) {
+            this.names = new String[] {"load-" + pair + "-a", "load-" + pair + "-b"};
+            this.intendedStart = arrival;
+            this.finished = finished;
+        }
+
+        void startGame() {
+            if (intendedStart >= end) {
+                finished.countDown();
+                return;
+            }
+            scriptedMoves = (script == null) ? null : script.get(gamesPlayed % script.size());
+            movesMade = 0;
+            Arrays.fill(tokens, null);
+            gamesPlayed++;
+            send("/join", () -> webClient.sendJoinRequest(address + "/join?game=new", names[0].getBytes()),
+                    first -> {
+                        gameId = first.headers().firstValue("X-Game-Id").orElse(null);
+                        tokens[0] = first.headers().firstValue("X-Session-Token").orElse(null);
+                        if (gameId == null) {
+                            failed("/join");
+                            return;
+                        }
+                        send("/join", () -> webClient.sendJoinRequest(gameUrl("/join"), names[1].getBytes()),
+                                second -> {
+                                    tokens[1] = second.headers().firstValue("X-Session-Token").orElse(null);
+                                    if (tokens[1] == null) {
+                                        failed("/join");
+                                        return;
+                                    }
+                                    checkState();
+                                });
+                    });
+        }
+
+        private void checkState() {
+            send("/state", () -> webClient.sendGameStateCheck(gameUrl("/state")), state -> {
+                String winner = state.headers().firstValue("X-Winner").orElse("");
+                if (movesMade == 0) readBoardSize(state);
+                boolean scriptDone = scriptedMoves != null && movesMade >= scriptedMoves.length;
+                if (!winner.isEmpty() || movesMade >= maxMoves || scriptDone) {
+                    quit(0);
+                } else {
+                    move();
+                }
+            });
+        }
+
+        private void move() {
+            int column = (scriptedMoves != null) ? scriptedMoves[movesMade] : randomOpenColumn();
+            // Moves alternate between the players and the first player starts. The server refuses a move
+            // into a full column without passing the turn, so random moves only go where there is room.
+            String token = tokens[movesMade % 2];
+            movesMade++;
+            send("/move", () -> webClient.sendMove(address + "/move", String.valueOf(column).getBytes(), token),
+                    moved -> checkState());
+        }
+
+        private void quit(int player) {
+            String token = tokens[player];
+            send("/quit", () -> webClient.sendPostRequest(address + "/quit", names[player].getBytes(), token), quit -> {
+                tokens[player] = null;
+                if (player == 0) {
+                    quit(1);
+                } else {
+                    startGame();
+                }
+            });
+        }
+
+        /**
+         * @return A column counted from 1 that still has room. There is one, since a game ends at maxMoves.
+         */
+        private int randomOpenColumn() {
+            int column;
+            do {
+                column = ThreadLocalRandom.current().nextInt(columns);
+            } while (heights[column] == rows);
+            heights[column]++;
+            return column + 1;
+        }
+
+        private void readBoardSize(HttpResponse<String> state) {
+            String[] size = state.headers().firstValue("X-Board-Size").orElse("6x9").split("x");
+            rows = Integer.parseInt(size[0]);
+            columns = Integer.parseInt(size[1]);
+            maxMoves = rows * columns;
+            heights = new int[columns];
+        }
+
+        private String gameUrl(String endpoint) {
+            return address + endpoint + "?game=" + gameId;
+        }
+
+        /**
+         * Sends a request at its intended start (or straight away if the pair is behind),
+         * records its latency and passes the response on. The next action is intended one
+         * think time after this one was, however late this one ran.
+         */
+        private <T> void send(String endpoint, Supplier<CompletableFuture<HttpResponse<T>>> request,
+                              Consumer<HttpResponse<T>> next) {
+            long intended = intendedStart;
+            intendedStart += thinkNanos;
+            long delay = Math.max(0, intended - System.nanoTime());
+            scheduler.schedule(() -> {
+                long sent = System.nanoTime();
+                request.get().whenComplete((response, error) -> {
+                    long done = System.nanoTime();
+                    // Refused requests are often answered faster than served ones, and would flatter the latencies.
+                    if (error != null || response.statusCode() >= 400) {
+                        failed(endpoint);
+                        return;
+                    }
+                    EndpointStats endpointStats = stats.get(endpoint);
+                    endpointStats.latency.record(TimeUnit.NANOSECONDS.toMicros(done - intended));
+                    endpointStats.serviceTime.record(TimeUnit.NANOSECONDS.toMicros(done - sent));
+                    try {
+                        next.accept(response);
+                    } catch (RuntimeException e) {
+                        failed(endpoint);
+                    }
+                });
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Gives up on the current game and starts the next one once both players have quit it,
+         * so abandoned games do not pile up on the server. These quits are not measured.
+         */
+        private void failed(String endpoint) {
+            stats.get(endpoint).errors.incrementAndGet();
+            List<CompletableFuture<?>> quits = new ArrayList<>();
+            for (int player = 0; player < tokens.length; player++) {
+                if (tokens[player] == null) continue;
+                quits.add(webClient.sendPostRequest(address + "/quit", names[player].getBytes(), tokens[player]));
+                tokens[player] = null;
+            }
+            CompletableFuture.allOf(quits.toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((quit, error) -> startGame());
+        }
+    }
+}
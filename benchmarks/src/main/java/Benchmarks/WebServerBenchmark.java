@@ -0,0 +1,244 @@
+package Benchmarks;
+
+import Protocol.BinaryProtocol;
+import Protocol.CommandBatch;
+import Server.networking.WebServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips through a WebServer running in the same JVM, one benchmark per endpoint.
+ * The client is the JDK HttpClient over a kept-alive HTTP/1.1 connection, so the numbers
+ * include request parsing, the handler and response writing, but no connection setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WebServerBenchmark {
+
+    private static final int PORT = 8490;
+    private static final String ADDRESS = "http://localhost:" + PORT;
+    private static final int COLUMNS = 9;
+    private static final int BOARD_CELLS = 6 * COLUMNS;
+
+    private WebServer server;
+    private HttpClient httpClient;
+    private String gameId;
+    // Session tokens of the game's players, and the number of moves sent to it so far.
+    private final String[] tokens = new String[2];
+    private int moves;
+    private String stateETag;
+    private byte[] replayBatch;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new WebServer(PORT);
+        server.startServer();
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+
+        HttpResponse<Void> first = post("/join?game=new", "first");
+        gameId = first.headers().firstValue("X-Game-Id").orElseThrow();
+        tokens[0] = first.headers().firstValue("X-Session-Token").orElseThrow();
+        tokens[1] = post("/join?game=" + gameId, "second").headers().firstValue("X-Session-Token").orElseThrow();
+        stateETag = get("/state?game=" + gameId).headers().firstValue("ETag").orElseThrow();
+
+        CommandBatch replay = new CommandBatch()
+                .join(CommandBatch.NEW_GAME, "first")
+                .join(CommandBatch.LAST_JOINED_GAME, "second");
+        for (int move = 0; move < 20; move++) {
+            replay.move(CommandBatch.LAST_JOINED_GAME, move % 9 + 1);
+        }
+        replayBatch = replay.state(CommandBatch.LAST_JOINED_GAME)
+                .quit(CommandBatch.LAST_JOINED_GAME, "first")
+                .quit(CommandBatch.LAST_JOINED_GAME, "second")
+                .toBytes();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public int status() throws Exception {
+        return get("/status").statusCode();
+    }
+
+    @Benchmark
+    public int state() throws Exception {
+        return get("/state?game=" + gameId).statusCode();
+    }
+
+    /**
+     * The same state in the binary encoding, without the text board and state headers.
+     */
+    @Benchmark
+    public int binaryState() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .GET()
+                .uri(URI.create(ADDRESS + "/state?game=" + gameId))
+                .header("Accept", BinaryProtocol.MEDIA_TYPE)
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * A poll from a client that already holds the current state.
+     */
+    @Benchmark
+    public int stateNotModified() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .GET()
+                .uri(URI.create(ADDRESS + "/state?game=" + gameId))
+                .header("If-None-Match", stateETag)
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * A long poll that is answered straight away, since the client is behind.
+     */
+    @Benchmark
+    public int stateSinceOlderVersion() throws Exception {
+        return get("/state?game=" + gameId + "&since=0").statusCode();
+    }
+
+    /**
+     * Moves cycle through the columns, so every one places a disc. The server refuses moves into
+     * a full column, so once the board is full the second player quits and joins again, which
+     * clears it: two extra requests every BOARD_CELLS moves.
+     * Each move is sent with the session token of the player whose turn it is.
+     */
+    @Benchmark
+    public int move() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofString(String.valueOf(nextColumn() + 1)))
+                .uri(URI.create(ADDRESS + "/move"))
+                .header("X-Session-Token", tokens[moves++ % 2])
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Benchmark
+    public int binaryMove() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofByteArray(BinaryProtocol.encodeMove(nextColumn())))
+                .uri(URI.create(ADDRESS + "/move"))
+                .header("Content-Type", BinaryProtocol.MEDIA_TYPE)
+                .header("X-Session-Token", tokens[moves++ % 2])
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * Replays a whole 20 move game in a fresh game in one /batch request, then leaves it again.
+     */
+    @Benchmark
+    public int batchReplay() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofByteArray(replayBatch))
+                .uri(URI.create(ADDRESS + "/batch"))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * Starts a fresh game and leaves it again, which also removes the game.
+     */
+    @Benchmark
+    public int joinAndQuit() throws Exception {
+        String token = post("/join?game=new", "visitor").headers().firstValue("X-Session-Token").orElseThrow();
+        HttpRequest request = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofString("visitor"))
+                .uri(URI.create(ADDRESS + "/quit"))
+                .header("X-Session-Token", token)
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * Opens an event stream and reads its initial state event.
+     * Closing the stream closes its connection, so this one includes connection setup.
+     */
+    @Benchmark
+    public int openEventStream() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .GET()
+                .uri(URI.create(ADDRESS + "/stream?game=" + gameId))
+                .build();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream events = response.body()) {
+            return readFirstEvent(events);
+        }
+    }
+
+    /**
+     * @return Column of the next move, counted from 0, after clearing the board if it is full.
+     */
+    private int nextColumn() throws Exception {
+        if (moves == BOARD_CELLS) {
+            HttpRequest quit = HttpRequest.newBuilder()
+                    .POST(HttpRequest.BodyPublishers.ofString("second"))
+                    .uri(URI.create(ADDRESS + "/quit"))
+                    .header("X-Session-Token", tokens[1])
+                    .build();
+            httpClient.send(quit, HttpResponse.BodyHandlers.discarding());
+            tokens[1] = post("/join?game=" + gameId, "second").headers().firstValue("X-Session-Token").orElseThrow();
+            moves = 0;
+        }
+        return moves % COLUMNS;
+    }
+
+    /**
+     * @return Number of bytes up to and including the blank line ending the first event.
+     */
+    private static int readFirstEvent(InputStream events) throws IOException {
+        int length = 0;
+        int previous = -1;
+        int current;
+        while ((current = events.read()) != -1) {
+            length++;
+            if (current == '\n' && previous == '\n') break;
+            previous = current;
+        }
+        return length;
+    }
+
+    private HttpResponse<Void> get(String endpoint) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .GET()
+                .uri(URI.create(ADDRESS + endpoint))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private HttpResponse<Void> post(String endpoint, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .uri(URI.create(ADDRESS + endpoint))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+}
@@ -3,6 +3,9 @@ package Client;
 import Client.networking.WebClient;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class Application {
@@ -10,6 +13,15 @@ public class Application {
     private static final String SERVER_ADDRESS = "http://localhost:";
     private static final int DEFAULT_PORT = 8082;
     private static final String STATUS_ENDPOINT = "/status";
+    // Listen to the server's event stream instead of long-polling for state.
+    private static final String STREAM_FLAG = "--stream";
+    // Ask the server to take the second seat with its computer player.
+    private static final String VS_SERVER_FLAG = "--vs-server";
+    // Board size and win length for a game we create, e.g. --board=19x19 --win=5.
+    private static final String BOARD_FLAG = "--board=";
+    private static final String WIN_LENGTH_FLAG = "--win=";
+    // Skill rating for matchmaking, e.g. --skill=1200, so we are paired with players of similar skill.
+    private static final String SKILL_FLAG = "--skill=";
 
     WebClient client;
     GameRunner gameRunner;
@@ -22,9 +34,21 @@ public class Application {
     public static void main(String[] args) throws IOException {
         Application application = new Application();
 
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (arguments.remove(STREAM_FLAG)) application.gameRunner.setUseEventStream(true);
+        if (arguments.remove(VS_SERVER_FLAG)) application.gameRunner.setPlayAgainstServer(true);
+        String boardSize = takeFlagValue(arguments, BOARD_FLAG);
+        if (boardSize != null) application.gameRunner.setBoardSize(boardSize);
+        String winLength = takeFlagValue(arguments, WIN_LENGTH_FLAG);
+        if (winLength != null) application.gameRunner.setWinLength(winLength);
+        String skill = takeFlagValue(arguments, SKILL_FLAG);
+        if (skill != null) application.gameRunner.setSkill(skill);
+
         String serverAddress = SERVER_ADDRESS + DEFAULT_PORT;
         // Port as optional cli argument
-        if (args.length == 1) serverAddress = SERVER_ADDRESS + args[0];
+        if (arguments.size() >= 1) serverAddress = SERVER_ADDRESS + arguments.get(0);
+        // Game id ("new" for a fresh game, "match" for any opponent) as optional second cli argument
+        if (arguments.size() >= 2) application.gameRunner.setGameId(arguments.get(1));
 
         Runtime runtime = Runtime.getRuntime();
         runtime.addShutdownHook(new ShutdownHook(application.client, serverAddress));
@@ -36,6 +60,21 @@ public class Application {
         application.startGame(serverAddress);
     }
 
+    /**
+     * Removes a "--flag=value" argument from the list.
+     *
+     * @return The flag's value, or null if the flag was not passed.
+     */
+    private static String takeFlagValue(List<String> arguments, String flag) {
+        for (String argument : arguments) {
+            if (argument.startsWith(flag)) {
+                arguments.remove(argument);
+                return argument.substring(flag.length());
+            }
+        }
+        return null;
+    }
+
     private void startGame(String address) throws IOException {
         gameRunner.setServerAddress(address);
         gameRunner.joinGame();
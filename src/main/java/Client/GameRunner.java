@@ -1,20 +1,25 @@
 package Client;
 
 import Client.networking.WebClient;
+import Protocol.BinaryGameState;
+import Protocol.BinaryProtocol;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpResponse;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Gets the necessary input from Client.
  * Sends data to WebClient to be communicated across the network.
- * Executes a while loop that calls for a state update from the server every 3 seconds.
+ * Executes a while loop that waits for the next state change while it is the opponent's turn,
+ * either by long-polling /state or by listening to the server's /stream of game events.
  * Performs operations depending on the game state on the server.
+ * The state is requested in BinaryProtocol's encoding; servers that answer with the
+ * text board and headers instead are still understood, and get text moves back.
  */
 public class GameRunner {
     private static GameRunner gameRunner = new GameRunner();
@@ -23,20 +28,61 @@ public class GameRunner {
     private static final String JOIN_ENDPOINT = "/join";
     private static final String STATE_CHECK_ENDPOINT = "/state";
     private static final String MOVE_ENDPOINT = "/move";
+    private static final String EVENT_STREAM_ENDPOINT = "/stream";
+    // Game id that asks the server to pair us with any waiting opponent.
+    private static final String MATCH_GAME = "match";
+    private static final long EVENT_WAIT_MILLIS = 30_000;
 
     private static final String PLAYER_TURN_HEADER = "X-Player-Turn";
+    private static final String PLAYER_TURN_SEAT_HEADER = "X-Player-Turn-Seat";
+    private static final String SEAT_HEADER = "X-Seat";
     private static final String WAITING_HEADER = "X-Waiting";
     private static final String WINNER_HEADER = "X-Winner";
+    private static final String GAME_ID_HEADER = "X-Game-Id";
+    private static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+    private static final String BOARD_SIZE_HEADER = "X-Board-Size";
+    private static final String STATE_VERSION_HEADER = "X-State-Version";
+    private static final String ETAG_HEADER = "ETag";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
 
-    private boolean isOurTurn = false;
-    private boolean waitingForOpponent = true;
+    private volatile boolean isOurTurn = false;
+    private volatile boolean waitingForOpponent = true;
     private boolean deciding = false;
     private boolean isGameFull = false;
+    // Set while we wait in the server's matchmaking lobby, where we have no seat to give up yet.
+    private volatile boolean lookingForOpponent = false;
     private boolean displayedWaitingMessage = false;
     private boolean winnerAnnounced = false;
     private boolean gameOver = false;
     private String serverAddress;
+    // Game to join, or null for the server's default game.
+    private String gameId;
+    // Token the server issued when we joined, sent with our moves and our quit.
+    private volatile String sessionToken;
+    // Our seat as the server last reported it, or -1 if unknown. The turn is ours when its seat is ours,
+    // as our opponent may have chosen the same name.
+    private volatile int seat = -1;
     private String matrixAsText = "";
+    // Version of the game state we last received from the server.
+    private long stateVersion = -1;
+    // ETag of the last full /state response, sent back so unchanged states come back as 304.
+    private String stateETag;
+    // When set, state changes are pushed over /stream instead of long-polled.
+    private boolean useEventStream = false;
+    // When set, the server's computer player takes the second seat.
+    private boolean playAgainstServer = false;
+    // Board size ("<rows>x<columns>") and win length to ask for, or null for the server's standard board.
+    private String boardSize;
+    private String winLength;
+    // Skill rating to be matched by, or null to be paired with anyone.
+    private String skill;
+    // Number of columns on our game's board, as reported by the server.
+    private int columns = 9;
+    // Set once the server has answered in the binary encoding, so it also takes binary moves.
+    private boolean serverSpeaksBinary = false;
+    // Players in our game and the version of the last full state, as seen on the event stream.
+    private final List<String> playersInGame = new ArrayList<>();
+    private long streamStateVersion = -1;
 
     private WebClient client;
     private Player player;
@@ -49,36 +95,100 @@ public class GameRunner {
 
     public void joinGame() throws IOException {
         getPlayerNameAsInput();
-        String joinResult = sendJoinRequest(this.serverAddress + JOIN_ENDPOINT, player.getName());
+        if (MATCH_GAME.equalsIgnoreCase(gameId)) {
+            startGame(findOpponent());
+            return;
+        }
+        String joinAddress = withGameId(this.serverAddress + JOIN_ENDPOINT);
+        if (playAgainstServer) joinAddress = withParameter(joinAddress, "vs", "server");
+        if (boardSize != null) {
+            String[] size = boardSize.toLowerCase().split("x");
+            joinAddress = withParameter(joinAddress, "rows", size[0]);
+            if (size.length > 1) joinAddress = withParameter(joinAddress, "cols", size[1]);
+        }
+        if (winLength != null) joinAddress = withParameter(joinAddress, "win", winLength);
+        String joinResult = sendJoinRequest(joinAddress, player.getName());
         if (joinResult.contains("full")) {
             this.isGameFull = true;
             System.out.println(joinResult);
-            System.exit(0);
+            joinResult = findOpponent();
+            this.isGameFull = false;
         }
+        startGame(joinResult);
+    }
+
+    /**
+     * Waits in the server's matchmaking lobby until it seats us in a fresh game with an opponent.
+     *
+     * @return The server's join message.
+     */
+    private String findOpponent() {
+        lookingForOpponent = true;
+        System.out.println("Looking for an opponent...");
+        String lobbyAddress = this.serverAddress + JOIN_ENDPOINT + "?game=" + MATCH_GAME;
+        if (skill != null) lobbyAddress = withParameter(lobbyAddress, "skill", skill);
+        this.gameId = null;
+        String joinResult;
+        do {
+            // The server answers without a game id when nobody turned up in time.
+            joinResult = sendJoinRequest(lobbyAddress, player.getName());
+        } while (gameId == null);
+        lookingForOpponent = false;
+        return joinResult;
+    }
+
+    private void startGame(String joinResult) throws IOException {
         System.out.println(joinResult);
+        if (gameId != null) System.out.printf("Joined game %s%n", gameId);
         checkGameState();
+        if (useEventStream) {
+            client.openEventStream(withGameId(this.serverAddress + EVENT_STREAM_ENDPOINT), this::onServerEvent);
+        }
         runGame();
     }
 
     private void runGame() throws IOException {
         while (!gameOver) {
-            try {
-                int WAIT_TIME = 3;
-                TimeUnit.SECONDS.sleep(WAIT_TIME);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
             conditionalWaitingMessage();
-            if (!timeToMakeAMove()) continue;
+            if (!timeToMakeAMove()) {
+                // Nothing to do until the opponent joins or moves.
+                waitForStateChange();
+                continue;
+            }
+            // The event stream does not carry the board, so fetch it once per turn.
+            if (useEventStream) checkGameState();
             System.out.println(matrixAsText);
             makeNextMove();
         }
     }
 
+    /**
+     * Sends our name to the server and remembers the id of the game we were placed in.
+     *
+     * @return The server's join message.
+     */
     private String sendJoinRequest(String address, String task) {
         byte[] requestPayload = task.getBytes();
-        CompletableFuture<String> future = client.sendTask(address, requestPayload);
-        return future.join();
+        HttpResponse<String> response = client.sendJoinRequest(address, requestPayload).join();
+        response.headers().firstValue(GAME_ID_HEADER).ifPresent(id -> this.gameId = id);
+        response.headers().firstValue(SESSION_TOKEN_HEADER).ifPresent(token -> this.sessionToken = token);
+        response.headers().firstValue(SEAT_HEADER).ifPresent(seat -> this.seat = Integer.parseInt(seat));
+        return response.body();
+    }
+
+    /**
+     * Appends the game id to an endpoint address so the server routes the request to our game.
+     */
+    private String withGameId(String address) {
+        if (gameId == null) return address;
+        return address + "?game=" + gameId;
+    }
+
+    /**
+     * Appends a query parameter to an address that may already have a query string.
+     */
+    private static String withParameter(String address, String name, String value) {
+        return address + (address.contains("?") ? "&" : "?") + name + "=" + value;
     }
 
     /**
@@ -86,11 +196,110 @@ public class GameRunner {
      * Retrieve updated String representing matrix state from HTTP Response body.
      */
     private void checkGameState() {
-        CompletableFuture<HttpResponse<String>> response = client.sendGameStateCheck(this.serverAddress
-                + STATE_CHECK_ENDPOINT);
-        matrixAsText = response.join().body();
-        HttpHeaders headers = response.join().headers();
-        analyseHeaders(headers);
+        requestGameState(withGameId(this.serverAddress + STATE_CHECK_ENDPOINT));
+    }
+
+    /**
+     * Long-poll the server: the request only returns once the game state has moved
+     * past the version we last saw, or the server's poll timeout passes.
+     */
+    private void waitForStateChange() {
+        if (useEventStream) {
+            long lastVersion = stateVersion;
+            waitForServerEvent();
+            // A quiet stream does not count as activity, so check in before the session expires.
+            if (stateVersion == lastVersion && !gameOver) checkGameState();
+            return;
+        }
+        String address = withGameId(this.serverAddress + STATE_CHECK_ENDPOINT);
+        address = withParameter(address, "since", String.valueOf(stateVersion));
+        requestGameState(address);
+    }
+
+    /**
+     * Block until the event stream delivers another event.
+     * Events are applied under the same lock, so one that made it our turn cannot slip past.
+     */
+    private synchronized void waitForServerEvent() {
+        try {
+            if (!timeToMakeAMove() && !gameOver) wait(EVENT_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Apply an event pushed on the /stream endpoint.
+     * The stream starts with a "state" event describing the whole game (turn seat and name,
+     * winner, then one line per player); events that are not newer than it are already included.
+     *
+     * @param event Event name
+     * @param id State version after the event
+     * @param data Event data
+     */
+    private synchronized void onServerEvent(String event, long id, String data) {
+        if (event.equals("state")) {
+            String[] lines = data.split("\n", -1);
+            playersInGame.clear();
+            for (int i = 2; i < lines.length; i++) {
+                playersInGame.add(lines[i]);
+            }
+            streamStateVersion = id;
+            isOurTurn = turnDataIsOurs(lines[0]);
+            if (!lines[1].isEmpty()) announceWinner(lines[1]);
+        } else if (id > streamStateVersion) {
+            switch (event) {
+                case "join":
+                    playersInGame.add(data);
+                    break;
+                case "quit":
+                    playersInGame.remove(data);
+                    // Whoever left, we are the one player left, and the first seat is ours.
+                    if (seat >= 0) seat = 0;
+                    break;
+                case "turn":
+                    isOurTurn = turnDataIsOurs(data);
+                    break;
+                case "winner":
+                    announceWinner(data);
+                    break;
+                default:
+                    // Moves are shown through the board fetched at the start of our turn.
+                    break;
+            }
+        }
+        waitingForOpponent = playersInGame.size() < 2;
+        stateVersion = Math.max(stateVersion, id);
+        notifyAll();
+    }
+
+    private void requestGameState(String address) {
+        HttpResponse<byte[]> response = client.sendBinaryGameStateCheck(address, stateETag, sessionToken).join();
+        // Nothing changed since our last state, so there is nothing to parse.
+        if (response.statusCode() == 304) return;
+        stateETag = response.headers().firstValue(ETAG_HEADER).orElse(null);
+        String contentType = response.headers().firstValue(CONTENT_TYPE_HEADER).orElse("");
+        if (contentType.startsWith(BinaryProtocol.MEDIA_TYPE)) {
+            serverSpeaksBinary = true;
+            applyBinaryState(BinaryProtocol.decodeState(response.body()), response.headers());
+            return;
+        }
+        matrixAsText = new String(response.body());
+        analyseHeaders(response.headers());
+    }
+
+    /**
+     * Binary counterpart of analyseHeaders: updates the state-representing variables from a decoded state.
+     * The seats still come as headers.
+     */
+    private synchronized void applyBinaryState(BinaryGameState state, HttpHeaders headers) {
+        matrixAsText = state.renderText();
+        columns = state.getColumns();
+        stateVersion = state.getStateVersion();
+        headers.firstValue(SEAT_HEADER).ifPresent(seat -> this.seat = Integer.parseInt(seat));
+        isOurTurn = turnIsOurs(headers.firstValue(PLAYER_TURN_SEAT_HEADER).orElse(null), state.getPlayerTurn());
+        waitingForOpponent = state.isWaiting();
+        if (!state.getWinner().isEmpty()) announceWinner(state.getWinner());
     }
 
     /**
@@ -104,16 +313,35 @@ public class GameRunner {
         checkGameState();
         // if opponent has not left (!waiting) - send move
         if (!waitingForOpponent) {
-            client.sendMove(this.serverAddress + MOVE_ENDPOINT, choice.getBytes());
-            System.out.println("Waiting for opponent...\n");
+            String moveAddress = withGameId(this.serverAddress + MOVE_ENDPOINT);
+            HttpResponse<String> response;
+            if (serverSpeaksBinary) {
+                response = client.sendBinaryMove(moveAddress, Integer.parseInt(choice) - 1, sessionToken).join();
+            } else {
+                response = client.sendMove(moveAddress, choice.getBytes(), sessionToken).join();
+            }
+            if (response.statusCode() / 100 == 2) {
+                // The turn passes once the server applies our move, which the next long poll will report.
+                isOurTurn = false;
+                System.out.println("Waiting for opponent...\n");
+            } else if (response.statusCode() == 401) {
+                // Our session expired, so the server no longer holds a seat for us.
+                System.out.println(response.body());
+                System.exit(0);
+            } else {
+                // A full column or a turn that is not ours after all: the next state tells what to do.
+                System.out.println(response.body());
+                checkGameState();
+            }
         }
         deciding = displayedWaitingMessage = false;
     }
 
     private String requestColumnChoice() throws IOException {
         String chosenColumn = "-1";
-        String message = String.format("It's your turn %s, please enter column (1-9) or Q to quit: ", player.getName());
-        while (Integer.parseInt(chosenColumn) > 9 ||
+        String message = String.format("It's your turn %s, please enter column (1-%d) or Q to quit: ",
+                player.getName(), columns);
+        while (Integer.parseInt(chosenColumn) > columns ||
                 Integer.parseInt(chosenColumn) < 1) {
             chosenColumn = getInput(message);
             if (chosenColumn.equalsIgnoreCase("q")) System.exit(0);
@@ -126,10 +354,15 @@ public class GameRunner {
      *
      * @param headers
      */
-    private void analyseHeaders(HttpHeaders headers) {
+    private synchronized void analyseHeaders(HttpHeaders headers) {
+        headers.firstValue(SEAT_HEADER).ifPresent(seat -> this.seat = Integer.parseInt(seat));
         headers.map().forEach((k, v) -> {
             if (k.equalsIgnoreCase(PLAYER_TURN_HEADER)) {
-                isOurTurn = (v.get(0).equalsIgnoreCase(player.getName()));
+                isOurTurn = turnIsOurs(headers.firstValue(PLAYER_TURN_SEAT_HEADER).orElse(null), v.get(0));
+            } else if (k.equalsIgnoreCase(BOARD_SIZE_HEADER)) {
+                columns = Integer.parseInt(v.get(0).substring(v.get(0).indexOf('x') + 1));
+            } else if (k.equalsIgnoreCase(STATE_VERSION_HEADER)) {
+                stateVersion = Long.parseLong(v.get(0));
             } else if (k.equalsIgnoreCase(WAITING_HEADER))  {
                 waitingForOpponent = (v.get(0).equalsIgnoreCase("true"));
             } else if (k.equalsIgnoreCase(WINNER_HEADER)) {
@@ -139,6 +372,26 @@ public class GameRunner {
         });
     }
 
+    /**
+     * Tells whether the turn is ours, by seat once the server has told us ours.
+     * Without a seat, e.g. from a server that does not send seats, the turn is ours if it carries our name.
+     *
+     * @param turnSeat Seat whose turn it is, or null if unknown
+     * @param turnName Name of the player whose turn it is
+     */
+    private boolean turnIsOurs(String turnSeat, String turnName) {
+        if (turnSeat == null || seat < 0) return turnName.equalsIgnoreCase(player.getName());
+        return Integer.parseInt(turnSeat) == seat;
+    }
+
+    /**
+     * turnIsOurs for the "seat name" data of a turn on the event stream.
+     */
+    private boolean turnDataIsOurs(String turnData) {
+        int separator = turnData.indexOf(' ');
+        return turnIsOurs(turnData.substring(0, separator), turnData.substring(separator + 1));
+    }
+
     /**
      * Displays 'Congratulations'/'Sorry' message depending on
      * if the winning name from HTTP Header equals our local name.
@@ -174,10 +427,9 @@ public class GameRunner {
     }
 
     /**
-     * Checks response headers and displays wait message accordingly.
+     * Checks the latest response headers and displays wait message accordingly.
      */
     private void conditionalWaitingMessage() {
-        checkGameState();
         if (waitingForOpponent && !displayedWaitingMessage) {
             System.out.println("Waiting for opponent to join...\n");
             displayedWaitingMessage = true;
@@ -192,10 +444,28 @@ public class GameRunner {
 
     public boolean gameIsFull() { return this.isGameFull; }
 
+    public boolean isLookingForOpponent() { return this.lookingForOpponent; }
+
     public boolean getIsWinnerAnnounced() { return this.winnerAnnounced; }
 
     public void setServerAddress(String address) { this.serverAddress = address; }
 
+    public String getGameId() { return this.gameId; }
+
+    public String getSessionToken() { return this.sessionToken; }
+
+    public void setGameId(String gameId) { this.gameId = gameId; }
+
+    public void setUseEventStream(boolean useEventStream) { this.useEventStream = useEventStream; }
+
+    public void setPlayAgainstServer(boolean playAgainstServer) { this.playAgainstServer = playAgainstServer; }
+
+    public void setBoardSize(String boardSize) { this.boardSize = boardSize; }
+
+    public void setWinLength(String winLength) { this.winLength = winLength; }
+
+    public void setSkill(String skill) { this.skill = skill; }
+
     // Called from ShutdownHook. Ends loop in runGame()
     public void endGame() {
         this.gameOver = true;
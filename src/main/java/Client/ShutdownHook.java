@@ -1,6 +1,7 @@
 package Client;
 
 import Client.networking.WebClient;
+import org.apache.log4j.Logger;
 
 import java.io.IOException;
 
@@ -9,6 +10,8 @@ import java.io.IOException;
  */
 public class ShutdownHook extends Thread {
 
+    private static final Logger LOG = Logger.getLogger(ShutdownHook.class);
+
     private static final String SHUTDOWN_ENDPOINT = "/quit";
 
     private GameRunner gameRunner;
@@ -23,21 +26,31 @@ public class ShutdownHook extends Thread {
 
     public void run() {
         if (clientDidNotJoinGame() || winnerAnnounced()) return;
-        System.out.println("Running shutdown hook...");
+        LOG.debug("Running shutdown hook...");
         gameRunner.endGame();
         try {
-            client.sendShutDownRequest(serverAddress, gameRunner.getPlayerName().getBytes());
+            client.sendShutDownRequest(getShutdownAddress(), gameRunner.getPlayerName().getBytes(),
+                    gameRunner.getSessionToken());
         } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+            LOG.error("Could not tell the server we quit", e);
         }
     }
 
+    /**
+     * Routes the quit request to the game we joined.
+     */
+    private String getShutdownAddress() {
+        String gameId = gameRunner.getGameId();
+        if (gameId == null) return serverAddress;
+        return serverAddress + "?game=" + gameId;
+    }
+
     private boolean winnerAnnounced() {
         return (gameRunner.getIsWinnerAnnounced());
     }
 
     private boolean clientDidNotJoinGame() {
-        return (gameRunner.gameIsFull() || gameRunner.getPlayerName() == null);
+        return (gameRunner.gameIsFull() || gameRunner.isLookingForOpponent() || gameRunner.getPlayerName() == null);
     }
 
 }
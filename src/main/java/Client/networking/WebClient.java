@@ -1,17 +1,37 @@
 package Client.networking;
 
+import Protocol.BinaryProtocol;
+import Protocol.CommandBatch;
+
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Handles our HTTP communication with the server.
  */
 public class WebClient {
 
+    // Sent with moves and quits, so the server knows which joined player they come from.
+    private static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+
+    /**
+     * Receives the events of a Server-Sent Events stream.
+     */
+    public interface EventStreamListener {
+        /**
+         * @param event Event name
+         * @param id Event id (the server's state version)
+         * @param data Event data, with multiple data lines joined by '\n'
+         */
+        void onEvent(String event, long id, String data);
+    }
+
     private HttpClient httpClient;
 
     public WebClient() {
@@ -28,19 +48,116 @@ public class WebClient {
      * @return CompletableFuture<String> Http Response
      */
     public CompletableFuture<String> sendTask(String url, byte[] requestPayload) {
+        return sendTask(url, requestPayload, null);
+    }
+
+    /**
+     * Sends HTTP POST request to url endpoint on behalf of the player the session token was issued to,
+     * and returns the Response body.
+     *
+     * @param url Server address
+     * @param requestPayload Message data
+     * @param sessionToken Token from the /join response, or null
+     * @return CompletableFuture<String> Http Response
+     */
+    public CompletableFuture<String> sendTask(String url, byte[] requestPayload, String sessionToken) {
+        return sendPostRequest(url, requestPayload, sessionToken).thenApply(HttpResponse::body);
+    }
+
+    /**
+     * Like sendTask(url, requestPayload, sessionToken), returning the whole response so its status can be checked.
+     *
+     * @param url Server address
+     * @param requestPayload Message data
+     * @param sessionToken Token from the /join response, or null
+     * @return CompletableFuture<HttpResponse<String>> Http Response
+     */
+    public CompletableFuture<HttpResponse<String>> sendPostRequest(String url, byte[] requestPayload,
+                                                                   String sessionToken) {
+        HttpRequest request = createHttpPostRequest(url, requestPayload, sessionToken);
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sends HTTP POST request to /join endpoint.
+     *
+     * @param url Server address
+     * @param requestPayload Player name
+     * @return HttpResponse containing the join message and the id of the joined game.
+     */
+    public CompletableFuture<HttpResponse<String>> sendJoinRequest(String url, byte[] requestPayload) {
         HttpRequest request = createHttpPostRequest(url, requestPayload);
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(HttpResponse::body);
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
     }
 
     /**
      * Send HTTP GET request to /state enpoint.
+     * With a "since" version in the query the server holds the request until the state changes.
      *
      * @param url Server address
      * @return HttpResponse containing headers with latest information about the game state.
      */
     public CompletableFuture<HttpResponse<String>> sendGameStateCheck(String url) {
+        return sendGameStateCheck(url, null);
+    }
+
+    /**
+     * Send HTTP GET request to /state enpoint, naming the state we already hold.
+     * If the state has not changed since, the server answers 304 Not Modified with an empty body.
+     *
+     * @param url Server address
+     * @param eTag ETag of the last state response, or null to always receive the full state
+     * @return HttpResponse containing headers with latest information about the game state.
+     */
+    public CompletableFuture<HttpResponse<String>> sendGameStateCheck(String url, String eTag) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .GET()
+                .uri(URI.create(url));
+        if (eTag != null) builder.header("If-None-Match", eTag);
+        return httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Send HTTP GET request to /state endpoint, asking for the state in BinaryProtocol's encoding.
+     * Servers that do not know the encoding answer with the text board and state headers;
+     * the response's Content-Type tells the two apart.
+     *
+     * @param url Server address
+     * @param eTag ETag of the last state response, or null to always receive the full state
+     * @return HttpResponse containing the encoded state, or the text board and state headers.
+     */
+    public CompletableFuture<HttpResponse<byte[]>> sendBinaryGameStateCheck(String url, String eTag) {
+        return sendBinaryGameStateCheck(url, eTag, null);
+    }
+
+    /**
+     * Like sendBinaryGameStateCheck(url, eTag), also keeping the session from expiring.
+     *
+     * @param sessionToken Token from the /join response, or null
+     */
+    public CompletableFuture<HttpResponse<byte[]>> sendBinaryGameStateCheck(String url, String eTag,
+                                                                            String sessionToken) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .GET()
+                .header("Accept", BinaryProtocol.MEDIA_TYPE)
+                .uri(URI.create(url));
+        if (eTag != null) builder.header("If-None-Match", eTag);
+        if (sessionToken != null) builder.header(SESSION_TOKEN_HEADER, sessionToken);
+        return httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Opens a Server-Sent Events stream on the /stream endpoint.
+     * Each complete event is passed to the listener on an HttpClient thread.
+     *
+     * @param url Server address
+     * @param listener Receives each event in the order the server sent them
+     * @return CompletableFuture that completes when the server closes the stream.
+     */
+    public CompletableFuture<Void> openEventStream(String url, EventStreamListener listener) {
         HttpRequest request = createHttpGetRequest(url);
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofLines())
+                .thenAccept(response -> readEvents(response.body(), listener));
     }
 
     /**
@@ -60,10 +177,66 @@ public class WebClient {
      *
      * @param url Server address
      * @param requestPayload Byte array representing the user chosen column
+     * @return HttpResponse whose status tells whether the server made the move.
      */
-    public void sendMove(String url, byte[] requestPayload) {
-        HttpRequest request = createHttpPostRequest(url, requestPayload);
-        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(HttpResponse::body);
+    public CompletableFuture<HttpResponse<String>> sendMove(String url, byte[] requestPayload) {
+        return sendMove(url, requestPayload, null);
+    }
+
+    /**
+     * Sends HTTP POST request to /move endpoint on behalf of the player the session token was issued to.
+     *
+     * @param url Server address
+     * @param requestPayload Byte array representing the user chosen column
+     * @param sessionToken Token from the /join response, or null
+     * @return HttpResponse whose status tells whether the server made the move, e.g. 409 out of turn.
+     */
+    public CompletableFuture<HttpResponse<String>> sendMove(String url, byte[] requestPayload, String sessionToken) {
+        HttpRequest request = createHttpPostRequest(url, requestPayload, sessionToken);
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sends HTTP POST request to /move endpoint with the column as a single BinaryProtocol byte.
+     * Only servers that answered a binary state request understand it.
+     *
+     * @param url Server address
+     * @param column Column counted from 0
+     * @return HttpResponse whose status tells whether the server made the move.
+     */
+    public CompletableFuture<HttpResponse<String>> sendBinaryMove(String url, int column) {
+        return sendBinaryMove(url, column, null);
+    }
+
+    /**
+     * Binary counterpart of sendMove(url, requestPayload, sessionToken).
+     *
+     * @param url Server address
+     * @param column Column counted from 0
+     * @param sessionToken Token from the /join response, or null
+     * @return HttpResponse whose status tells whether the server made the move.
+     */
+    public CompletableFuture<HttpResponse<String>> sendBinaryMove(String url, int column, String sessionToken) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofByteArray(BinaryProtocol.encodeMove(column)))
+                .header("Content-Type", BinaryProtocol.MEDIA_TYPE)
+                .uri(URI.create(url));
+        if (sessionToken != null) builder.header(SESSION_TOKEN_HEADER, sessionToken);
+        return httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sends HTTP POST request to /batch endpoint with all commands of the batch in one body.
+     * The server applies them in order, so a batch costs a single round trip.
+     *
+     * @param url Server address
+     * @param batch Commands to apply
+     * @return The fields of each result line, in the order of the commands.
+     */
+    public CompletableFuture<List<String[]>> sendBatch(String url, CommandBatch batch) {
+        HttpRequest request = createHttpPostRequest(url, batch.toBytes());
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> CommandBatch.parse(response.body()));
     }
 
     /**
@@ -73,12 +246,51 @@ public class WebClient {
      * @param requestPayload Message data
      */
     public void sendShutDownRequest(String url, byte[] requestPayload) throws IOException, InterruptedException {
-        HttpRequest request = createHttpPostRequest(url, requestPayload);
+        sendShutDownRequest(url, requestPayload, null);
+    }
+
+    /**
+     * Sends synchronous POST request to the server on client shutdown, on behalf of the player
+     * the session token was issued to.
+     *
+     * @param url Server address
+     * @param requestPayload Message data
+     * @param sessionToken Token from the /join response, or null
+     */
+    public void sendShutDownRequest(String url, byte[] requestPayload, String sessionToken)
+            throws IOException, InterruptedException {
+        HttpRequest request = createHttpPostRequest(url, requestPayload, sessionToken);
         System.out.println("Shutting down...");
         HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
         System.out.println(response.body());
     }
 
+    /**
+     * Groups "event:", "id:" and "data:" lines until a blank line ends the event.
+     * Comment lines starting with ':' are keep-alives and are skipped.
+     */
+    private void readEvents(Stream<String> lines, EventStreamListener listener) {
+        String[] event = {"message"};
+        long[] id = {-1};
+        StringBuilder data = new StringBuilder();
+        lines.forEach(line -> {
+            if (line.isEmpty()) {
+                // A keep-alive comment is followed by a blank line but carries no data.
+                if (data.length() == 0) return;
+                data.setLength(data.length() - 1);
+                listener.onEvent(event[0], id[0], data.toString());
+                event[0] = "message";
+                data.setLength(0);
+            } else if (line.startsWith("event: ")) {
+                event[0] = line.substring("event: ".length());
+            } else if (line.startsWith("id: ")) {
+                id[0] = Long.parseLong(line.substring("id: ".length()));
+            } else if (line.startsWith("data: ")) {
+                data.append(line.substring("data: ".length())).append('\n');
+            }
+        });
+    }
+
     /**
      * Create and parameterize a HTTP POST request.
      *
@@ -87,11 +299,23 @@ public class WebClient {
      * @return HttpRequest
      */
     private HttpRequest createHttpPostRequest(String url, byte[] requestPayload) {
-        HttpRequest request = HttpRequest.newBuilder()
+        return createHttpPostRequest(url, requestPayload, null);
+    }
+
+    /**
+     * Create and parameterize a HTTP POST request that carries a session token.
+     *
+     * @param url Server address
+     * @param requestPayload Message data
+     * @param sessionToken Token from the /join response, or null to send none
+     * @return HttpRequest
+     */
+    private HttpRequest createHttpPostRequest(String url, byte[] requestPayload, String sessionToken) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
                 .POST(HttpRequest.BodyPublishers.ofByteArray(requestPayload))
-                .uri(URI.create(url))
-                .build();
-        return request;
+                .uri(URI.create(url));
+        if (sessionToken != null) builder.header(SESSION_TOKEN_HEADER, sessionToken);
+        return builder.build();
     }
 
     /**
@@ -0,0 +1,92 @@
+package Protocol;
+
+/**
+ * Game state decoded from the binary format of BinaryProtocol.
+ */
+public final class BinaryGameState {
+
+    private final long stateVersion;
+    private final int rows;
+    private final int columns;
+    private final int winLength;
+    private final boolean waiting;
+    private final String playerTurn;
+    private final String winner;
+    private final byte[] packedBoard;
+
+    BinaryGameState(long stateVersion, int rows, int columns, int winLength, boolean waiting,
+                    String playerTurn, String winner, byte[] packedBoard) {
+        this.stateVersion = stateVersion;
+        this.rows = rows;
+        this.columns = columns;
+        this.winLength = winLength;
+        this.waiting = waiting;
+        this.playerTurn = playerTurn;
+        this.winner = winner;
+        this.packedBoard = packedBoard;
+    }
+
+    public long getStateVersion() {
+        return stateVersion;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getWinLength() {
+        return winLength;
+    }
+
+    /**
+     * @return true while the game waits for a second player.
+     */
+    public boolean isWaiting() {
+        return waiting;
+    }
+
+    /**
+     * @return Name of the player whose turn it is, or an empty string if nobody is playing.
+     */
+    public String getPlayerTurn() {
+        return playerTurn;
+    }
+
+    /**
+     * @return Name of the winner, or an empty string if nobody has won.
+     */
+    public String getWinner() {
+        return winner;
+    }
+
+    /**
+     * @param row Row counted from the top of the board.
+     * @param col Column counted from the left of the board.
+     * @return playerID (0 or 1) of the disc at that position, or -1 if empty.
+     */
+    public int getValueAtPosition(int row, int col) {
+        int rowFromBottom = rows - 1 - row;
+        if (rowFromBottom >= (packedBoard[col] & 0xFF)) return -1;
+        int cell = col * rows + rowFromBottom;
+        return (packedBoard[columns + cell / 8] >>> (cell % 8)) & 1;
+    }
+
+    /**
+     * Renders the board in the server's text format, one "[x]" per cell.
+     */
+    public String renderText() {
+        StringBuilder text = new StringBuilder(rows * (columns * 3 + 1));
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                int value = getValueAtPosition(row, col);
+                text.append('[').append(value == 0 ? 'x' : value == 1 ? 'o' : ' ').append(']');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
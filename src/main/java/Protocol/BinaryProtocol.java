@@ -0,0 +1,149 @@
+package Protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of the game state and of moves, shared by server and client.
+ * A client asks for it by sending the MEDIA_TYPE in the Accept header of /state and as
+ * the Content-Type of /move; requests without it get the text format.
+ *
+ * State layout:
+ *   byte    format version
+ *   varint  state version
+ *   byte    rows, columns, win length
+ *   byte    flags (bit 0: waiting for a second player)
+ *   string  name of the player whose turn it is, empty if nobody plays
+ *   string  name of the winner, empty if nobody has won
+ *   board   packed board, see below
+ * Strings are a varint byte count followed by UTF-8 bytes. Varints take 7 bits per byte,
+ * lowest bits first, with the top bit set on every byte but the last.
+ *
+ * Packed board: one byte per column holding its height, then one bit per cell, column by
+ * column from the bottom (cell = col * rows + rowFromBottom), set for discs of player 1.
+ * The standard 6x9 board packs into 16 bytes; a whole state is typically 30 to 40 bytes.
+ *
+ * A move is a single byte: the column, counted from 0.
+ */
+public final class BinaryProtocol {
+
+    public static final String MEDIA_TYPE = "application/x-five-in-a-row";
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int WAITING_FLAG = 1;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * @return Size of a packed board of the given dimensions, in bytes.
+     */
+    public static int packedBoardLength(int rows, int columns) {
+        return columns + (rows * columns + 7) / 8;
+    }
+
+    /**
+     * @param packedBoard Board in the packed layout described above.
+     */
+    public static byte[] encodeState(long stateVersion, int rows, int columns, int winLength, boolean waiting,
+                                     String playerTurn, String winner, byte[] packedBoard) {
+        byte[] turnBytes = playerTurn.getBytes(StandardCharsets.UTF_8);
+        byte[] winnerBytes = winner.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                24 + turnBytes.length + winnerBytes.length + packedBoard.length);
+        out.write(FORMAT_VERSION);
+        writeVarint(out, stateVersion);
+        out.write(rows);
+        out.write(columns);
+        out.write(winLength);
+        out.write(waiting ? WAITING_FLAG : 0);
+        writeVarint(out, turnBytes.length);
+        out.write(turnBytes, 0, turnBytes.length);
+        writeVarint(out, winnerBytes.length);
+        out.write(winnerBytes, 0, winnerBytes.length);
+        out.write(packedBoard, 0, packedBoard.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a state of a supported format version.
+     */
+    public static BinaryGameState decodeState(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported game state format version " + version);
+        }
+        long stateVersion = in.readVarint();
+        int rows = in.readByte();
+        int columns = in.readByte();
+        int winLength = in.readByte();
+        boolean waiting = (in.readByte() & WAITING_FLAG) != 0;
+        String playerTurn = in.readString();
+        String winner = in.readString();
+        byte[] packedBoard = in.readBytes(packedBoardLength(rows, columns));
+        return new BinaryGameState(stateVersion, rows, columns, winLength, waiting, playerTurn, winner, packedBoard);
+    }
+
+    /**
+     * @param column Column counted from 0.
+     */
+    public static byte[] encodeMove(int column) {
+        return new byte[] {(byte) column};
+    }
+
+    /**
+     * @return The column counted from 0.
+     * @throws IllegalArgumentException if the body is not a single byte.
+     */
+    public static int decodeMove(byte[] body) {
+        if (body.length != 1) throw new IllegalArgumentException("A binary move is one byte, not " + body.length);
+        return body[0] & 0xFF;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position = 0;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) throw new IllegalArgumentException("Game state is truncated");
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Malformed varint in game state");
+        }
+
+        byte[] readBytes(int length) {
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("Game state is truncated");
+            }
+            byte[] result = new byte[length];
+            System.arraycopy(bytes, position, result, 0, length);
+            position += length;
+            return result;
+        }
+
+        String readString() {
+            return new String(readBytes((int) readVarint()), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package Protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ordered list of commands for the server's /batch endpoint, which applies them in
+ * order and answers with one result line per command.
+ *
+ * Each command is one line of tab-separated fields:
+ *   join   game  name  [option=value ...]   options: vs=server, rows, cols, win (for new games)
+ *   move   game  column                     column counted from 1, as in /move
+ *   state  game
+ *   quit   game  name
+ * A game is a game id, "new" to join a fresh game, or "@" for the game joined by the
+ * latest join of the same batch.
+ *
+ * Result lines are tab-separated as well:
+ *   ok  [game id]                           game id for joins
+ *   full                                    the game had no free seat
+ *   state  game id  version  turn  waiting  winner  board
+ *   error  message                          the command was skipped; later ones still run
+ * The board lists the columns from left to right, separated by '/', each as its discs
+ * from the bottom up ('x' for the first player, 'o' for the second).
+ */
+public final class CommandBatch {
+
+    public static final String JOIN = "join";
+    public static final String MOVE = "move";
+    public static final String STATE = "state";
+    public static final String QUIT = "quit";
+
+    public static final String OK = "ok";
+    public static final String FULL = "full";
+    public static final String ERROR = "error";
+
+    public static final String NEW_GAME = "new";
+    public static final String LAST_JOINED_GAME = "@";
+
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final char LINE_SEPARATOR = '\n';
+    private static final char COLUMN_SEPARATOR = '/';
+
+    private final List<String> commands = new ArrayList<>();
+
+    /**
+     * @param options "name=value" options, e.g. "vs=server" or "rows=19"
+     */
+    public CommandBatch join(String game, String name, String... options) {
+        String[] fields = new String[3 + options.length];
+        fields[0] = JOIN;
+        fields[1] = game;
+        fields[2] = name;
+        System.arraycopy(options, 0, fields, 3, options.length);
+        return add(fields);
+    }
+
+    /**
+     * @param column Column counted from 1.
+     */
+    public CommandBatch move(String game, int column) {
+        return add(MOVE, game, String.valueOf(column));
+    }
+
+    public CommandBatch state(String game) {
+        return add(STATE, game);
+    }
+
+    public CommandBatch quit(String game, String name) {
+        return add(QUIT, game, name);
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    public byte[] toBytes() {
+        StringBuilder body = new StringBuilder();
+        for (String command : commands) {
+            body.append(command).append(LINE_SEPARATOR);
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Splits a batch of commands or results into the fields of each line. Blank lines are skipped.
+     */
+    public static List<String[]> parse(String text) {
+        List<String[]> lines = new ArrayList<>();
+        for (String line : text.split(String.valueOf(LINE_SEPARATOR))) {
+            if (line.isBlank()) continue;
+            lines.add(line.split(String.valueOf(FIELD_SEPARATOR), -1));
+        }
+        return lines;
+    }
+
+    /**
+     * Joins the fields of one result line.
+     */
+    public static String result(String... fields) {
+        return String.join(String.valueOf(FIELD_SEPARATOR), fields);
+    }
+
+    /**
+     * Describes the board of a state in the column format used by state results.
+     */
+    public static String describeBoard(BinaryGameState state) {
+        StringBuilder board = new StringBuilder();
+        for (int col = 0; col < state.getColumns(); col++) {
+            if (col > 0) board.append(COLUMN_SEPARATOR);
+            for (int row = state.getRows() - 1; row >= 0; row--) {
+                int value = state.getValueAtPosition(row, col);
+                if (value < 0) break;
+                board.append(value == 0 ? 'x' : 'o');
+            }
+        }
+        return board.toString();
+    }
+
+    private CommandBatch add(String... fields) {
+        for (String field : fields) {
+            if (field.indexOf(FIELD_SEPARATOR) >= 0 || field.indexOf(LINE_SEPARATOR) >= 0) {
+                throw new IllegalArgumentException("Batch fields cannot contain tabs or line breaks: " + field);
+            }
+        }
+        commands.add(String.join(String.valueOf(FIELD_SEPARATOR), fields));
+        return this;
+    }
+}
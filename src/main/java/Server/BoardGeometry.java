@@ -0,0 +1,86 @@
+package Server;
+
+/**
+ * Size of a game's board and the number of discs in a row that wins it.
+ * Chosen when a game is created and fixed for the rest of the game.
+ */
+public final class BoardGeometry {
+
+    // Limited so a column fits in the byte of an opening book record and a transposition table entry.
+    public static final int MAX_SIZE = 100;
+    public static final BoardGeometry STANDARD = new BoardGeometry(6, 9, 5);
+
+    private final int rows;
+    private final int columns;
+    private final int winLength;
+
+    private BoardGeometry(int rows, int columns, int winLength) {
+        this.rows = rows;
+        this.columns = columns;
+        this.winLength = winLength;
+    }
+
+    /**
+     * @param rows Number of rows (1 to MAX_SIZE).
+     * @param columns Number of columns (1 to MAX_SIZE).
+     * @param winLength Number of discs in a winning line (2 up to the larger of rows and columns).
+     * @throws IllegalArgumentException if the board is too small, too large, or cannot be won.
+     */
+    public static BoardGeometry of(int rows, int columns, int winLength) {
+        if (rows < 1 || rows > MAX_SIZE || columns < 1 || columns > MAX_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "Boards have 1 to %d rows and columns, not %dx%d.", MAX_SIZE, rows, columns));
+        }
+        if (winLength < 2 || winLength > Math.max(rows, columns)) {
+            throw new IllegalArgumentException(String.format(
+                    "A %dx%d board cannot be won with %d in a row.", rows, columns, winLength));
+        }
+        if (rows == STANDARD.rows && columns == STANDARD.columns && winLength == STANDARD.winLength) {
+            return STANDARD;
+        }
+        return new BoardGeometry(rows, columns, winLength);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getWinLength() {
+        return winLength;
+    }
+
+    public int getCells() {
+        return rows * columns;
+    }
+
+    /**
+     * @return Number of windows of winLength cells, in all four directions, that fit on the board.
+     */
+    public int getWindowCount() {
+        int rowStarts = Math.max(0, rows - winLength + 1);
+        int columnStarts = Math.max(0, columns - winLength + 1);
+        return columns * rowStarts + rows * columnStarts + 2 * rowStarts * columnStarts;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof BoardGeometry)) return false;
+        BoardGeometry geometry = (BoardGeometry) other;
+        return rows == geometry.rows && columns == geometry.columns && winLength == geometry.winLength;
+    }
+
+    @Override
+    public int hashCode() {
+        return (rows * 31 + columns) * 31 + winLength;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%dx%d, %d in a row", rows, columns, winLength);
+    }
+}
@@ -1,72 +1,353 @@
 package Server;
 
+import Protocol.BinaryProtocol;
+import org.apache.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
- * Stores the game board as a 2d array.
- * Handles all operations such as adding a disc and searching for winning lines.
+ * Stores the game board and handles all operations such as adding a disc and searching for winning lines.
+ * The board's size and win length are given by its BoardGeometry.
+ *
+ * Cells are numbered column by column from the bottom: cell = col * rows + rowFromBottom.
+ * Each disc is stored as its playerID + 1 under its cell, and each column keeps its height.
+ *
+ * Alongside the discs, each player keeps a disc count for every window of winLength cells
+ * that could hold a winning line. A move only touches the windows passing through its cell,
+ * at most four per disc of the win length, and a count reaching the win length is a win.
+ * Checking for a win therefore costs O(win length) per move, however large the board.
+ *
+ * Boards of up to DENSE_CELL_LIMIT cells store discs and window counts in arrays. Larger boards
+ * store only the cells and windows that hold discs, in hash tables, so a mostly empty board
+ * takes memory for the discs on it rather than for its area. For the same reason, only small
+ * game boards keep their text and packed renderings up to date on every move; large ones
+ * publish their discs as a BoardImage that renders when first read.
+ *
+ * A board created without a GameManager is an analysis board, used by searches:
+ * it reports wins through hasWon instead of the game, and skips rendering.
+ *
+ * Every move also updates two Zobrist hashes: one of the board as it is, and one of its
+ * left/right mirror image. Positions that are mirror images of each other share the
+ * smaller of the two as their canonical hash. Boards of different geometries start from
+ * different hashes, so their positions can share a transposition table.
  */
 public class BoardGrid {
 
-    private final int WIN_LENGTH = 5;
-    private final int ROWS = 6;
-    private final int COLS = 9;
+    private static final Logger LOG = Logger.getLogger(BoardGrid.class);
+
+    // Largest board kept in arrays; 19x19 and smaller boards are dense.
+    private static final int DENSE_CELL_LIMIT = 1024;
+    // Window counts keep one byte per player: playerID 0 in the low byte, playerID 1 in the next.
+    private static final int PLAYER_COUNT_BITS = 8;
+    private static final int PLAYER_COUNT_MASK = 0xFF;
+
+    // Fixed seed, so hashes stay the same between runs and can be stored, e.g. in an opening book.
+    private static final long ZOBRIST_SEED = 0x46495645524f5753L;
+    private static final long ZOBRIST_GAMMA = 0x9E3779B97F4A7C15L;
 
-    private GameManager gameManager;
-    private int[][] matrix = new int[ROWS][COLS];
-    private int playerID;
+    private final BoardGeometry geometry;
+    private final int rows;
+    private final int cols;
+    private final int winLength;
+    private final WinningWindows windows;
+    // Each rendered row is "[x]" per column followed by a newline.
+    private final int textRowLength;
+    // Hash of the empty board, which depends on the geometry.
+    private final long emptyHash;
+
+    private final GameManager gameManager;
+    // playerID + 1 of the disc in each cell, 0 for empty cells.
+    private final CountTable discs;
+    // Number of discs currently stacked in each column.
+    private final int[] heights;
+    // Both players' disc counts in each window, packed as described at PLAYER_COUNT_BITS.
+    private final CountTable windowDiscs;
+    // openWindows[playerID][n] counts windows holding n of the player's discs and none of the opponent's.
+    private final int[][] openWindows;
+    // Scratch space for the windows through the cell being changed.
+    private final int[] windowBuffer;
+    private int discCount;
+    // Rendered empty board, or null for analysis and large boards, which render on demand.
+    private final byte[] emptyGridBytes;
+    // Rendered board, replaced by a patched copy on every move so readers never see a half-written array.
+    private volatile byte[] gridBytes;
+    // Same for the board in BinaryProtocol's packed layout.
+    private final byte[] emptyPackedBytes;
+    private volatile byte[] packedBytes;
+    // Whether this is a large game board, which keeps its discs as a shared list instead of renderings.
+    private final boolean listsDiscs;
+    private BoardImage.Disc discList;
+    private long hash;
+    private long mirrorHash;
 
     public BoardGrid (GameManager gameManager) {
+        this(gameManager, BoardGeometry.STANDARD);
+    }
+
+    public BoardGrid(GameManager gameManager, BoardGeometry geometry) {
         this.gameManager = gameManager;
+        this.geometry = geometry;
+        this.rows = geometry.getRows();
+        this.cols = geometry.getColumns();
+        this.winLength = geometry.getWinLength();
+        this.windows = new WinningWindows(geometry);
+        this.textRowLength = cols * 3 + 1;
+        this.emptyHash = geometryKey(geometry);
+        boolean dense = geometry.getCells() <= DENSE_CELL_LIMIT;
+        this.discs = dense ? CountTable.dense(geometry.getCells()) : CountTable.sparse();
+        this.windowDiscs = dense ? CountTable.dense(windows.getNumberRange()) : CountTable.sparse();
+        this.heights = new int[cols];
+        this.openWindows = new int[2][winLength + 1];
+        this.windowBuffer = new int[windows.getMaxWindowsThroughCell()];
+        this.listsDiscs = gameManager != null && !dense;
+        boolean rendered = gameManager != null && dense;
+        this.emptyGridBytes = rendered ? renderGrid() : null;
+        this.emptyPackedBytes = rendered ? packBoard() : null;
         initializeMatrix();
     }
 
+    /**
+     * Creates an analysis board holding the same discs as the given board.
+     */
+    private BoardGrid(BoardGrid board) {
+        this.gameManager = null;
+        this.geometry = board.geometry;
+        this.rows = board.rows;
+        this.cols = board.cols;
+        this.winLength = board.winLength;
+        this.windows = board.windows;
+        this.textRowLength = board.textRowLength;
+        this.emptyHash = board.emptyHash;
+        this.discs = board.discs.copy();
+        this.windowDiscs = board.windowDiscs.copy();
+        this.heights = board.heights.clone();
+        this.openWindows = new int[][] {board.openWindows[0].clone(), board.openWindows[1].clone()};
+        this.windowBuffer = new int[board.windowBuffer.length];
+        this.discCount = board.discCount;
+        this.emptyGridBytes = null;
+        this.emptyPackedBytes = null;
+        this.listsDiscs = false;
+        this.hash = board.hash;
+        this.mirrorHash = board.mirrorHash;
+    }
+
+    /**
+     * Returns an analysis board with the same discs, which can be played on without
+     * affecting this board or its game.
+     */
+    public BoardGrid copy() {
+        return new BoardGrid(this);
+    }
+
     /**
      * Returns the grid matrix as a String object to be sent to a Client.
      */
     public String getGridAsText() {
-        String fullGrid = "";
-        for (int i = 0; i < ROWS; i++) {
-            for (int j = 0; j < COLS; j++) {
-                String symbol = classifySymbol(matrix[i][j]);
-                fullGrid += String.format("[%s]", symbol);
-            }
-            fullGrid += "\n";
-        }
-        return fullGrid;
+        return new String(getGridAsBytes(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the rendered grid as bytes, ready to be written to a response.
+     * The array is shared and must not be modified; it is only rebuilt when the board changes.
+     */
+    public byte[] getGridAsBytes() {
+        if (emptyGridBytes == null) return renderGrid();
+        return gridBytes;
+    }
+
+    /**
+     * Returns the board packed as column heights followed by one bit per cell, as BinaryProtocol sends it.
+     * The array is shared and must not be modified; it is only rebuilt when the board changes.
+     */
+    public byte[] getPackedBytes() {
+        if (emptyPackedBytes == null) return packBoard();
+        return packedBytes;
+    }
+
+    /**
+     * Returns the discs as they are now, for a snapshot of the game. Small boards hand over their
+     * renderings; large boards a list of their discs, which costs nothing to hand over.
+     */
+    public BoardImage getImage() {
+        if (listsDiscs) return BoardImage.of(rows, cols, discList);
+        if (emptyGridBytes == null) return BoardImage.of(renderGrid(), packBoard());
+        return BoardImage.of(gridBytes, packedBytes);
     }
 
     /**
-     * Loop from bottom row upward until free coordinate is found.
-     * Assign coordinate with value passed into function.
+     * Drop a disc onto the top of the chosen column.
+     * Only windows through the new disc can complete, so only those counters are updated.
      *
      * @param col Column chosen by player
      * @param playerID (0 or 1)
+     * @return Row the disc landed on (counted from the top), or -1 if the column is full or does not exist.
+     */
+    public int makeMove(int col, int playerID) {
+        if (col < 0 || col >= cols) {
+            if (LOG.isDebugEnabled()) LOG.debug("Column does not exist.");
+            return -1;
+        }
+        if (heights[col] == rows) {
+            if (LOG.isDebugEnabled()) LOG.debug("Column is full.");
+            return -1;
+        }
+        int rowFromBottom = heights[col]++;
+        discs.set(col * rows + rowFromBottom, playerID + 1);
+        discCount++;
+        toggleHashes(col, rowFromBottom, playerID);
+        boolean won = addToWindows(col, rowFromBottom, playerID);
+        int row = rows - 1 - rowFromBottom;
+        if (listsDiscs) {
+            discList = new BoardImage.Disc(col * rows + rowFromBottom, playerID, discList);
+        } else if (emptyGridBytes != null) {
+            renderDisc(row, col, playerID);
+            packDisc(col, rowFromBottom, playerID);
+        }
+        if (gameManager != null && won) gameManager.setWinner(playerID);
+        return row;
+    }
+
+    /**
+     * Take the top disc back out of the column, restoring the board as it was before it was dropped.
+     *
+     * @param col Column the disc was dropped in
      */
-    public void makeMove(int col, int playerID) {
-        this.playerID = playerID;
-        for (int row = ROWS-1; row >= 0; row--) {
-            if (matrix[row][col] == -1) {
-                matrix[row][col] = playerID;
-                checkForWinningLine(row, col);
-                return;
+    public void undoMove(int col) {
+        int rowFromBottom = --heights[col];
+        int cell = col * rows + rowFromBottom;
+        int playerID = discs.get(cell) - 1;
+        discs.set(cell, 0);
+        discCount--;
+        toggleHashes(col, rowFromBottom, playerID);
+        removeFromWindows(col, rowFromBottom, playerID);
+        if (listsDiscs) {
+            discList = discList.without(cell);
+        } else if (emptyGridBytes != null) {
+            renderDisc(rows - 1 - rowFromBottom, col, -1);
+            packDisc(col, rowFromBottom, -1);
+        }
+    }
+
+    /**
+     * Drops the discs of a board in BinaryProtocol's packed layout onto this board, each column bottom up.
+     *
+     * @param swapPlayers Whether the first player's discs are dropped as player 1 and the second's as player 0.
+     */
+    public void dropPackedDiscs(byte[] packedBoard, boolean swapPlayers) {
+        for (int col = 0; col < cols; col++) {
+            int height = packedBoard[col] & 0xFF;
+            for (int rowFromBottom = 0; rowFromBottom < height; rowFromBottom++) {
+                int cell = col * rows + rowFromBottom;
+                int playerID = (packedBoard[cols + cell / 8] >>> (cell % 8)) & 1;
+                makeMove(col, swapPlayers ? 1 - playerID : playerID);
             }
         }
-        System.out.println("Column is full.");
     }
 
     /**
-     * Initialize each position with default value
-     * (-1 printed as empty string)
+     * @return Zobrist hash of the discs on the board. Equal boards have equal hashes,
+     *         however the discs got there.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return Zobrist hash of the board's left/right mirror image.
+     */
+    public long getMirrorHash() {
+        return mirrorHash;
+    }
+
+    /**
+     * @return The smaller of the hash and the mirror hash, shared by a position and its mirror image.
+     */
+    public long getCanonicalHash() {
+        return Math.min(hash, mirrorHash);
+    }
+
+    /**
+     * @return true if the canonical hash is the one of the mirror image, in which case
+     *         columns stored under it are counted from the right.
+     */
+    public boolean isCanonicalMirrored() {
+        return mirrorHash < hash;
+    }
+
+    /**
+     * @return true if the player has filled at least one window, i.e. has winLength in a row.
+     */
+    public boolean hasWon(int playerID) {
+        return openWindows[playerID][winLength] > 0;
+    }
+
+    public boolean isColumnFull(int col) {
+        return heights[col] == rows;
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+
+    public int getWinLength() {
+        return winLength;
+    }
+
+    /**
+     * @return Number of discs on the board.
+     */
+    public int getDiscCount() {
+        return discCount;
+    }
+
+    /**
+     * Clear all discs, column heights and window counters.
+     * Empty positions are reported as -1 (printed as empty string).
      */
     public void initializeMatrix() {
-        for (int i = 0; i < ROWS; i++) {
-            for (int j = 0; j < COLS; j++) {
-                matrix[i][j] = -1;
-            }
+        discs.clear();
+        windowDiscs.clear();
+        discCount = 0;
+        hash = emptyHash;
+        mirrorHash = emptyHash;
+        gridBytes = emptyGridBytes;
+        packedBytes = emptyPackedBytes;
+        discList = null;
+        Arrays.fill(heights, 0);
+        for (int[] counts : openWindows) {
+            Arrays.fill(counts, 0);
+            counts[0] = geometry.getWindowCount();
         }
     }
 
+    /**
+     * Returns how many windows hold exactly the given number of the player's discs
+     * and none of the opponent's. With discs = winLength - 1 these are the open lines
+     * that win on the next disc.
+     *
+     * @param playerID (0 or 1)
+     * @param discs Number of the player's discs in the window (0 to winLength).
+     */
+    public int countOpenWindows(int playerID, int discs) {
+        return openWindows[playerID][discs];
+    }
+
+    /**
+     * @param row Row counted from the top of the board.
+     * @param col Column counted from the left of the board.
+     * @return playerID (0 or 1) of the disc at that position, or -1 if empty.
+     */
     public int getValueAtPosition(int row, int col) {
-        return matrix[row][col];
+        return discs.get(col * rows + (rows - 1 - row)) - 1;
     }
 
     /**
@@ -74,135 +355,158 @@ public class BoardGrid {
      * the respective character to display on console.
      *
      * @param number player ID
-     * @return String 'x', 'o', or ' '.
+     * @return byte 'x', 'o', or ' '.
      */
-    private String classifySymbol(int number) {
+    static byte classifySymbol(int number) {
         switch (number) {
             case 0:
-                return "x";
+                return 'x';
             case 1:
-                return "o";
+                return 'o';
             default:
-                return " ";
+                return ' ';
         }
     }
 
-    private void checkForWinningLine(int row, int col) {
-        searchHorizontally(row);
-        searchVertically(row, col);
-        searchDiagonally(row, col);
+    /**
+     * Copies the rendered grid with the symbol of the new (or removed) disc patched in.
+     */
+    private void renderDisc(int row, int col, int playerID) {
+        byte[] updated = gridBytes.clone();
+        updated[row * textRowLength + col * 3 + 1] = classifySymbol(playerID);
+        gridBytes = updated;
+    }
+
+    private byte[] renderGrid() {
+        byte[] grid = renderEmpty(rows, cols);
+        if (discCount == 0) return grid;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                grid[row * textRowLength + col * 3 + 1] = classifySymbol(getValueAtPosition(row, col));
+            }
+        }
+        return grid;
     }
 
     /**
-     * Check if we are high enough on the board for a vertical line of 5 to exist.
-     * Count the consecutive positions with value as playerID
+     * Renders an empty board of the given size.
      */
-    private void searchVertically(int row, int col) {
-        int counter = 0;
-        if (row > 1) return;
-        for (int i = row; i < (row + WIN_LENGTH); i++) {
-            if (matrix[i][col] == playerID) {
-                counter++;
-            } else {
-                return;
+    static byte[] renderEmpty(int rows, int cols) {
+        int textRowLength = cols * 3 + 1;
+        byte[] grid = new byte[rows * textRowLength];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int position = row * textRowLength + col * 3;
+                grid[position] = '[';
+                grid[position + 1] = ' ';
+                grid[position + 2] = ']';
             }
+            grid[row * textRowLength + textRowLength - 1] = '\n';
         }
-        if (counter == WIN_LENGTH) gameManager.setWinner(playerID);
+        return grid;
     }
 
     /**
-     * Search horizontally at row n for five consecutive positions
-     * containing playerID.
+     * Copies the packed board with the column height and the disc's bit updated.
+     * The bit is only set for discs of player 1, so an emptied cell reads as 0 again.
      */
-    private void searchHorizontally(int row) {
-        int counter = 0;
-        for (int i = 0; i < COLS; i++) {
-            if (matrix[row][i] == playerID) {
-                counter++;
-            } else {
-                counter = 0;
+    private void packDisc(int col, int rowFromBottom, int playerID) {
+        byte[] updated = packedBytes.clone();
+        int cell = col * rows + rowFromBottom;
+        updated[col] = (byte) heights[col];
+        if (playerID == 1) {
+            updated[cols + cell / 8] |= (byte) (1 << (cell % 8));
+        } else {
+            updated[cols + cell / 8] &= (byte) ~(1 << (cell % 8));
+        }
+        packedBytes = updated;
+    }
+
+    private byte[] packBoard() {
+        byte[] packed = new byte[BinaryProtocol.packedBoardLength(rows, cols)];
+        for (int col = 0; col < cols; col++) {
+            packed[col] = (byte) heights[col];
+            for (int rowFromBottom = 0; rowFromBottom < heights[col]; rowFromBottom++) {
+                int cell = col * rows + rowFromBottom;
+                if (discs.get(cell) == 2) packed[cols + cell / 8] |= (byte) (1 << (cell % 8));
             }
-            if (counter == WIN_LENGTH) gameManager.setWinner(playerID);
         }
+        return packed;
     }
 
-    private void searchDiagonally(int row, int col) {
-        if (winningDiagLineImpossible(row, col)) return;
-        searchAscending();
-        searchDescending();
+    private void toggleHashes(int col, int rowFromBottom, int playerID) {
+        hash ^= zobristKey(2L * (col * rows + rowFromBottom) + playerID + 1);
+        mirrorHash ^= zobristKey(2L * ((cols - 1 - col) * rows + rowFromBottom) + playerID + 1);
     }
 
     /**
-     * Traverse grid from left to middle, searching each ascending diagonal line.
+     * Zobrist keys are computed rather than looked up, so no key table grows with the board.
+     * Cells use positive indices and geometries negative ones, so the keys never coincide.
      */
-    private void searchAscending() {
-        searchAscLine(ROWS-2, 0);
-        for (int i = 0; i < WIN_LENGTH; i++) {
-            searchAscLine(ROWS-1, i);
-        }
+    private static long zobristKey(long index) {
+        // SplitMix64's output function: every input bit affects every output bit.
+        long key = ZOBRIST_SEED + index * ZOBRIST_GAMMA;
+        key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+        key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+        return key ^ (key >>> 31);
     }
 
-    /**
-     * Traverse grid from right to middle, searching each descending diagonal line.
-     */
-    private void searchDescending() {
-        searchDescLine(ROWS-2, 8);
-        for (int col = COLS-1; col > WIN_LENGTH-1; col--) {
-            searchDescLine(ROWS-1, col);
-        }
+    private static long geometryKey(BoardGeometry geometry) {
+        long index = ((long) geometry.getRows() * 1024 + geometry.getColumns()) * 1024 + geometry.getWinLength();
+        return zobristKey(-1 - index);
     }
 
-    /**
-     * Search individual ascending diagonal lines.
-     *
-     * @param startingRow Row to start from.
-     * @param startingCol Column to start from.
-     */
-    private void searchAscLine(int startingRow, int startingCol) {
-        int counter = 0;
-        int r = startingRow;
-        for (int c = startingCol; c < (startingCol + (WIN_LENGTH+1)); c++) {
-            if (outOfBounds(r, c)) continue;
-            if (matrix[r][c] == playerID) {
-                counter++;
-            } else {
-                counter = 0;
-            }
-            if (counter == WIN_LENGTH) gameManager.setWinner(playerID);
-            r--;
-        }
+    private static int discsOf(int windowCounts, int playerID) {
+        return (windowCounts >>> (playerID * PLAYER_COUNT_BITS)) & PLAYER_COUNT_MASK;
     }
 
     /**
-     * Search individual descending diagonal lines.
+     * Add a disc to the counters of every window through the cell.
+     * A window stays open for a player only while the opponent has no disc in it,
+     * so the first disc of a player closes the window for the opponent.
      *
-     * @param startingRow Row to start from.
-     * @param startingCol Column to start from.
-     */
-    private void searchDescLine(int startingRow, int startingCol) {
-        int counter = 0;
-        int r = startingRow;
-        for (int c = startingCol; c > (startingCol - (WIN_LENGTH+1)); c--) {
-            if (outOfBounds(r, c)) continue;
-            if (matrix[r][c] == playerID) {
-                counter++;
-            } else {
-                counter = 0;
+     * @return true if one of the windows is now filled by the player.
+     */
+    private boolean addToWindows(int col, int rowFromBottom, int playerID) {
+        int opponentID = 1 - playerID;
+        int oneDisc = 1 << (playerID * PLAYER_COUNT_BITS);
+        boolean won = false;
+        int count = windows.windowsThrough(col, rowFromBottom, windowBuffer);
+        for (int i = 0; i < count; i++) {
+            int window = windowBuffer[i];
+            int counts = windowDiscs.get(window);
+            int own = discsOf(counts, playerID);
+            int opponent = discsOf(counts, opponentID);
+            if (opponent == 0) {
+                openWindows[playerID][own]--;
+                openWindows[playerID][own + 1]++;
             }
-            if (counter == WIN_LENGTH) gameManager.setWinner(playerID);
-            r--;
+            if (own == 0) openWindows[opponentID][opponent]--;
+            windowDiscs.set(window, counts + oneDisc);
+            if (own + 1 == winLength) won = true;
         }
-    }
-
-    private boolean outOfBounds(int row, int col) {
-        return (row < 0 || row > ROWS-1 || col < 0 || col > COLS-1);
+        return won;
     }
 
     /**
-     * Checks if position (row, col) is one of the 4 positions at which
-     * a winning diagonal line of five cannot exist.
+     * Reverse of addToWindows: takes a disc out of every window through the cell,
+     * reopening windows for the opponent that no longer hold any of the player's discs.
      */
-    private boolean winningDiagLineImpossible(int row, int col) {
-        return ((row == 2 || row == 3) && (col == 0 || col == 8));
+    private void removeFromWindows(int col, int rowFromBottom, int playerID) {
+        int opponentID = 1 - playerID;
+        int oneDisc = 1 << (playerID * PLAYER_COUNT_BITS);
+        int count = windows.windowsThrough(col, rowFromBottom, windowBuffer);
+        for (int i = 0; i < count; i++) {
+            int window = windowBuffer[i];
+            int counts = windowDiscs.get(window);
+            int own = discsOf(counts, playerID) - 1;
+            int opponent = discsOf(counts, opponentID);
+            if (opponent == 0) {
+                openWindows[playerID][own + 1]--;
+                openWindows[playerID][own]++;
+            }
+            if (own == 0) openWindows[opponentID][opponent]++;
+            windowDiscs.set(window, counts - oneDisc);
+        }
     }
 }
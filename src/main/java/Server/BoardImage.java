@@ -0,0 +1,116 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+/**
+ * The discs of a game's board at one state version, as the rendered text board and in
+ * BinaryProtocol's packed layout.
+ *
+ * Small boards hand over the renderings they keep up to date on every move. Large boards
+ * keep only a list of their discs, newest first, whose nodes are shared by the images of
+ * every later version, so an image costs memory for the discs on the board rather than for
+ * its area. Its renderings are built when first asked for and then kept.
+ */
+public final class BoardImage {
+
+    /**
+     * A disc in an image's list. Nodes are never changed, so any number of images can share them.
+     */
+    static final class Disc {
+        final int cell;
+        final int playerID;
+        final Disc next;
+
+        Disc(int cell, int playerID, Disc next) {
+            this.cell = cell;
+            this.playerID = playerID;
+            this.next = next;
+        }
+
+        /**
+         * @return The list without the disc in the cell, sharing the nodes after it.
+         */
+        Disc without(int cell) {
+            int newer = 0;
+            Disc found = this;
+            while (found != null && found.cell != cell) {
+                found = found.next;
+                newer++;
+            }
+            if (found == null) return this;
+            Disc[] copied = new Disc[newer];
+            Disc disc = this;
+            for (int i = 0; i < newer; i++, disc = disc.next) {
+                copied[i] = disc;
+            }
+            Disc rest = found.next;
+            for (int i = newer - 1; i >= 0; i--) {
+                rest = new Disc(copied[i].cell, copied[i].playerID, rest);
+            }
+            return rest;
+        }
+    }
+
+    private final int rows;
+    private final int cols;
+    // Discs of a large board, or null for a small board or an empty one.
+    private final Disc discs;
+    // Built on first use for large boards. Racing readers may both build; they build equal arrays.
+    private volatile byte[] text;
+    private volatile byte[] packed;
+
+    private BoardImage(int rows, int cols, Disc discs, byte[] text, byte[] packed) {
+        this.rows = rows;
+        this.cols = cols;
+        this.discs = discs;
+        this.text = text;
+        this.packed = packed;
+    }
+
+    /**
+     * @param text Rendered board. The array is shared and must not be modified.
+     * @param packed Board in BinaryProtocol's packed layout. The array is shared and must not be modified.
+     */
+    public static BoardImage of(byte[] text, byte[] packed) {
+        return new BoardImage(0, 0, null, text, packed);
+    }
+
+    static BoardImage of(int rows, int cols, Disc discs) {
+        return new BoardImage(rows, cols, discs, null, null);
+    }
+
+    /**
+     * Returns the board rendered as text, one "[x]" per column and a newline per row.
+     * The array is shared and must not be modified.
+     */
+    public byte[] getText() {
+        byte[] rendered = text;
+        if (rendered == null) {
+            rendered = BoardGrid.renderEmpty(rows, cols);
+            int textRowLength = cols * 3 + 1;
+            for (Disc disc = discs; disc != null; disc = disc.next) {
+                int row = rows - 1 - disc.cell % rows;
+                rendered[row * textRowLength + (disc.cell / rows) * 3 + 1] = BoardGrid.classifySymbol(disc.playerID);
+            }
+            text = rendered;
+        }
+        return rendered;
+    }
+
+    /**
+     * Returns the board in BinaryProtocol's packed layout. The array is shared and must not be modified.
+     */
+    public byte[] getPacked() {
+        byte[] board = packed;
+        if (board == null) {
+            board = new byte[BinaryProtocol.packedBoardLength(rows, cols)];
+            for (Disc disc = discs; disc != null; disc = disc.next) {
+                int col = disc.cell / rows;
+                board[col] = (byte) Math.max(board[col] & 0xFF, disc.cell % rows + 1);
+                if (disc.playerID == 1) board[cols + disc.cell / 8] |= (byte) (1 << (disc.cell % 8));
+            }
+            packed = board;
+        }
+        return board;
+    }
+}
@@ -0,0 +1,161 @@
+package Server;
+
+import java.util.Arrays;
+
+/**
+ * Small non-negative counts by index, all zero to begin with.
+ * The dense table is a plain array. The sparse table only keeps the non-zero counts,
+ * so its memory follows the number of discs on the board rather than the board's area.
+ */
+abstract class CountTable {
+
+    abstract int get(int index);
+
+    /**
+     * Sets the count at the index. Setting a count back to 0 frees its space in a sparse table.
+     */
+    abstract void set(int index, int count);
+
+    abstract void clear();
+
+    abstract CountTable copy();
+
+    static CountTable dense(int size) {
+        return new Dense(new int[size]);
+    }
+
+    static CountTable sparse() {
+        return new Sparse();
+    }
+
+    private static final class Dense extends CountTable {
+        private final int[] counts;
+
+        Dense(int[] counts) {
+            this.counts = counts;
+        }
+
+        @Override
+        int get(int index) {
+            return counts[index];
+        }
+
+        @Override
+        void set(int index, int count) {
+            counts[index] = count;
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(counts, 0);
+        }
+
+        @Override
+        CountTable copy() {
+            return new Dense(counts.clone());
+        }
+    }
+
+    /**
+     * Open addressing with linear probing. Keys are stored as index + 1, so 0 marks a free slot,
+     * and removals shift the following entries back instead of leaving tombstones.
+     */
+    private static final class Sparse extends CountTable {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private int[] keys;
+        private int[] counts;
+        private int size;
+
+        Sparse() {
+            clear();
+        }
+
+        private Sparse(Sparse table) {
+            this.keys = table.keys.clone();
+            this.counts = table.counts.clone();
+            this.size = table.size;
+        }
+
+        @Override
+        int get(int index) {
+            int mask = keys.length - 1;
+            for (int slot = slot(index, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == index + 1) return counts[slot];
+            }
+            return 0;
+        }
+
+        @Override
+        void set(int index, int count) {
+            int mask = keys.length - 1;
+            int slot = slot(index, mask);
+            while (keys[slot] != 0 && keys[slot] != index + 1) {
+                slot = (slot + 1) & mask;
+            }
+            if (count == 0) {
+                if (keys[slot] != 0) remove(slot);
+                return;
+            }
+            if (keys[slot] == 0) {
+                keys[slot] = index + 1;
+                size++;
+            }
+            counts[slot] = count;
+            // Keep the table at most half full, so probe sequences stay short.
+            if (size * 2 > keys.length) resize(keys.length * 2);
+        }
+
+        @Override
+        void clear() {
+            keys = new int[INITIAL_CAPACITY];
+            counts = new int[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        @Override
+        CountTable copy() {
+            return new Sparse(this);
+        }
+
+        private void remove(int slot) {
+            int mask = keys.length - 1;
+            keys[slot] = 0;
+            size--;
+            // Move back any later entry of the run that can no longer be reached past the gap.
+            int gap = slot;
+            for (int next = (slot + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                int home = slot(keys[next] - 1, mask);
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    counts[gap] = counts[next];
+                    keys[next] = 0;
+                    gap = next;
+                }
+            }
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[capacity];
+            counts = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0) continue;
+                int slot = slot(oldKeys[i] - 1, mask);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+
+        private static int slot(int index, int mask) {
+            // Fibonacci hashing spreads neighbouring cells and windows over the table.
+            int hash = index * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
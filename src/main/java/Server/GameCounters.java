@@ -0,0 +1,44 @@
+package Server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Totals across all games of a registry, updated by each game's writer as it applies a change.
+ * Counting never locks or allocates, so it costs a move no more than an atomic increment.
+ */
+public class GameCounters {
+
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong wins = new AtomicLong();
+
+    void countMove() {
+        moves.incrementAndGet();
+    }
+
+    void countWin() {
+        wins.incrementAndGet();
+    }
+
+    /**
+     * Takes back everything counted after the totals were the given ones, e.g. the changes replayed
+     * while recovering, which were counted when they were first made. Only called while no game is played.
+     */
+    public void resetTo(long moves, long wins) {
+        this.moves.set(moves);
+        this.wins.set(wins);
+    }
+
+    /**
+     * @return Number of discs placed since the server started.
+     */
+    public long getMoves() {
+        return moves.get();
+    }
+
+    /**
+     * @return Number of games won since the server started.
+     */
+    public long getWins() {
+        return wins.get();
+    }
+}
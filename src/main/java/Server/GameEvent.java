@@ -0,0 +1,82 @@
+package Server;
+
+/**
+ * Describes a single change to a game, as published by the GameManager.
+ */
+public class GameEvent {
+
+    public enum Type {
+        JOIN, QUIT, MOVE, TURN, WINNER
+    }
+
+    private final Type type;
+    private final long stateVersion;
+    private final String playerName;
+    private final int seat;
+    private final int column;
+    private final int row;
+
+    private GameEvent(Type type, long stateVersion, String playerName, int seat, int column, int row) {
+        this.type = type;
+        this.stateVersion = stateVersion;
+        this.playerName = playerName;
+        this.seat = seat;
+        this.column = column;
+        this.row = row;
+    }
+
+    /**
+     * Creates a JOIN, QUIT or WINNER event naming the player it concerns.
+     */
+    public static GameEvent forPlayer(Type type, long stateVersion, String playerName) {
+        return new GameEvent(type, stateVersion, playerName, -1, -1, -1);
+    }
+
+    /**
+     * Creates a TURN event for the player who is to move next.
+     *
+     * @param seat Seat of that player, which tells two players of the same name apart.
+     */
+    public static GameEvent forTurn(long stateVersion, String playerName, int seat) {
+        return new GameEvent(Type.TURN, stateVersion, playerName, seat, -1, -1);
+    }
+
+    /**
+     * Creates a MOVE event for a disc that landed at (row, column).
+     *
+     * @param seat Seat of the player who moved, which tells two players of the same name apart.
+     */
+    public static GameEvent forMove(long stateVersion, String playerName, int seat, int column, int row) {
+        return new GameEvent(Type.MOVE, stateVersion, playerName, seat, column, row);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The game's state version once this event has been applied.
+     */
+    public long getStateVersion() {
+        return stateVersion;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * @return Seat of the player who made a MOVE or whose TURN it is, or -1 for other events.
+     */
+    public int getSeat() {
+        return seat;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public int getRow() {
+        return row;
+    }
+}
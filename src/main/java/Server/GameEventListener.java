@@ -0,0 +1,15 @@
+package Server;
+
+import java.util.List;
+
+/**
+ * Receives the events produced by each change to a game.
+ */
+public interface GameEventListener {
+
+    /**
+     * Called on the mutating thread once per change, with all events of that change in order.
+     * Implementations must return quickly and hand any slow work to another thread.
+     */
+    void onGameEvents(GameManager gameManager, List<GameEvent> events);
+}
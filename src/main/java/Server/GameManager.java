@@ -1,22 +1,118 @@
 package Server;
 
+import Server.journal.MoveJournal;
+
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 /**
  * Communicates the game state with the WebServer class.
  * Manages the game (stores names, whose turn it is, who quit, who won etc.)
+ *
+ * Every change is queued as a command and applied by a single writer at a time:
+ * whichever caller finds no writer active runs all queued commands, the others
+ * wait for theirs to be applied. The seats, turn, winner and board are
+ * therefore only touched by one thread at a time, without a lock around them.
+ * Readers never wait: they get the immutable snapshot published after each change.
+ *
+ * Players are kept by seat, as the int id of their session and the name shown for them.
+ * Moves and quits of a session are matched by id; names are only put into snapshots and events.
  */
 public class GameManager {
 
-    List<String> players = new ArrayList<>();
-    // represents which players turn it is - players[0] or players[1]
+    public static final int MAX_PLAYERS = 2;
+    // Id of a seat taken by name only, e.g. by a /batch join or a join replayed from the journal.
+    public static final int NO_PLAYER_ID = -1;
+    // Id of the seat of the server's computer player, which is journaled and restored with the seat.
+    public static final int COMPUTER_PLAYER_ID = -2;
+
+    /**
+     * Outcome of a player's move.
+     */
+    public enum MoveResult {
+        MADE, NOT_YOUR_TURN, INVALID_COLUMN
+    }
+
+    // Seats in joining order. Only read and written by the thread currently applying commands.
+    private final int[] seatPlayerIds = new int[MAX_PLAYERS];
+    private final String[] seatNames = new String[MAX_PLAYERS];
+    private int seatedPlayers = 0;
+    // Set once the game is emptied for removal from the registry. Written by the thread applying commands.
+    private volatile boolean closed;
+    // represents which players turn it is - seat 0 or seat 1
     private int playerTurn = 0;
     private String winner = "";
-    private BoardGrid boardGrid = new BoardGrid(this);
+    private final BoardGeometry geometry;
+    private final GameCounters counters;
+    // Set once while the game is created, before other threads can see it.
+    private MoveJournal journal;
+    private long gameId;
+    private BoardGrid boardGrid;
+    // Incremented whenever the board, turn, players or winner change.
+    private long stateVersion = 0;
+    // Events of the change in progress, published together once it completes.
+    private List<GameEvent> pendingEvents = new ArrayList<>();
+    // Journal records of the change in progress. They are appended only once the change's
+    // snapshot is published, so a snapshot read after a journal position includes every
+    // change recorded before that position.
+    private final List<Runnable> pendingJournalAppends = new ArrayList<>();
+
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    // Set while some thread is applying queued commands.
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private volatile Thread writer;
+    private volatile GameSnapshot snapshot;
+    private final List<GameEventListener> listeners = new CopyOnWriteArrayList<>();
 
     public GameManager() {
-        setBoardGrid(boardGrid);
+        this(BoardGeometry.STANDARD);
+    }
+
+    public GameManager(BoardGeometry geometry) {
+        this(geometry, new GameCounters());
+    }
+
+    /**
+     * @param counters Totals this game adds its moves and wins to.
+     */
+    public GameManager(BoardGeometry geometry, GameCounters counters) {
+        this.geometry = geometry;
+        this.counters = counters;
+        setBoardGrid(new BoardGrid(this, geometry));
+        publishSnapshot();
+    }
+
+    /**
+     * Rebuilds a game from a saved state. Nothing is journaled or counted, since
+     * the changes that led to the state already were.
+     *
+     * @param playerTurn Seat of the player whose turn it is.
+     * @param computerSeat Seat of the server's computer player, or -1 if it does not play.
+     * @param packedBoard Discs in the packed layout of BinaryProtocol.
+     */
+    public static GameManager restore(BoardGeometry geometry, GameCounters counters, long stateVersion,
+                                      List<String> players, int playerTurn, int computerSeat, String winner,
+                                      byte[] packedBoard) {
+        GameManager game = new GameManager(geometry, counters);
+        game.boardGrid.dropPackedDiscs(packedBoard, false);
+        for (int seat = 0; seat < players.size(); seat++) {
+            game.seat(seat == computerSeat ? COMPUTER_PLAYER_ID : NO_PLAYER_ID, players.get(seat));
+        }
+        game.playerTurn = playerTurn;
+        game.winner = winner;
+        game.stateVersion = stateVersion;
+        game.publishSnapshot();
+        return game;
     }
 
     /**
@@ -25,16 +121,73 @@ public class GameManager {
      * @return String all players
      */
     public String getPlayers() {
-        String allPlayers = "";
-        for (String p : players) {
-            allPlayers += p + " ";
+        StringBuilder allPlayers = new StringBuilder();
+        for (String p : snapshot.getPlayers()) {
+            allPlayers.append(p).append(' ');
         }
-        return allPlayers;
+        return allPlayers.toString();
+    }
+
+    /**
+     * Makes a move for whichever player's turn it is.
+     *
+     * @return false if the column is full or does not exist, in which case nothing changes.
+     */
+    public boolean handlePlayerMove(int column) {
+        return execute(() -> makeMove(column));
+    }
+
+    /**
+     * Makes a move for the player with the given id, if it is their turn.
+     *
+     * @return MADE, or why the move was refused, in which case nothing changes.
+     */
+    public MoveResult handlePlayerMove(int playerId, int column) {
+        return execute(() -> {
+            if (seatedPlayers < MAX_PLAYERS || seatPlayerIds[playerTurn] != playerId) return MoveResult.NOT_YOUR_TURN;
+            return makeMove(column) ? MoveResult.MADE : MoveResult.INVALID_COLUMN;
+        });
+    }
+
+    /**
+     * Makes a move for the player with the given id, if it is their turn and the game is still at the given
+     * state version. Lets a player who decided on a move from an older state drop it instead of making it
+     * on a changed board, without a gap between the check and the move.
+     *
+     * @return false if the game changed since the version, is not full, it is not this player's turn
+     *         or the column is full or does not exist, in which case nothing changes.
+     */
+    public boolean handlePlayerMove(int playerId, int column, long stateVersion) {
+        return execute(() -> {
+            if (this.stateVersion != stateVersion) return false;
+            if (seatedPlayers < MAX_PLAYERS || seatPlayerIds[playerTurn] != playerId) return false;
+            return makeMove(column);
+        });
     }
 
-    public void handlePlayerMove(int column) {
-        boardGrid.makeMove(column, playerTurn);
+    /**
+     * @return false if the column is full or does not exist, in which case the board, turn and version stay.
+     */
+    private boolean makeMove(int column) {
+        String mover = currentPlayerTurn();
+        String previousWinner = winner;
+        int row = boardGrid.makeMove(column, playerTurn);
+        if (row < 0) return false;
+        long version = ++stateVersion;
+        if (journal != null) pendingJournalAppends.add(() -> journal.appendMove(gameId, version, column));
+        pendingEvents.add(GameEvent.forMove(version, mover, playerTurn, column, row));
+        counters.countMove();
+        if (!winner.equals(previousWinner)) {
+            counters.countWin();
+            if (journal != null) {
+                String newWinner = winner;
+                pendingJournalAppends.add(() -> journal.appendWin(gameId, version, newWinner));
+            }
+            pendingEvents.add(GameEvent.forPlayer(GameEvent.Type.WINNER, version, winner));
+        }
         switchPlayerTurn();
+        pendingEvents.add(GameEvent.forTurn(version, currentPlayerTurn(), playerTurn));
+        return true;
     }
 
     private void switchPlayerTurn() {
@@ -45,38 +198,289 @@ public class GameManager {
         }
     }
 
-    public void addPlayer(String playerName) {
-        players.add(playerName);
+    /**
+     * Adds the player unless the game is already full. Checking and adding happen
+     * in one command, so two players racing for the last seat cannot both get it.
+     *
+     * @return true if the player joined, false if the game was full.
+     */
+    public boolean addPlayer(String playerName) {
+        return addPlayer(NO_PLAYER_ID, playerName);
+    }
+
+    /**
+     * Adds the player with the given session id unless the game is already full.
+     *
+     * @param playerId Id later moves and quits of the player are matched by, or NO_PLAYER_ID.
+     * @return true if the player joined, false if the game was full or closed.
+     */
+    public boolean addPlayer(int playerId, String playerName) {
+        return execute(() -> {
+            if (closed || seatedPlayers >= MAX_PLAYERS) return false;
+            seat(playerId, playerName);
+            long version = ++stateVersion;
+            if (journal != null) {
+                boolean computer = playerId == COMPUTER_PLAYER_ID;
+                pendingJournalAppends.add(() -> journal.appendJoin(gameId, version, playerName, computer));
+            }
+            pendingEvents.add(GameEvent.forPlayer(GameEvent.Type.JOIN, version, playerName));
+            pendingEvents.add(GameEvent.forTurn(version, currentPlayerTurn(), playerTurn));
+            return true;
+        });
     }
 
+    /**
+     * Removes the player who joined by name only under the given name, if there is one.
+     * Players with a session can only be removed by their id.
+     */
     public void removePlayer(String playerName) {
-        players.remove(playerName);
+        execute(() -> {
+            int seat = 0;
+            while (seat < seatedPlayers
+                    && (seatPlayerIds[seat] != NO_PLAYER_ID || !seatNames[seat].equals(playerName))) {
+                seat++;
+            }
+            removeSeat(seat, playerName);
+            return null;
+        });
+    }
+
+    /**
+     * Removes the player with the given session id.
+     *
+     * @return false if no seat of this game belongs to the player, in which case nothing changes.
+     */
+    public boolean removePlayer(int playerId) {
+        return execute(() -> {
+            for (int seat = 0; seat < seatedPlayers; seat++) {
+                if (seatPlayerIds[seat] == playerId) {
+                    removeSeat(seat, seatNames[seat]);
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    private void seat(int playerId, String playerName) {
+        seatPlayerIds[seatedPlayers] = playerId;
+        seatNames[seatedPlayers] = playerName;
+        seatedPlayers++;
+    }
+
+    /**
+     * Frees the seat, if it is taken, moving the players behind it up, and resets the board.
+     */
+    private void removeSeat(int seat, String playerName) {
+        boolean computer = seat < seatedPlayers && seatPlayerIds[seat] == COMPUTER_PLAYER_ID;
+        if (seat < seatedPlayers) {
+            for (int next = seat + 1; next < seatedPlayers; next++) {
+                seatPlayerIds[next - 1] = seatPlayerIds[next];
+                seatNames[next - 1] = seatNames[next];
+            }
+            seatNames[--seatedPlayers] = null;
+        }
         // reset board.
         boardGrid.initializeMatrix();
-        if (players.size() == 1) playerTurn = 0;
+        if (seatedPlayers == 1) playerTurn = 0;
+        long version = ++stateVersion;
+        if (journal != null) {
+            pendingJournalAppends.add(() -> journal.appendQuit(gameId, version, playerName, computer));
+        }
+        pendingEvents.add(GameEvent.forPlayer(GameEvent.Type.QUIT, version, playerName));
+        pendingEvents.add(GameEvent.forTurn(version, currentPlayerTurn(), playerTurn));
+    }
+
+    /**
+     * @return Names of the players who joined by name only, in seat order.
+     */
+    public List<String> getPlayersWithoutSession() {
+        return execute(() -> {
+            List<String> names = new ArrayList<>();
+            for (int seat = 0; seat < seatedPlayers; seat++) {
+                if (seatPlayerIds[seat] == NO_PLAYER_ID) names.add(seatNames[seat]);
+            }
+            return names;
+        });
+    }
+
+    /**
+     * Records every later change of this game in the journal, under the given game id.
+     * Must be called before the game is shared with other threads.
+     */
+    public void setJournal(MoveJournal journal, long gameId) {
+        this.journal = journal;
+        this.gameId = gameId;
     }
 
     public void setBoardGrid(BoardGrid grid) {
         this.boardGrid = grid;
     }
 
+    /**
+     * Called by the BoardGrid while it applies a winning move.
+     */
     public void setWinner(int id) {
-        this.winner = players.get(id);
+        // A restored board is rebuilt before its winner is set from the saved state.
+        if (id >= seatedPlayers) return;
+        this.winner = seatNames[id];
+    }
+
+    /**
+     * Returns the state published after the latest change. Never blocks.
+     */
+    public GameSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the size and win length of the board, fixed when the game was created.
+     */
+    public BoardGeometry getBoardGeometry() {
+        return geometry;
     }
 
     public String getWinner() {
-        return this.winner;
+        return snapshot.getWinner();
     }
 
     public String getBoardStateAsText() {
-        return boardGrid.getGridAsText();
+        return new String(snapshot.getBoardBytes(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the board rendered as text bytes. The array is shared and must not be modified.
+     */
+    public byte[] getBoardStateAsBytes() {
+        return snapshot.getBoardBytes();
     }
 
     public String getPlayerTurn() {
-        return players.get(playerTurn);
+        return snapshot.getPlayerTurn();
+    }
+
+    public List<String> getPlayerNames() {
+        return snapshot.getPlayers();
     }
 
     public int numberOfPlayers() {
-        return players.size();
+        return snapshot.numberOfPlayers();
+    }
+
+    public long getStateVersion() {
+        return snapshot.getStateVersion();
+    }
+
+    /**
+     * Closes the game for good if nobody is seated, so nobody can join it anymore.
+     *
+     * @return true if the game is closed, false if a player is still seated.
+     */
+    public boolean close() {
+        return execute(() -> {
+            if (seatedPlayers == 0) closed = true;
+            return closed;
+        });
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Registers a listener that is told about every change to this game.
+     * Listeners are called by the thread applying the change, and must not
+     * change the game from within the call.
+     */
+    public void addGameEventListener(GameEventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeGameEventListener(GameEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    private String currentPlayerTurn() {
+        // The last player to quit still gets the game state in the /quit response.
+        if (seatedPlayers == 0) return "";
+        Objects.checkIndex(playerTurn, seatedPlayers);
+        return seatNames[playerTurn];
+    }
+
+    /**
+     * Queues a change and returns once it has been applied, publishing its snapshot and events.
+     * Changes are applied one at a time, in the order they were queued.
+     */
+    private <T> T execute(Supplier<T> change) {
+        if (writer == Thread.currentThread()) {
+            throw new IllegalStateException("A game cannot be changed from one of its own event listeners.");
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        commands.add(() -> {
+            try {
+                T value = change.get();
+                publishSnapshot();
+                appendToJournal();
+                publishEvents();
+                result.complete(value);
+            } catch (Throwable e) {
+                // Keep the writer loop going for the commands queued behind this one.
+                pendingEvents.clear();
+                pendingJournalAppends.clear();
+                publishSnapshot();
+                result.completeExceptionally(e);
+            }
+        });
+        applyCommands();
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Becomes the writer if no other thread is, and applies commands until the queue is empty.
+     * A command queued just after the queue ran empty is picked up by the loop's re-check.
+     */
+    private void applyCommands() {
+        while (!commands.isEmpty() && writing.compareAndSet(false, true)) {
+            writer = Thread.currentThread();
+            try {
+                Runnable command;
+                while ((command = commands.poll()) != null) {
+                    command.run();
+                }
+            } finally {
+                writer = null;
+                writing.set(false);
+            }
+        }
+    }
+
+    private void publishSnapshot() {
+        List<String> players = Arrays.asList(Arrays.copyOf(seatNames, seatedPlayers));
+        snapshot = new GameSnapshot(stateVersion, players, currentPlayerTurn(), playerTurn,
+                Arrays.copyOf(seatPlayerIds, seatedPlayers), winner, geometry, boardGrid.getImage());
+    }
+
+    private void appendToJournal() {
+        if (pendingJournalAppends.isEmpty()) return;
+        for (Runnable append : pendingJournalAppends) {
+            append.run();
+        }
+        pendingJournalAppends.clear();
+    }
+
+    private void publishEvents() {
+        if (pendingEvents.isEmpty()) return;
+        List<GameEvent> events = pendingEvents;
+        pendingEvents = new ArrayList<>();
+        for (GameEventListener listener : listeners) {
+            listener.onGameEvents(this, events);
+        }
     }
 }
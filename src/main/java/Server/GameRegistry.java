@@ -0,0 +1,203 @@
+package Server;
+
+import Server.journal.MoveJournal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Holds every game hosted by the server, keyed by game id.
+ * Lookups never lock, and creating a game only locks the map bin of its own id, besides
+ * a shared lock that only taking a journal mark for a snapshot waits for.
+ */
+public class GameRegistry {
+
+    // Game joined by clients that do not ask for a specific game.
+    public static final long DEFAULT_GAME_ID = 0;
+
+    private final ConcurrentMap<Long, GameManager> games = new ConcurrentHashMap<>();
+    private final AtomicLong nextGameId = new AtomicLong(DEFAULT_GAME_ID + 1);
+    private final GameCounters counters = new GameCounters();
+    // Set before the server starts.
+    private MoveJournal journal;
+    // Held while creating a game, so that a journal mark never lands between a game's
+    // creation record and the game showing up in the registry.
+    private final ReadWriteLock creations = new ReentrantReadWriteLock();
+
+    public GameRegistry() {
+        games.put(DEFAULT_GAME_ID, new GameManager(BoardGeometry.STANDARD, counters));
+    }
+
+    /**
+     * @return The game with the given id, or null if no such game exists.
+     */
+    public GameManager getGame(long gameId) {
+        return games.get(gameId);
+    }
+
+    /**
+     * Returns the game with the given id, creating it first if it does not exist yet.
+     */
+    public GameManager getOrCreateGame(long gameId) {
+        return getOrCreateGame(gameId, BoardGeometry.STANDARD);
+    }
+
+    /**
+     * Returns the game with the given id, creating it on a board of the given geometry
+     * if it does not exist yet. An existing game keeps its own board.
+     */
+    public GameManager getOrCreateGame(long gameId, BoardGeometry geometry) {
+        while (true) {
+            GameManager game = games.get(gameId);
+            if (game == null) {
+                creations.readLock().lock();
+                try {
+                    game = games.computeIfAbsent(gameId, id -> newGame(id, geometry));
+                } finally {
+                    creations.readLock().unlock();
+                }
+            }
+            if (!game.isClosed()) return game;
+            // A closed game is on its way out; finish removing it so a new game can take its id.
+            removeGame(gameId, game);
+        }
+    }
+
+    /**
+     * Creates a game under a fresh id that has not been handed out before.
+     *
+     * @return id of the new game.
+     */
+    public long createGame() {
+        return createGame(BoardGeometry.STANDARD);
+    }
+
+    /**
+     * Creates a game on a board of the given geometry under a fresh id.
+     *
+     * @return id of the new game.
+     */
+    public long createGame(BoardGeometry geometry) {
+        boolean[] created = {false};
+        long gameId;
+        creations.readLock().lock();
+        try {
+            do {
+                gameId = nextGameId.getAndIncrement();
+                games.computeIfAbsent(gameId, id -> {
+                    created[0] = true;
+                    return newGame(id, geometry);
+                });
+            } while (!created[0]);
+        } finally {
+            creations.readLock().unlock();
+        }
+        return gameId;
+    }
+
+    public void setGame(long gameId, GameManager gameManager) {
+        games.put(gameId, gameManager);
+    }
+
+    /**
+     * Removes a game once nobody plays in it anymore. The game is closed first, so a player who
+     * looked it up just before cannot join it once it is gone. A game someone has joined in the
+     * meantime is kept, and so is a newer game under the same id.
+     * The default game is kept so that clients without a game id can always join.
+     *
+     * @return true if the game is gone, false if it is kept.
+     */
+    public boolean removeGame(long gameId, GameManager game) {
+        if (gameId == DEFAULT_GAME_ID || !game.close()) return false;
+        // Journaled while the id's bin is locked, so it cannot land after the creation of a new game under the same id.
+        games.computeIfPresent(gameId, (id, current) -> {
+            if (current != game || current.numberOfPlayers() != 0) return current;
+            if (journal != null) journal.appendRemove(id);
+            return null;
+        });
+        return true;
+    }
+
+    /**
+     * Records the changes of every game, present and future, in the journal.
+     * Must be called before the games are shared with other threads.
+     */
+    public void setJournal(MoveJournal journal) {
+        this.journal = journal;
+        games.forEach((gameId, game) -> game.setJournal(journal, gameId));
+    }
+
+    /**
+     * Returns the journal's current position, once every game created before that position
+     * can be seen in the registry. Games created afterwards have their creation journaled
+     * after the position.
+     */
+    public long markJournal() {
+        creations.writeLock().lock();
+        try {
+            return journal.position();
+        } finally {
+            creations.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Passes every game and its id to the consumer, without blocking changes to the registry.
+     */
+    public void forEachGame(BiConsumer<Long, GameManager> consumer) {
+        games.forEach(consumer);
+    }
+
+    /**
+     * @return The id the next created game gets, unless that id has been taken since.
+     */
+    public long getNextGameId() {
+        return nextGameId.get();
+    }
+
+    /**
+     * Makes sure that ids below the given one are never handed out to new games, e.g. after restoring games.
+     */
+    public void skipGameIdsBelow(long gameId) {
+        nextGameId.accumulateAndGet(gameId, Math::max);
+    }
+
+    /**
+     * Creates a game that is not registered yet. With a journal, the game's creation is
+     * recorded before anyone can join it.
+     */
+    private GameManager newGame(long gameId, BoardGeometry geometry) {
+        GameManager game = new GameManager(geometry, counters);
+        if (journal != null) {
+            journal.appendCreate(gameId, geometry.getRows(), geometry.getColumns(), geometry.getWinLength());
+            game.setJournal(journal, gameId);
+        }
+        return game;
+    }
+
+    public int numberOfGames() {
+        return games.size();
+    }
+
+    /**
+     * @return Number of players seated across all games, read from each game's latest snapshot.
+     */
+    public int numberOfPlayers() {
+        int players = 0;
+        for (GameManager game : games.values()) {
+            players += game.numberOfPlayers();
+        }
+        return players;
+    }
+
+    /**
+     * Returns the moves and wins of every game this registry created.
+     */
+    public GameCounters getCounters() {
+        return counters;
+    }
+}
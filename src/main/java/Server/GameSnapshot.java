@@ -0,0 +1,156 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable view of a game, published by the GameManager after every change.
+ * Everything in one snapshot belongs to the same state version, so a response
+ * built from it never mixes the board of one change with the turn of another.
+ */
+public final class GameSnapshot {
+
+    private final long stateVersion;
+    private final List<String> players;
+    private final String playerTurn;
+    private final int playerTurnIndex;
+    private final int[] playerIds;
+    private final String winner;
+    private final BoardGeometry geometry;
+    private final BoardImage board;
+    // Encoded on first use and then shared by every binary /state response for this version.
+    private volatile byte[] binaryState;
+
+    /**
+     * @param players Player names, in joining order. The list is taken over and must not be modified.
+     * @param boardBytes Rendered board. The array is shared and must not be modified.
+     * @param packedBoard Board in BinaryProtocol's packed layout. The array is shared and must not be modified.
+     */
+    public GameSnapshot(long stateVersion, List<String> players, String playerTurn, String winner,
+                        BoardGeometry geometry, byte[] boardBytes, byte[] packedBoard) {
+        this(stateVersion, players, playerTurn, Math.max(0, players.indexOf(playerTurn)), winner,
+                geometry, boardBytes, packedBoard);
+    }
+
+    /**
+     * @param playerTurnIndex Index in players of the player whose turn it is, which tells
+     *                        two players of the same name apart.
+     */
+    public GameSnapshot(long stateVersion, List<String> players, String playerTurn, int playerTurnIndex,
+                        String winner, BoardGeometry geometry, byte[] boardBytes, byte[] packedBoard) {
+        this(stateVersion, players, playerTurn, playerTurnIndex, noPlayerIds(players.size()), winner, geometry,
+                BoardImage.of(boardBytes, packedBoard));
+    }
+
+    /**
+     * @param playerIds Ids of the seated players, in the order of players. The array is taken over
+     *                  and must not be modified.
+     * @param board Discs of this version, rendered when first read.
+     */
+    public GameSnapshot(long stateVersion, List<String> players, String playerTurn, int playerTurnIndex,
+                        int[] playerIds, String winner, BoardGeometry geometry, BoardImage board) {
+        this.stateVersion = stateVersion;
+        this.players = Collections.unmodifiableList(players);
+        this.playerTurnIndex = playerTurnIndex;
+        this.playerIds = playerIds;
+        this.playerTurn = playerTurn;
+        this.winner = winner;
+        this.geometry = geometry;
+        this.board = board;
+    }
+
+    private static int[] noPlayerIds(int players) {
+        int[] playerIds = new int[players];
+        Arrays.fill(playerIds, GameManager.NO_PLAYER_ID);
+        return playerIds;
+    }
+
+    public long getStateVersion() {
+        return stateVersion;
+    }
+
+    public List<String> getPlayers() {
+        return players;
+    }
+
+    public int numberOfPlayers() {
+        return players.size();
+    }
+
+    /**
+     * @return Name of the player whose turn it is, or an empty string if nobody is playing.
+     */
+    public String getPlayerTurn() {
+        return playerTurn;
+    }
+
+    /**
+     * @return Index in getPlayers() of the player whose turn it is, or 0 if nobody is playing.
+     */
+    public int getPlayerTurnIndex() {
+        return playerTurnIndex;
+    }
+
+    /**
+     * @return Index in getPlayers() of the server's computer player, or -1 if it does not play in this game.
+     */
+    public int getComputerSeat() {
+        return getSeat(GameManager.COMPUTER_PLAYER_ID);
+    }
+
+    /**
+     * @return Index in getPlayers() of the player with the given session id, or -1 if they are not
+     *         seated. Players who joined by name only share GameManager.NO_PLAYER_ID and have no seat here.
+     */
+    public int getSeat(int playerId) {
+        if (playerId == GameManager.NO_PLAYER_ID) return -1;
+        for (int seat = 0; seat < playerIds.length; seat++) {
+            if (playerIds[seat] == playerId) return seat;
+        }
+        return -1;
+    }
+
+    /**
+     * @return Name of the winner, or an empty string if nobody has won.
+     */
+    public String getWinner() {
+        return winner;
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Returns the board rendered as text bytes, on first use for large boards.
+     * The array is shared and must not be modified.
+     */
+    public byte[] getBoardBytes() {
+        return board.getText();
+    }
+
+    /**
+     * Returns the board in BinaryProtocol's packed layout. The array is shared and must not be modified.
+     */
+    public byte[] getPackedBoard() {
+        return board.getPacked();
+    }
+
+    /**
+     * Returns the whole state in BinaryProtocol's encoding. The array is shared and must not be modified.
+     */
+    public byte[] getBinaryState() {
+        byte[] encoded = binaryState;
+        if (encoded == null) {
+            // Racing readers may both encode; they produce equal arrays, and either may be kept.
+            encoded = BinaryProtocol.encodeState(stateVersion, geometry.getRows(), geometry.getColumns(),
+                    geometry.getWinLength(), players.size() < GameManager.MAX_PLAYERS, playerTurn, winner,
+                    getPackedBoard());
+            binaryState = encoded;
+        }
+        return encoded;
+    }
+}
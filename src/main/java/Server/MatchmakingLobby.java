@@ -0,0 +1,120 @@
+package Server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pairs players who ask for any opponent into fresh games.
+ *
+ * Each skill bucket is a single mailbox slot. A player who finds the slot empty waits
+ * in it, and the next player of the bucket takes them out and creates the game for both,
+ * so a bucket never holds more than one waiting player: two would already have been
+ * paired. Entering and leaving are one compare-and-set each (retried only when another
+ * player changed the slot in between), without any lock shared between buckets.
+ */
+public class MatchmakingLobby {
+
+    // Players without a skill rating wait in their own bucket.
+    public static final int UNRATED = -1;
+    // Players are only paired within the same band of skill ratings, e.g. 0-199 or 200-399.
+    public static final int BUCKET_WIDTH = 200;
+    public static final int RATED_BUCKETS = 16;
+    // Outcome of a ticket that left the lobby without an opponent.
+    public static final long NO_MATCH = -1;
+
+    private final GameRegistry registry;
+    private final AtomicReferenceArray<Ticket> waiting = new AtomicReferenceArray<>(RATED_BUCKETS + 1);
+
+    public MatchmakingLobby(GameRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * A player's place in the lobby.
+     */
+    public static final class Ticket {
+        private final int playerId;
+        private final String playerName;
+        private final int bucket;
+        private final CompletableFuture<Long> match = new CompletableFuture<>();
+
+        private Ticket(int playerId, String playerName, int bucket) {
+            this.playerId = playerId;
+            this.playerName = playerName;
+            this.bucket = bucket;
+        }
+
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        /**
+         * @return Completes with the id of the game both players were seated in, or NO_MATCH if the player left.
+         */
+        public CompletableFuture<Long> getMatch() {
+            return match;
+        }
+    }
+
+    /**
+     * Pairs the player with the opponent waiting in their skill bucket, or lets them wait for one.
+     * The player who waited longer takes the first seat and moves first.
+     *
+     * @param skill Skill rating of 0 or more, or UNRATED.
+     */
+    public Ticket enter(String playerName, int skill) {
+        return enter(GameManager.NO_PLAYER_ID, playerName, skill);
+    }
+
+    /**
+     * Like enter(playerName, skill), seating the player under the id of their session.
+     */
+    public Ticket enter(int playerId, String playerName, int skill) {
+        Ticket ticket = new Ticket(playerId, playerName, bucketOf(skill));
+        while (true) {
+            Ticket opponent = waiting.get(ticket.bucket);
+            if (opponent == null) {
+                if (waiting.compareAndSet(ticket.bucket, null, ticket)) return ticket;
+            } else if (waiting.compareAndSet(ticket.bucket, opponent, null)) {
+                pair(opponent, ticket);
+                return ticket;
+            }
+        }
+    }
+
+    /**
+     * Takes a waiting player out of the lobby, completing their ticket with NO_MATCH.
+     *
+     * @return false if the player was already paired, in which case the ticket holds their game.
+     */
+    public boolean leave(Ticket ticket) {
+        if (!waiting.compareAndSet(ticket.bucket, ticket, null)) return false;
+        ticket.match.complete(NO_MATCH);
+        return true;
+    }
+
+    /**
+     * @return Number of players waiting for an opponent.
+     */
+    public int numberOfWaitingPlayers() {
+        int players = 0;
+        for (int bucket = 0; bucket < waiting.length(); bucket++) {
+            if (waiting.get(bucket) != null) players++;
+        }
+        return players;
+    }
+
+    private void pair(Ticket first, Ticket second) {
+        long gameId = registry.createGame();
+        GameManager game = registry.getGame(gameId);
+        game.addPlayer(first.playerId, first.playerName);
+        game.addPlayer(second.playerId, second.playerName);
+        first.match.complete(gameId);
+        second.match.complete(gameId);
+    }
+
+    private static int bucketOf(int skill) {
+        if (skill < 0) return 0;
+        return 1 + Math.min(skill / BUCKET_WIDTH, RATED_BUCKETS - 1);
+    }
+}
@@ -0,0 +1,174 @@
+package Server;
+
+import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * The sessions of joined players, handed out at /join and looked up by token on every later request.
+ *
+ * A session's player id is its slot in the table, and its token packs that slot with a random
+ * check value. Resolving a token is therefore one array read and one long comparison, with no
+ * hashing or string comparison, and a token of a closed session does not resolve even after its
+ * slot was reused. Slots are allocated in pages as they are first needed, so an idle table stays small.
+ */
+public class SessionTable {
+
+    public static final int MAX_SESSIONS = 1 << 24;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Session>> pages =
+            new AtomicReferenceArray<>(MAX_SESSIONS >> PAGE_BITS);
+    private final AtomicInteger nextPlayerId = new AtomicInteger();
+    // Released ids of closed sessions, handed out again before new ones.
+    private final Queue<Integer> freePlayerIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final SecureRandom random = new SecureRandom();
+    private final Consumer<Session> onExpiry;
+
+    public SessionTable() {
+        this(session -> { });
+    }
+
+    /**
+     * @param onExpiry Called when the expiry timer of a session expires.
+     */
+    public SessionTable(Consumer<Session> onExpiry) {
+        this.onExpiry = onExpiry;
+    }
+
+    /**
+     * A joined player: their id, the name shown for them and the game they play in.
+     */
+    public static final class Session {
+        private final int playerId;
+        private final long token;
+        private final String playerName;
+        private final TimingWheel.Timer expiryTimer;
+        private volatile long gameId = -1;
+
+        private Session(int playerId, long token, String playerName, Consumer<Session> onExpiry) {
+            this.playerId = playerId;
+            this.token = token;
+            this.playerName = playerName;
+            this.expiryTimer = new TimingWheel.Timer(() -> onExpiry.accept(this));
+        }
+
+        public int getPlayerId() {
+            return playerId;
+        }
+
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        /**
+         * @return The token in the form sent to clients: 16 hexadecimal digits.
+         */
+        public String getToken() {
+            return String.format("%016x", token);
+        }
+
+        /**
+         * @return Id of the game the player was seated in, or -1 while they are not seated yet.
+         */
+        public long getGameId() {
+            return gameId;
+        }
+
+        public void setGameId(long gameId) {
+            this.gameId = gameId;
+        }
+
+        /**
+         * @return Timer for the session's inactivity, created with the session and not scheduled until it is.
+         */
+        public TimingWheel.Timer getExpiryTimer() {
+            return expiryTimer;
+        }
+    }
+
+    /**
+     * Opens a session for a player who is joining a game.
+     *
+     * @throws IllegalStateException if MAX_SESSIONS sessions are open.
+     */
+    public Session open(String playerName) {
+        Integer free = freePlayerIds.poll();
+        int playerId = (free != null) ? free : nextPlayerId.getAndIncrement();
+        if (playerId >= MAX_SESSIONS) {
+            nextPlayerId.decrementAndGet();
+            throw new IllegalStateException("No more than " + MAX_SESSIONS + " sessions can be open.");
+        }
+        // The id in the lower half, a random check value in the upper half.
+        long token = ((long) random.nextInt() << 32) | playerId;
+        Session session = new Session(playerId, token, playerName, onExpiry);
+        page(playerId).set(playerId & (PAGE_SIZE - 1), session);
+        openSessions.incrementAndGet();
+        return session;
+    }
+
+    /**
+     * @return The open session the token was issued for, or null if the token is malformed,
+     *         unknown or belongs to a closed session.
+     */
+    public Session find(String token) {
+        if (token == null || token.isEmpty() || token.length() > 16) return null;
+        // Parsed by hand: Long.parseUnsignedLong takes a much slower path for 16 digits.
+        long value = 0;
+        for (int i = 0; i < token.length(); i++) {
+            int digit = Character.digit(token.charAt(i), 16);
+            if (digit < 0) return null;
+            value = (value << 4) | digit;
+        }
+        int playerId = (int) value;
+        if (playerId < 0 || playerId >= MAX_SESSIONS) return null;
+        AtomicReferenceArray<Session> page = pages.get(playerId >> PAGE_BITS);
+        if (page == null) return null;
+        Session session = page.get(playerId & (PAGE_SIZE - 1));
+        return (session != null && session.token == value) ? session : null;
+    }
+
+    /**
+     * Closes the session, so its token no longer resolves. Closing a session twice has no effect.
+     * Its player id is not handed out again until it is released.
+     *
+     * @return false if the session was already closed.
+     */
+    public boolean close(Session session) {
+        int playerId = session.playerId;
+        if (!page(playerId).compareAndSet(playerId & (PAGE_SIZE - 1), session, null)) return false;
+        openSessions.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Hands the player id of a closed session out again. Called once per closed session, after
+     * its player left their seat, so a new session's id never matches a seat of the old one.
+     */
+    public void release(Session session) {
+        freePlayerIds.add(session.playerId);
+    }
+
+    /**
+     * @return Number of open sessions.
+     */
+    public int numberOfSessions() {
+        return openSessions.get();
+    }
+
+    private AtomicReferenceArray<Session> page(int playerId) {
+        int index = playerId >> PAGE_BITS;
+        AtomicReferenceArray<Session> page = pages.get(index);
+        if (page == null) {
+            pages.compareAndSet(index, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(index);
+        }
+        return page;
+    }
+}
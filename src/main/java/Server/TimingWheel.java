@@ -0,0 +1,249 @@
+package Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Expires timers that were not refreshed for their timeout, on a hashed hierarchical timing wheel
+ * turned by one thread.
+ *
+ * Level 0 has a slot per tick, and each slot of a higher level spans a whole turn of the level
+ * below, so four levels of 64 slots reach 64^4 ticks. A timer waits in the slot of its deadline
+ * on the lowest level whose current turn includes it, and drops to a lower level when the hand
+ * gets to its slot.
+ *
+ * Refreshing a timer only swaps in its new deadline, and the timer stays where it is. Once the hand
+ * gets to it, a timer whose deadline has moved goes into the slot of its new deadline instead of
+ * expiring. So a refresh is one compare-and-set, with no lock or allocation, and a timer that is
+ * refreshed on every request is moved at most a few times per timeout. Expiring a timer swaps its
+ * deadline for NOT_SCHEDULED with a compare-and-set as well, so of a refresh and an expiry that
+ * race, exactly one wins: a refresh that reports success is never followed by the old deadline's
+ * expiry. Slots are intrusive linked
+ * lists, so scheduling and cancelling a timer link or unlink it in constant time without allocating.
+ */
+public class TimingWheel {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    // Deadlines past the current turn of the top level wait in its last slot, and are placed again once it is reached.
+    private static final long TOP_TURN_MASK = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /**
+     * A deadline and the action to run once it passes. A timer is allocated once and then
+     * scheduled, refreshed and cancelled as often as needed.
+     */
+    public static final class Timer {
+        private static final long NOT_SCHEDULED = Long.MIN_VALUE;
+        private static final AtomicLongFieldUpdater<Timer> DEADLINE =
+                AtomicLongFieldUpdater.newUpdater(Timer.class, "deadlineTick");
+
+        private final Runnable onExpiry;
+        // Guarded by the wheel. Both point to the timer itself while it is in no slot.
+        private Timer previous = this;
+        private Timer next = this;
+        private volatile long timeoutTicks;
+        // NOT_SCHEDULED while the timer is in no slot. Refreshes and expiry only change it by compare-and-set.
+        private volatile long deadlineTick = NOT_SCHEDULED;
+
+        /**
+         * @param onExpiry Run on the wheel's expiry executor once the timer expires.
+         */
+        public Timer(Runnable onExpiry) {
+            this.onExpiry = onExpiry;
+        }
+
+        public boolean isScheduled() {
+            return deadlineTick != NOT_SCHEDULED;
+        }
+    }
+
+    private final long tickMillis;
+    private final Executor expiryExecutor;
+    // Sentinel heads of each slot's list, by level and slot.
+    private final Timer[][] slots = new Timer[LEVELS][1 << SLOT_BITS];
+    // Only advanced by tick(), under the wheel's lock, but read by refresh() without it.
+    private volatile long currentTick = 0;
+    // Guarded by the wheel.
+    private int scheduledTimers = 0;
+    // Only touched by tick(), which one thread runs at a time.
+    private final List<Timer> expired = new ArrayList<>();
+    private ScheduledExecutorService ticker;
+
+    /**
+     * @param tickMillis Length of a tick, the precision of every timeout.
+     * @param expiryExecutor Runs the actions of expired timers, so they never hold up the wheel.
+     */
+    public TimingWheel(long tickMillis, Executor expiryExecutor) {
+        this.tickMillis = tickMillis;
+        this.expiryExecutor = expiryExecutor;
+        for (Timer[] level : slots) {
+            for (int slot = 0; slot < level.length; slot++) {
+                level[slot] = new Timer(null);
+            }
+        }
+    }
+
+    /**
+     * Starts the thread that turns the wheel once per tick.
+     */
+    public void start() {
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiry-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        if (ticker != null) ticker.shutdownNow();
+    }
+
+    /**
+     * Schedules the timer to expire once it has not been refreshed for the timeout.
+     * A timer that is already scheduled gets the new timeout and a deadline counted from now.
+     */
+    public synchronized void schedule(Timer timer, long timeoutMillis) {
+        timer.timeoutTicks = Math.max(1, (timeoutMillis + tickMillis - 1) / tickMillis);
+        if (timer.isScheduled()) {
+            unlink(timer);
+        } else {
+            scheduledTimers++;
+        }
+        timer.deadlineTick = currentTick + timer.timeoutTicks;
+        place(timer);
+    }
+
+    /**
+     * Moves the timer's deadline a whole timeout past now.
+     *
+     * @return false if the timer is not scheduled, e.g. because it has already expired.
+     */
+    public boolean refresh(Timer timer) {
+        long deadline;
+        do {
+            deadline = timer.deadlineTick;
+            if (deadline == Timer.NOT_SCHEDULED) return false;
+        } while (!Timer.DEADLINE.compareAndSet(timer, deadline, currentTick + timer.timeoutTicks));
+        return true;
+    }
+
+    /**
+     * Keeps the timer from expiring, unless it already has. Cancelling a timer that is not scheduled has no effect.
+     */
+    public synchronized void cancel(Timer timer) {
+        if (!timer.isScheduled()) return;
+        unlink(timer);
+        timer.deadlineTick = Timer.NOT_SCHEDULED;
+        scheduledTimers--;
+    }
+
+    /**
+     * @return Number of scheduled timers.
+     */
+    public synchronized int numberOfTimers() {
+        return scheduledTimers;
+    }
+
+    /**
+     * Advances the wheel by one tick and hands the timers that expired to the expiry executor.
+     * Called by the wheel's thread once per tick; tests may call it instead of starting the wheel.
+     */
+    public void tick() {
+        synchronized (this) {
+            long tick = currentTick + 1;
+            currentTick = tick;
+            // Higher levels first, so their timers are in level 0 before its slot is read.
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    Timer timer = detach(slots[level][(int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK]);
+                    while (timer != null) {
+                        Timer next = timer.next;
+                        place(timer);
+                        timer = next;
+                    }
+                }
+            }
+            Timer timer = detach(slots[0][(int) tick & SLOT_MASK]);
+            while (timer != null) {
+                Timer next = timer.next;
+                if (expire(timer, tick)) {
+                    timer.previous = timer.next = timer;
+                    scheduledTimers--;
+                    expired.add(timer);
+                } else {
+                    // Refreshed since it was placed.
+                    place(timer);
+                }
+                timer = next;
+            }
+        }
+        try {
+            for (Timer timer : expired) {
+                expiryExecutor.execute(timer.onExpiry);
+            }
+        } catch (RejectedExecutionException e) {
+            // The expiry executor is shutting down, and with it whatever the timers tracked.
+        } finally {
+            expired.clear();
+        }
+    }
+
+    /**
+     * Takes the timer's deadline away unless a refresh has moved it past the tick, deciding the race
+     * with a concurrent refresh through the same compare-and-set.
+     *
+     * @return true if the timer expires.
+     */
+    private static boolean expire(Timer timer, long tick) {
+        while (true) {
+            long deadline = timer.deadlineTick;
+            if (deadline > tick) return false;
+            if (Timer.DEADLINE.compareAndSet(timer, deadline, Timer.NOT_SCHEDULED)) return true;
+        }
+    }
+
+    /**
+     * Links the timer into the slot of its deadline, on the lowest level whose current turn includes it.
+     * While cascading, a timer due in the current tick lands in the level 0 slot that is read next.
+     */
+    private void place(Timer timer) {
+        long tick = currentTick;
+        long deadline = Math.min(Math.max(timer.deadlineTick, tick), tick | TOP_TURN_MASK);
+        int level = 0;
+        while (level < LEVELS - 1 && (deadline >>> (SLOT_BITS * (level + 1))) != (tick >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        Timer head = slots[level][(int) (deadline >>> (SLOT_BITS * level)) & SLOT_MASK];
+        timer.previous = head.previous;
+        timer.next = head;
+        head.previous.next = timer;
+        head.previous = timer;
+    }
+
+    private static void unlink(Timer timer) {
+        timer.previous.next = timer.next;
+        timer.next.previous = timer.previous;
+        timer.previous = timer.next = timer;
+    }
+
+    /**
+     * Empties the slot.
+     *
+     * @return The first of the slot's timers, linked through next up to a null, or null if it was empty.
+     */
+    private static Timer detach(Timer head) {
+        if (head.next == head) return null;
+        Timer first = head.next;
+        head.previous.next = null;
+        head.previous = head.next = head;
+        return first;
+    }
+}
@@ -0,0 +1,66 @@
+package Server;
+
+/**
+ * Numbers every window of winLength cells that can hold a winning line, and finds the
+ * windows through a cell by arithmetic alone, so no table grows with the board's area.
+ * Finding the windows through a cell takes O(winLength) steps on a board of any size.
+ *
+ * A window is numbered by its direction and its first cell:
+ * (direction * columns + column) * rows + row, with rows counted from the bottom.
+ */
+final class WinningWindows {
+
+    // Column and row steps for the vertical, horizontal, ascending and descending directions.
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    private final int rows;
+    private final int cols;
+    private final int winLength;
+
+    WinningWindows(BoardGeometry geometry) {
+        this.rows = geometry.getRows();
+        this.cols = geometry.getColumns();
+        this.winLength = geometry.getWinLength();
+    }
+
+    /**
+     * @return Upper bound (exclusive) of the window numbers.
+     */
+    int getNumberRange() {
+        return DIRECTIONS.length * cols * rows;
+    }
+
+    /**
+     * @return Most windows a single cell can be part of.
+     */
+    int getMaxWindowsThroughCell() {
+        return DIRECTIONS.length * winLength;
+    }
+
+    /**
+     * Finds all windows containing the cell.
+     *
+     * @param col Column of the cell.
+     * @param row Row of the cell, counted from the bottom.
+     * @param windows Filled with the window numbers; needs getMaxWindowsThroughCell() elements.
+     * @return Number of windows found.
+     */
+    int windowsThrough(int col, int row, int[] windows) {
+        int count = 0;
+        for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+            int colStep = DIRECTIONS[direction][0];
+            int rowStep = DIRECTIONS[direction][1];
+            // The cell is the i-th cell of the window starting i steps back.
+            for (int i = 0; i < winLength; i++) {
+                int startCol = col - i * colStep;
+                int startRow = row - i * rowStep;
+                int endCol = startCol + (winLength - 1) * colStep;
+                int endRow = startRow + (winLength - 1) * rowStep;
+                if (startCol < 0 || endCol >= cols) continue;
+                if (Math.min(startRow, endRow) < 0 || Math.max(startRow, endRow) >= rows) continue;
+                windows[count++] = (direction * cols + startCol) * rows + startRow;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,305 @@
+package Server.ai;
+
+import Server.BoardGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses a column with a negamax search using alpha-beta pruning and iterative deepening.
+ * Each depth searches the best move of the previous depth first, on the calling task,
+ * to get a good lower bound; the other root moves are then searched in parallel on the
+ * fork-join pool, each on its own copy of the board, sharing the bound as it improves.
+ * When the time budget runs out, the best move of the last completed depth is played.
+ *
+ * Results are kept in a transposition table shared by all threads and searches, keyed by the
+ * board's canonical Zobrist hash, so a position reached through another move order, in another
+ * thread, or as the mirror image of a searched one, is not searched again. The table's best move
+ * is also tried first, which lets each new depth start from the previous one's principal variation.
+ */
+public class AlphaBetaSearch {
+
+    static final int WIN_SCORE = 1_000_000;
+    private static final int INFINITY = Integer.MAX_VALUE - 1;
+    // Score for each window still open for a player, by the number of discs it still misses.
+    // Windows missing more discs than this table covers do not count, whatever the win length.
+    private static final int[] WINDOW_WEIGHTS = {0, 512, 64, 8, 1};
+    // The deadline is only checked every this many nodes (a power of two, minus one).
+    private static final int DEADLINE_CHECK_MASK = 1023;
+    private static final int DEFAULT_TABLE_MEGABYTES = 16;
+    // Xor-ed into the position hash when player 1 is to move.
+    private static final long PLAYER_ONE_TO_MOVE = 0x9E3779B97F4A7C15L;
+    // Scores this close to WIN_SCORE are wins a number of plies away.
+    private static final int WIN_THRESHOLD = WIN_SCORE - 1000;
+
+    private final ForkJoinPool pool;
+    private final TranspositionTable table;
+
+    public AlphaBetaSearch(ForkJoinPool pool) {
+        this(pool, new TranspositionTable(DEFAULT_TABLE_MEGABYTES));
+    }
+
+    public AlphaBetaSearch(ForkJoinPool pool, TranspositionTable table) {
+        this.pool = pool;
+        this.table = table;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    /**
+     * Searches the position for the given time and returns the best column found.
+     *
+     * @param board Position to search. It is not modified.
+     * @param playerID Player to move (0 or 1)
+     * @param budgetMillis Time allowed for the search
+     * @return The chosen column, or -1 if the board is full.
+     */
+    public int findBestMove(BoardGrid board, int playerID, long budgetMillis) {
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000;
+        table.newSearch();
+        return pool.invoke(new IterativeDeepening(board.copy(), playerID, deadline, table));
+    }
+
+    /**
+     * Columns ordered from the centre outwards, since central discs take part in more windows.
+     */
+    static int[] centreFirstColumns(int columns) {
+        int[] order = new int[columns];
+        int centre = (columns - 1) / 2;
+        for (int i = 0; i < columns; i++) {
+            int offset = (i + 1) / 2;
+            order[i] = (i % 2 == 1) ? centre - offset : centre + offset;
+            if (order[i] < 0 || order[i] >= columns) order[i] = centre - (order[i] - centre);
+        }
+        return order;
+    }
+
+    /**
+     * Static evaluation from the point of view of the player to move:
+     * the weighted difference of the windows still open for each player.
+     */
+    static int evaluate(BoardGrid board, int playerID) {
+        int opponentID = 1 - playerID;
+        int winLength = board.getWinLength();
+        int score = 0;
+        for (int missing = 1; missing < WINDOW_WEIGHTS.length && missing < winLength; missing++) {
+            int discs = winLength - missing;
+            score += WINDOW_WEIGHTS[missing]
+                    * (board.countOpenWindows(playerID, discs) - board.countOpenWindows(opponentID, discs));
+        }
+        return score;
+    }
+
+    private static class SearchTimeout extends RuntimeException {
+        SearchTimeout() {
+            super("Search time budget exhausted", null, false, false);
+        }
+    }
+
+    private static final SearchTimeout TIMEOUT = new SearchTimeout();
+
+    private static long tableKey(BoardGrid board, int playerID) {
+        return board.getCanonicalHash() ^ (playerID == 1 ? PLAYER_ONE_TO_MOVE : 0L);
+    }
+
+    /**
+     * Win scores count plies from the root; in the table they count from the stored position,
+     * so they stay valid wherever in the tree the position turns up again.
+     */
+    private static int toTableScore(int score, int ply) {
+        if (score > WIN_THRESHOLD) return score + ply;
+        if (score < -WIN_THRESHOLD) return score - ply;
+        return score;
+    }
+
+    private static int fromTableScore(int score, int ply) {
+        if (score > WIN_THRESHOLD) return score - ply;
+        if (score < -WIN_THRESHOLD) return score + ply;
+        return score;
+    }
+
+    /**
+     * Columns stored under a mirrored canonical hash are counted from the right.
+     */
+    private static int canonicalColumn(BoardGrid board, int col) {
+        if (col < 0 || !board.isCanonicalMirrored()) return col;
+        return board.getColumns() - 1 - col;
+    }
+
+    /**
+     * Negamax over one board, owned by a single task.
+     */
+    private static class Searcher {
+        private final BoardGrid board;
+        private final int[] columnOrder;
+        private final long deadline;
+        private final TranspositionTable table;
+        private long nodes = 0;
+
+        Searcher(BoardGrid board, long deadline, TranspositionTable table) {
+            this.board = board;
+            this.columnOrder = centreFirstColumns(board.getColumns());
+            this.deadline = deadline;
+            this.table = table;
+        }
+
+        /**
+         * @return Score of the position for the player to move. Faster wins score higher.
+         */
+        int negamax(int playerID, int depth, int alpha, int beta, int ply) {
+            if ((++nodes & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() > deadline) throw TIMEOUT;
+            if (depth == 0) return evaluate(board, playerID);
+
+            long key = tableKey(board, playerID);
+            long entry = table.probe(key);
+            int tableMove = -1;
+            if (entry != TranspositionTable.MISS) {
+                tableMove = canonicalColumn(board, TranspositionTable.getMove(entry));
+                if (TranspositionTable.getDepth(entry) >= depth) {
+                    int score = fromTableScore(TranspositionTable.getScore(entry), ply);
+                    int bound = TranspositionTable.getBound(entry);
+                    if (bound == TranspositionTable.EXACT) return score;
+                    if (bound == TranspositionTable.LOWER_BOUND && score >= beta) return score;
+                    if (bound == TranspositionTable.UPPER_BOUND && score <= alpha) return score;
+                }
+            }
+
+            int originalAlpha = alpha;
+            int best = -INFINITY;
+            int bestMove = -1;
+            if (tableMove >= 0 && !board.isColumnFull(tableMove)) {
+                best = scoreMove(tableMove, playerID, depth, alpha, beta, ply);
+                bestMove = tableMove;
+                if (best > alpha) alpha = best;
+            }
+            for (int i = 0; i < columnOrder.length && alpha < beta; i++) {
+                int col = columnOrder[i];
+                if (col == tableMove || board.isColumnFull(col)) continue;
+                int score = scoreMove(col, playerID, depth, alpha, beta, ply);
+                if (score > best) {
+                    best = score;
+                    bestMove = col;
+                    if (best > alpha) alpha = best;
+                }
+            }
+            // A full board without a winner is a draw.
+            if (bestMove < 0) return 0;
+
+            int bound = TranspositionTable.EXACT;
+            if (best <= originalAlpha) {
+                bound = TranspositionTable.UPPER_BOUND;
+            } else if (best >= beta) {
+                bound = TranspositionTable.LOWER_BOUND;
+            }
+            table.store(key, depth, bound, canonicalColumn(board, bestMove), toTableScore(best, ply));
+            return best;
+        }
+
+        int scoreMove(int col, int playerID, int depth, int alpha, int beta, int ply) {
+            board.makeMove(col, playerID);
+            try {
+                if (board.hasWon(playerID)) return WIN_SCORE - ply;
+                return -negamax(1 - playerID, depth - 1, -beta, -alpha, ply + 1);
+            } finally {
+                board.undoMove(col);
+            }
+        }
+    }
+
+    /**
+     * Searches one root move on its own board, with the best root score found so far as alpha.
+     */
+    private static class RootMoveTask extends RecursiveTask<Integer> {
+        private final Searcher searcher;
+        private final int col;
+        private final int playerID;
+        private final int depth;
+        private final AtomicInteger bestScore;
+
+        RootMoveTask(BoardGrid board, int col, int playerID, int depth, long deadline,
+                     TranspositionTable table, AtomicInteger bestScore) {
+            this.searcher = new Searcher(board.copy(), deadline, table);
+            this.col = col;
+            this.playerID = playerID;
+            this.depth = depth;
+            this.bestScore = bestScore;
+        }
+
+        @Override
+        protected Integer compute() {
+            int score = searcher.scoreMove(col, playerID, depth, bestScore.get(), INFINITY, 0);
+            bestScore.accumulateAndGet(score, Math::max);
+            return score;
+        }
+    }
+
+    private static class IterativeDeepening extends RecursiveTask<Integer> {
+        private final BoardGrid board;
+        private final int playerID;
+        private final long deadline;
+        private final TranspositionTable table;
+
+        IterativeDeepening(BoardGrid board, int playerID, long deadline, TranspositionTable table) {
+            this.board = board;
+            this.playerID = playerID;
+            this.deadline = deadline;
+            this.table = table;
+        }
+
+        @Override
+        protected Integer compute() {
+            List<Integer> moves = new ArrayList<>();
+            for (int col : centreFirstColumns(board.getColumns())) {
+                if (board.isColumnFull(col)) continue;
+                moves.add(col);
+            }
+            if (moves.isEmpty()) return -1;
+            int emptyCells = board.getRows() * board.getColumns() - board.getDiscCount();
+
+            int bestMove = moves.get(0);
+            Searcher searcher = new Searcher(board, deadline, table);
+            for (int depth = 1; depth <= emptyCells; depth++) {
+                try {
+                    int[] result = searchRoot(searcher, moves, bestMove, depth);
+                    bestMove = result[0];
+                    // A forced win or loss will not change with more depth.
+                    if (Math.abs(result[1]) > WIN_THRESHOLD) break;
+                } catch (SearchTimeout e) {
+                    break;
+                }
+            }
+            return bestMove;
+        }
+
+        /**
+         * @return The best move at this depth and its score.
+         */
+        private int[] searchRoot(Searcher searcher, List<Integer> moves, int firstMove, int depth) {
+            int firstScore = searcher.scoreMove(firstMove, playerID, depth, -INFINITY, INFINITY, 0);
+            AtomicInteger bestScore = new AtomicInteger(firstScore);
+            List<RootMoveTask> tasks = new ArrayList<>();
+            for (int col : moves) {
+                if (col == firstMove) continue;
+                tasks.add(new RootMoveTask(board, col, playerID, depth, deadline, table, bestScore));
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            int bestMove = firstMove;
+            int best = firstScore;
+            for (RootMoveTask task : tasks) {
+                if (task.isCompletedAbnormally()) throw TIMEOUT;
+                if (task.join() > best) {
+                    best = task.join();
+                    bestMove = task.col;
+                }
+            }
+            return new int[] {bestMove, best};
+        }
+    }
+}
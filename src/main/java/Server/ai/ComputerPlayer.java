@@ -0,0 +1,152 @@
+package Server.ai;
+
+import Server.BoardGrid;
+import Server.GameEvent;
+import Server.GameEventListener;
+import Server.GameManager;
+import Server.GameSnapshot;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Takes a seat in a game and plays it with an AlphaBetaSearch, or from an opening book
+ * while the position is in it.
+ * The computer follows the game through its events, keeping its own copy of the board,
+ * and thinks on the search executor whenever the turn passes to it. Handler threads
+ * only ever copy the board and queue the search, so a thinking computer never holds up
+ * requests for other games.
+ */
+public class ComputerPlayer implements GameEventListener {
+
+    public static final String DEFAULT_NAME = "Computer";
+
+    private static final Logger LOG = Logger.getLogger(ComputerPlayer.class);
+    // In the computer's own board, its discs are player 0 and the opponent's are player 1.
+    private static final int OWN_ID = 0;
+    private static final int OPPONENT_ID = 1;
+
+    private final GameManager gameManager;
+    private final String name;
+    private final AlphaBetaSearch search;
+    private final Executor searchExecutor;
+    private final long moveMillis;
+    private final OpeningBook openingBook;
+    // Only touched from onGameEvents, which the game calls for one change at a time.
+    private final BoardGrid board;
+    private volatile boolean seated = false;
+
+    private ComputerPlayer(GameManager gameManager, String name, AlphaBetaSearch search,
+                           Executor searchExecutor, long moveMillis, OpeningBook openingBook) {
+        this.gameManager = gameManager;
+        this.name = name;
+        this.search = search;
+        this.searchExecutor = searchExecutor;
+        this.moveMillis = moveMillis;
+        this.openingBook = openingBook;
+        this.board = new BoardGrid(null, gameManager.getBoardGeometry());
+    }
+
+    /**
+     * Adds a computer player to the game.
+     *
+     * @param searchExecutor Executor to think on, normally the search's fork-join pool.
+     * @param moveMillis Time the computer may think about each move.
+     * @param openingBook Book to take early moves from, or null to search every move.
+     * @return The seated computer player, or null if the game was already full.
+     */
+    public static ComputerPlayer seat(GameManager gameManager, AlphaBetaSearch search, Executor searchExecutor,
+                                      long moveMillis, OpeningBook openingBook) {
+        ComputerPlayer computer = new ComputerPlayer(gameManager, DEFAULT_NAME, search, searchExecutor,
+                moveMillis, openingBook);
+        computer.seated = true;
+        gameManager.addGameEventListener(computer);
+        if (!gameManager.addPlayer(GameManager.COMPUTER_PLAYER_ID, computer.name)) {
+            computer.seated = false;
+            gameManager.removeGameEventListener(computer);
+            return null;
+        }
+        return computer;
+    }
+
+    /**
+     * Takes over the computer's seat in a restored game, and starts thinking if it is the computer's turn.
+     * Must be called before the game is shared with other threads.
+     *
+     * @return The computer player, or null if the game has no seat for the computer.
+     */
+    public static ComputerPlayer resume(GameManager gameManager, AlphaBetaSearch search, Executor searchExecutor,
+                                        long moveMillis, OpeningBook openingBook) {
+        GameSnapshot snapshot = gameManager.getSnapshot();
+        if (snapshot == null) return null;
+        int seat = snapshot.getComputerSeat();
+        if (seat < 0) return null;
+        ComputerPlayer computer = new ComputerPlayer(gameManager, DEFAULT_NAME, search, searchExecutor,
+                moveMillis, openingBook);
+        // Disc ids follow seats, and the computer's own discs are OWN_ID on its board.
+        computer.board.dropPackedDiscs(snapshot.getPackedBoard(), seat != OWN_ID);
+        computer.seated = true;
+        gameManager.addGameEventListener(computer);
+        if (snapshot.getPlayerTurnIndex() == seat) computer.startThinking(snapshot);
+        return computer;
+    }
+
+    /**
+     * Gives up the seat. A search in progress finishes, but its move is dropped.
+     */
+    public void leave() {
+        seated = false;
+        gameManager.removeGameEventListener(this);
+        gameManager.removePlayer(GameManager.COMPUTER_PLAYER_ID);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void onGameEvents(GameManager game, List<GameEvent> events) {
+        for (GameEvent event : events) {
+            switch (event.getType()) {
+                case MOVE:
+                    board.makeMove(event.getColumn(),
+                            event.getSeat() == game.getSnapshot().getComputerSeat() ? OWN_ID : OPPONENT_ID);
+                    break;
+                case QUIT:
+                    // The game clears its board whenever a player quits.
+                    board.initializeMatrix();
+                    break;
+                case TURN: {
+                    // The game publishes a change's snapshot before its events, so this is the turn's own state.
+                    GameSnapshot snapshot = game.getSnapshot();
+                    if (snapshot.getPlayerTurnIndex() == snapshot.getComputerSeat()) startThinking(snapshot);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void startThinking(GameSnapshot snapshot) {
+        if (!seated || snapshot.numberOfPlayers() < GameManager.MAX_PLAYERS || !snapshot.getWinner().isEmpty()) {
+            return;
+        }
+        BoardGrid position = board.copy();
+        long version = snapshot.getStateVersion();
+        searchExecutor.execute(() -> {
+            int column = (openingBook != null) ? openingBook.lookup(position) : -1;
+            if (column < 0 || position.isColumnFull(column)) {
+                column = search.findBestMove(position, OWN_ID, moveMillis);
+            }
+            // Dropped by the game if it changed while we were thinking, e.g. the opponent quit.
+            if (column >= 0 && seated && gameManager.handlePlayerMove(GameManager.COMPUTER_PLAYER_ID, column, version)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("%s played column %d (transposition table hit rate %.1f%%).",
+                            name, column + 1, search.getTranspositionTable().getHitRate() * 100));
+                }
+            }
+        });
+    }
+}
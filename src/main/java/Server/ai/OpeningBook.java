@@ -0,0 +1,152 @@
+package Server.ai;
+
+import Server.BoardGeometry;
+import Server.BoardGrid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Book of precomputed moves for early positions, read straight from a memory-mapped file.
+ * Opening a book only maps the file; pages are read in by the OS as lookups touch them,
+ * so a large book neither slows down startup nor takes heap space.
+ *
+ * File layout (big-endian): a header of magic, format version, rows, columns and win length
+ * (ints) and the record count (long), then one long per position, sorted. A record holds the
+ * position's canonical hash with its lowest byte replaced by the best move, counted in the
+ * canonical orientation. Positions are always stored with player 0 to move.
+ */
+public class OpeningBook {
+
+    private static final int MAGIC = 0x46424F4B;
+    // Version 2 books hash boards of every size; version 1 hashes no longer match.
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES + Long.BYTES;
+    private static final long MOVE_MASK = 0xFFL;
+    private static final int WRITE_BUFFER_RECORDS = 8192;
+
+    private final MappedByteBuffer records;
+    private final long recordCount;
+    private final int rows;
+    private final int columns;
+    private final int winLength;
+
+    private OpeningBook(MappedByteBuffer records, long recordCount, int rows, int columns, int winLength) {
+        this.records = records;
+        this.recordCount = recordCount;
+        this.rows = rows;
+        this.columns = columns;
+        this.winLength = winLength;
+    }
+
+    /**
+     * Maps a book file written by {@link #write}.
+     *
+     * @throws IOException if the file cannot be read or is not an opening book.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) throw new IOException("Opening book header is truncated: " + file);
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not an opening book: " + file);
+            }
+            int rows = header.getInt();
+            int columns = header.getInt();
+            int winLength = header.getInt();
+            long recordCount = header.getLong();
+            long size = recordCount * Long.BYTES;
+            if (size > Integer.MAX_VALUE) throw new IOException("Opening books over 2GB are not supported: " + file);
+            if (channel.size() < HEADER_BYTES + size) {
+                throw new IOException("Opening book is truncated: " + file);
+            }
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, size);
+            return new OpeningBook(records, recordCount, rows, columns, winLength);
+        }
+    }
+
+    /**
+     * Looks up the book move for a position with player 0 to move.
+     *
+     * @return The column to play, or -1 if the position is not in the book.
+     */
+    public int lookup(BoardGrid board) {
+        if (board.getRows() != rows || board.getColumns() != columns || board.getWinLength() != winLength) {
+            return -1;
+        }
+        long key = board.getCanonicalHash() & ~MOVE_MASK;
+        long low = 0;
+        long high = recordCount - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long record = records.getLong((int) (middle * Long.BYTES));
+            long recordKey = record & ~MOVE_MASK;
+            if (recordKey < key) {
+                low = middle + 1;
+            } else if (recordKey > key) {
+                high = middle - 1;
+            } else {
+                int move = (int) (record & MOVE_MASK);
+                return board.isCanonicalMirrored() ? columns - 1 - move : move;
+            }
+        }
+        return -1;
+    }
+
+    public long size() {
+        return recordCount;
+    }
+
+    /**
+     * Writes a book file.
+     *
+     * @param geometry Board size and win length the book is for.
+     * @param moves Best move by canonical hash, the move counted in the canonical orientation.
+     */
+    public static void write(Path file, BoardGeometry geometry, Map<Long, Integer> moves) throws IOException {
+        long[] sorted = new long[moves.size()];
+        int count = 0;
+        for (Map.Entry<Long, Integer> entry : moves.entrySet()) {
+            sorted[count++] = (entry.getKey() & ~MOVE_MASK) | entry.getValue();
+        }
+        Arrays.sort(sorted);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION)
+                    .putInt(geometry.getRows()).putInt(geometry.getColumns()).putInt(geometry.getWinLength())
+                    .putLong(sorted.length)
+                    .flip();
+            writeFully(channel, header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_RECORDS * Long.BYTES);
+            for (long record : sorted) {
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    buffer.clear();
+                }
+                buffer.putLong(record);
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
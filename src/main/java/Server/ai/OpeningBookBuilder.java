@@ -0,0 +1,136 @@
+package Server.ai;
+
+import Server.BoardGeometry;
+import Server.BoardGrid;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds an opening book by playing out the first moves of the game against every reply.
+ *
+ * The book is written from the computer's side: in each position the computer (player 0)
+ * is to move, its best move is searched and played, and every possible reply of the
+ * opponent leads to the next positions. The computer may move first or second, so both
+ * the empty board and every first move of the opponent are starting points.
+ * Positions that are transpositions or mirror images of one already seen are skipped,
+ * and each ply's positions are searched in parallel.
+ *
+ * Usage: OpeningBookBuilder <book file> [plies] [millis per position] [rows columns win length]
+ */
+public class OpeningBookBuilder {
+
+    private static final int DEFAULT_PLIES = 8;
+    private static final long DEFAULT_MILLIS = 200;
+
+    private final BoardGeometry geometry;
+    private final AlphaBetaSearch search;
+    private final ForkJoinPool pool;
+    private final long millisPerPosition;
+    private final Map<Long, Integer> moves = new ConcurrentHashMap<>();
+
+    public OpeningBookBuilder(BoardGeometry geometry, ForkJoinPool pool, long millisPerPosition) {
+        this.geometry = geometry;
+        this.pool = pool;
+        this.search = new AlphaBetaSearch(pool);
+        this.millisPerPosition = millisPerPosition;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: OpeningBookBuilder <book file> [plies] [millis per position]"
+                    + " [rows columns win length]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        int plies = (args.length >= 2) ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+        long millis = (args.length >= 3) ? Long.parseLong(args[2]) : DEFAULT_MILLIS;
+        BoardGeometry geometry = (args.length >= 6)
+                ? BoardGeometry.of(Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]))
+                : BoardGeometry.STANDARD;
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        OpeningBookBuilder builder = new OpeningBookBuilder(geometry, pool, millis);
+        long start = System.nanoTime();
+        Map<Long, Integer> book = builder.build(plies);
+        OpeningBook.write(file, geometry, book);
+        pool.shutdown();
+        System.out.printf("Wrote %d positions to %s in %.1fs.%n", book.size(), file,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Searches every position the computer can face within the given number of plies.
+     *
+     * @return Best move by canonical hash, the move counted in the canonical orientation.
+     */
+    public Map<Long, Integer> build(int plies) {
+        List<BoardGrid> frontier = new ArrayList<>();
+        BoardGrid empty = new BoardGrid(null, geometry);
+        frontier.add(empty);
+        frontier.addAll(replies(empty));
+
+        for (int ply = 0; ply < plies && !frontier.isEmpty(); ply += 2) {
+            List<BoardGrid> positions = unseen(frontier);
+            System.out.printf("Searching %d positions...%n", positions.size());
+            pool.submit(() -> positions.parallelStream().forEach(this::searchPosition)).join();
+
+            List<BoardGrid> next = new ArrayList<>();
+            for (BoardGrid position : positions) {
+                int move = bookMove(position);
+                if (move < 0) continue;
+                position.makeMove(move, 0);
+                // Lines the computer has already won need no more book moves.
+                if (!position.hasWon(0)) next.addAll(replies(position));
+            }
+            frontier = next;
+        }
+        return moves;
+    }
+
+    private void searchPosition(BoardGrid position) {
+        int move = search.findBestMove(position, 0, millisPerPosition);
+        if (move < 0) return;
+        int canonicalMove = position.isCanonicalMirrored() ? position.getColumns() - 1 - move : move;
+        moves.put(position.getCanonicalHash(), canonicalMove);
+    }
+
+    private int bookMove(BoardGrid position) {
+        Integer canonicalMove = moves.get(position.getCanonicalHash());
+        if (canonicalMove == null) return -1;
+        return position.isCanonicalMirrored() ? position.getColumns() - 1 - canonicalMove : canonicalMove;
+    }
+
+    /**
+     * @return One board per legal opponent move, leaving out replies that win for the opponent.
+     */
+    private static List<BoardGrid> replies(BoardGrid position) {
+        List<BoardGrid> replies = new ArrayList<>();
+        for (int col = 0; col < position.getColumns(); col++) {
+            if (position.isColumnFull(col)) continue;
+            BoardGrid reply = position.copy();
+            reply.makeMove(col, 1);
+            if (!reply.hasWon(1)) replies.add(reply);
+        }
+        return replies;
+    }
+
+    /**
+     * Drops positions already in the book, and duplicates within the list.
+     */
+    private List<BoardGrid> unseen(List<BoardGrid> positions) {
+        Map<Long, BoardGrid> unique = new LinkedHashMap<>();
+        for (BoardGrid position : positions) {
+            long key = position.getCanonicalHash();
+            if (!moves.containsKey(key)) unique.putIfAbsent(key, position);
+        }
+        return new ArrayList<>(unique.values());
+    }
+}
@@ -0,0 +1,170 @@
+package Server.ai;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size table of search results keyed by position hash, shared by all search threads.
+ *
+ * Each entry is two longs: the packed data, and the key xor-ed with the data. Threads read
+ * and write entries without locking; an entry torn by two concurrent writers no longer
+ * passes the xor check and simply reads as a miss.
+ *
+ * Entries live in buckets of two. A new result replaces the entry of the same position,
+ * unless that one was searched deeper in the current search; otherwise it evicts the
+ * entry left over from the oldest search, or the shallower one if both are equally old.
+ *
+ * Data layout (low to high bits): valid (1), bound (2), depth (8), move (8), age (8), score (32).
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+
+    // Returned by probe when the position is not in the table.
+    public static final long MISS = 0L;
+
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    private static final int BUCKET_SIZE = 2;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private volatile int age = 0;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * @param megabytes Memory the table may use. Rounded down to a power of two number of entries.
+     */
+    public TranspositionTable(int megabytes) {
+        long maxEntries = Math.max(BUCKET_SIZE, (long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+        int entries = (int) Math.min(Long.highestOneBit(maxEntries), 1 << 30);
+        this.keys = new long[entries];
+        this.data = new long[entries];
+        this.bucketMask = entries / BUCKET_SIZE - 1;
+    }
+
+    /**
+     * Starts a new search. Entries of older searches are replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    /**
+     * @return The packed data stored for the key, or MISS.
+     */
+    public long probe(long key) {
+        probes.increment();
+        int first = bucketIndex(key);
+        for (int slot = first; slot < first + BUCKET_SIZE; slot++) {
+            long entry = data[slot];
+            if (entry != MISS && (keys[slot] ^ entry) == key) {
+                hits.increment();
+                return entry;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores a search result for the key.
+     *
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param move Best move found, or -1 if none
+     */
+    public void store(long key, int depth, int bound, int move, int score) {
+        int currentAge = age;
+        int first = bucketIndex(key);
+        int victim = first;
+        int victimRank = Integer.MAX_VALUE;
+        for (int slot = first; slot < first + BUCKET_SIZE; slot++) {
+            long entry = data[slot];
+            if (entry == MISS) {
+                victim = slot;
+                break;
+            }
+            if ((keys[slot] ^ entry) == key) {
+                // Keep a deeper result for this position from the current search.
+                if (getAge(entry) == currentAge && getDepth(entry) > depth) return;
+                victim = slot;
+                break;
+            }
+            // Lower rank is evicted first: older searches, then shallower results.
+            int ageDistance = (currentAge - getAge(entry)) & 0xFF;
+            int rank = getDepth(entry) - ageDistance * 256;
+            if (rank < victimRank) {
+                victimRank = rank;
+                victim = slot;
+            }
+        }
+        long entry = pack(depth, bound, move, score, currentAge);
+        data[victim] = entry;
+        keys[victim] = key ^ entry;
+        stores.increment();
+    }
+
+    public static int getScore(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    public static int getBound(long entry) {
+        return (int) (entry >>> 1) & 0x3;
+    }
+
+    public static int getDepth(long entry) {
+        return (int) (entry >>> 3) & 0xFF;
+    }
+
+    /**
+     * @return The stored best move, or -1 if none was stored.
+     */
+    public static int getMove(long entry) {
+        return ((int) (entry >>> 11) & 0xFF) - 1;
+    }
+
+    private static int getAge(long entry) {
+        return (int) (entry >>> 19) & 0xFF;
+    }
+
+    private static long pack(int depth, int bound, int move, int score, int age) {
+        return 1L
+                | ((long) bound << 1)
+                | ((long) Math.min(depth, 0xFF) << 3)
+                | ((long) (move + 1) << 11)
+                | ((long) age << 19)
+                | ((long) score << 32);
+    }
+
+    private int bucketIndex(long key) {
+        // The low bits of Zobrist hashes are as random as the high ones.
+        return ((int) key & bucketMask) * BUCKET_SIZE;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * @return Share of probes that found their position, between 0 and 1.
+     */
+    public double getHitRate() {
+        long probeCount = probes.sum();
+        return probeCount == 0 ? 0 : (double) hits.sum() / probeCount;
+    }
+}
@@ -0,0 +1,99 @@
+package Server.journal;
+
+/**
+ * One change to a game as read back from a MoveJournal.
+ */
+public final class JournalRecord {
+
+    public enum Type {
+        // A game was created on a board of the recorded geometry.
+        CREATE,
+        JOIN,
+        // A move request, recorded whether or not a disc landed: rejected moves still pass the turn.
+        MOVE,
+        QUIT,
+        WIN,
+        // An empty game was removed from the registry.
+        REMOVE
+    }
+
+    private final Type type;
+    private final long gameId;
+    private final long stateVersion;
+    private final int column;
+    private final int rows;
+    private final int columns;
+    private final int winLength;
+    private final String playerName;
+    private final boolean computer;
+
+    JournalRecord(Type type, long gameId, long stateVersion, int column, int rows, int columns,
+                  int winLength, String playerName, boolean computer) {
+        this.type = type;
+        this.gameId = gameId;
+        this.stateVersion = stateVersion;
+        this.column = column;
+        this.rows = rows;
+        this.columns = columns;
+        this.winLength = winLength;
+        this.playerName = playerName;
+        this.computer = computer;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getGameId() {
+        return gameId;
+    }
+
+    /**
+     * @return The game's state version once this change was applied, or 0 for CREATE and REMOVE.
+     */
+    public long getStateVersion() {
+        return stateVersion;
+    }
+
+    /**
+     * @return Column of a MOVE, counted from 0.
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return Rows of the board of a CREATE.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Columns of the board of a CREATE.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return Win length of a CREATE.
+     */
+    public int getWinLength() {
+        return winLength;
+    }
+
+    /**
+     * @return Player of a JOIN, QUIT or WIN, or an empty string for other records.
+     */
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * @return true for a JOIN or QUIT of the server's computer player.
+     */
+    public boolean isComputer() {
+        return computer;
+    }
+}
@@ -0,0 +1,392 @@
+package Server.journal;
+
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of every game change, so that games can outlive the server process.
+ *
+ * Records are 64 bytes each and go into memory-mapped segment files of a fixed size; when
+ * a segment is full, the journal rolls over to a new one. Appending is a copy into the
+ * mapping under a short lock, so it adds well under a microsecond to a move. Flushing to
+ * disk is left to a background thread that forces all records appended since its last
+ * run at once (group commit). A crashed process loses nothing, since the written pages
+ * belong to the OS; a power loss can lose the records of the last commit interval.
+ *
+ * Record layout, little endian:
+ *   0  int   CRC32C of bytes 4-63
+ *   4  byte  type (JournalRecord.Type ordinal + 1, or CONTINUATION; 0 marks the end)
+ *   5  byte  column of a MOVE (255 for a column that does not exist), rows of a CREATE,
+ *            or 1 for a JOIN or QUIT of the server's computer player
+ *   6  byte  columns of a CREATE
+ *   7  byte  win length of a CREATE
+ *   8  long  game id
+ *   16 long  state version
+ *   24 byte  number of name bytes in this record
+ *   25       up to 39 bytes of the player name, in UTF-8
+ * Longer names continue in the name bytes of CONTINUATION records that directly follow.
+ * Every segment starts with a 64 byte header: magic, format version, record size and segment index.
+ */
+public class MoveJournal implements Closeable {
+
+    public static final int RECORD_SIZE = 64;
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+    public static final long DEFAULT_COMMIT_MILLIS = 10;
+
+    private static final Logger LOG = Logger.getLogger(MoveJournal.class);
+    private static final int MAGIC = 0x464A524E;
+    private static final int FORMAT_VERSION = 1;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final byte CONTINUATION = 0x40;
+    private static final int NO_COLUMN = 255;
+    private static final int NAME_OFFSET = 25;
+    private static final int NAME_BYTES = RECORD_SIZE - NAME_OFFSET;
+    private static final JournalRecord.Type[] TYPES = JournalRecord.Type.values();
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ScheduledExecutorService committer;
+    // Everything below is guarded by this journal's lock.
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32C checksum = new CRC32C();
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private int position;
+    private boolean closed;
+    // Only touched by the committer thread.
+    private MappedByteBuffer committedSegment;
+    private int committedPosition;
+
+    private MoveJournal(Path directory, int segmentBytes, long commitMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commit, commitMillis, commitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the journal in the directory with the default segment size and commit interval.
+     */
+    public static MoveJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_COMMIT_MILLIS);
+    }
+
+    /**
+     * Opens the journal in the directory, creating it if needed, and continues after its last record.
+     *
+     * @param segmentBytes Size of each segment file, a multiple of RECORD_SIZE.
+     * @param commitMillis Time between forcing appended records to disk.
+     */
+    public static MoveJournal open(Path directory, int segmentBytes, long commitMillis) throws IOException {
+        if (segmentBytes % RECORD_SIZE != 0 || segmentBytes < 2 * RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size must be a multiple of " + RECORD_SIZE
+                    + " bytes and hold at least one record.");
+        }
+        Files.createDirectories(directory);
+        MoveJournal journal = new MoveJournal(directory, segmentBytes, commitMillis);
+        synchronized (journal) {
+            List<Path> segments = listSegments(directory);
+            if (segments.isEmpty()) {
+                journal.startSegment(1);
+            } else {
+                journal.continueSegment(segments.get(segments.size() - 1));
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Reads every record of the journal in the directory, oldest first.
+     * Reading stops at the end of the journal, or at the first record that was not completely written.
+     */
+    public static void read(Path directory, Consumer<JournalRecord> consumer) throws IOException {
+        read(directory, 0, consumer);
+    }
+
+    /**
+     * Reads the records of the journal in the directory that were appended at or after a position.
+     *
+     * @param fromPosition A value returned by position().
+     */
+    public static void read(Path directory, long fromPosition, Consumer<JournalRecord> consumer) throws IOException {
+        if (!Files.isDirectory(directory)) return;
+        long fromSegment = fromPosition >>> 32;
+        for (Path file : listSegments(directory)) {
+            try (FileChannel segmentChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer segment = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, segmentChannel.size())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                checkHeader(segment, file);
+                long index = segment.getLong(16);
+                if (index < fromSegment) continue;
+                int start = (index == fromSegment) ? Math.max(RECORD_SIZE, (int) fromPosition) : RECORD_SIZE;
+                scan(segment, start, consumer);
+            }
+        }
+    }
+
+    /**
+     * Deletes the segment files that only hold records from before a position, e.g. once a
+     * snapshot covers them.
+     *
+     * @param position A value returned by position().
+     * @return The number of deleted segments.
+     */
+    public static int deleteSegmentsBefore(Path directory, long position) throws IOException {
+        long segment = position >>> 32;
+        int deleted = 0;
+        for (Path file : listSegments(directory)) {
+            long index = Long.parseLong(file.getFileName().toString().replace(SEGMENT_SUFFIX, ""));
+            if (index >= segment) break;
+            Files.delete(file);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns where the next record will be appended: the segment index in the upper 32 bits,
+     * and the offset within the segment in the lower ones.
+     */
+    public synchronized long position() {
+        return (segmentIndex << 32) | position;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void appendCreate(long gameId, int rows, int columns, int winLength) {
+        append(JournalRecord.Type.CREATE, gameId, 0, rows, columns, winLength, "");
+    }
+
+    public void appendJoin(long gameId, long stateVersion, String playerName) {
+        appendJoin(gameId, stateVersion, playerName, false);
+    }
+
+    /**
+     * @param computer Whether the player is the server's computer player.
+     */
+    public void appendJoin(long gameId, long stateVersion, String playerName, boolean computer) {
+        append(JournalRecord.Type.JOIN, gameId, stateVersion, computer ? 1 : 0, 0, 0, playerName);
+    }
+
+    /**
+     * @param column Requested column counted from 0, even if no disc could land there.
+     */
+    public void appendMove(long gameId, long stateVersion, int column) {
+        int storedColumn = (column >= 0 && column < NO_COLUMN) ? column : NO_COLUMN;
+        append(JournalRecord.Type.MOVE, gameId, stateVersion, storedColumn, 0, 0, "");
+    }
+
+    public void appendQuit(long gameId, long stateVersion, String playerName) {
+        appendQuit(gameId, stateVersion, playerName, false);
+    }
+
+    /**
+     * @param computer Whether the player is the server's computer player.
+     */
+    public void appendQuit(long gameId, long stateVersion, String playerName, boolean computer) {
+        append(JournalRecord.Type.QUIT, gameId, stateVersion, computer ? 1 : 0, 0, 0, playerName);
+    }
+
+    public void appendWin(long gameId, long stateVersion, String playerName) {
+        append(JournalRecord.Type.WIN, gameId, stateVersion, 0, 0, 0, playerName);
+    }
+
+    public void appendRemove(long gameId) {
+        append(JournalRecord.Type.REMOVE, gameId, 0, 0, 0, 0, "");
+    }
+
+    /**
+     * Stops the committer, forces what is left to disk and closes the current segment.
+     */
+    @Override
+    public void close() throws IOException {
+        committer.shutdownNow();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            segment.force();
+            channel.close();
+        }
+    }
+
+    private synchronized void append(JournalRecord.Type type, long gameId, long stateVersion,
+                                     int a, int b, int c, String playerName) {
+        if (closed) return;
+        byte[] name = playerName.getBytes(StandardCharsets.UTF_8);
+        int records = Math.max(1, (name.length + NAME_BYTES - 1) / NAME_BYTES);
+        try {
+            // A name and its continuations always share one segment.
+            if (position + records * RECORD_SIZE > segmentBytes) rollSegment();
+        } catch (IOException e) {
+            LOG.error("Could not start a new journal segment, journaling stops", e);
+            closed = true;
+            return;
+        }
+        int nameOffset = 0;
+        for (int i = 0; i < records; i++) {
+            int nameLength = Math.min(NAME_BYTES, name.length - nameOffset);
+            record.clear();
+            record.putInt(0);
+            record.put(i == 0 ? (byte) (type.ordinal() + 1) : CONTINUATION);
+            record.put((byte) a).put((byte) b).put((byte) c);
+            record.putLong(gameId).putLong(stateVersion);
+            record.put((byte) nameLength).put(name, nameOffset, nameLength);
+            while (record.hasRemaining()) record.put((byte) 0);
+            checksum.reset();
+            checksum.update(record.array(), 4, RECORD_SIZE - 4);
+            record.putInt(0, (int) checksum.getValue());
+            segment.position(position);
+            segment.put(record.array());
+            position += RECORD_SIZE;
+            nameOffset += nameLength;
+        }
+    }
+
+    /**
+     * Forces the records appended since the last commit to disk, all with one call.
+     */
+    private void commit() {
+        MappedByteBuffer current;
+        int appended;
+        synchronized (this) {
+            if (closed) return;
+            current = segment;
+            appended = position;
+        }
+        if (current == committedSegment && appended == committedPosition) return;
+        current.force();
+        committedSegment = current;
+        committedPosition = appended;
+    }
+
+    /**
+     * Closes the full segment and maps the next one. The full segment is forced first,
+     * so the committer only ever has to deal with the current segment.
+     */
+    private void rollSegment() throws IOException {
+        segment.force();
+        channel.close();
+        startSegment(segmentIndex + 1);
+    }
+
+    private void startSegment(long index) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, RECORD_SIZE).putLong(16, index);
+        segmentIndex = index;
+        position = RECORD_SIZE;
+    }
+
+    /**
+     * Maps an existing segment and positions the journal after its last complete record.
+     */
+    private void continueSegment(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() != segmentBytes) {
+            channel.close();
+            throw new IOException(file + " is " + channel.size() + " bytes, expected segments of "
+                    + segmentBytes + " bytes.");
+        }
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        checkHeader(segment, file);
+        segmentIndex = segment.getLong(16);
+        position = scan(segment, RECORD_SIZE, null);
+        // Clear a partly written record, so that it cannot be mistaken for a complete one later.
+        for (int offset = position; offset < Math.min(segmentBytes, position + RECORD_SIZE); offset++) {
+            segment.put(offset, (byte) 0);
+        }
+    }
+
+    private static void checkHeader(ByteBuffer segment, Path file) throws IOException {
+        if (segment.capacity() < RECORD_SIZE || segment.getInt(0) != MAGIC
+                || segment.getInt(4) != FORMAT_VERSION || segment.getInt(8) != RECORD_SIZE) {
+            throw new IOException(file + " is not a journal segment of format version " + FORMAT_VERSION + ".");
+        }
+    }
+
+    /**
+     * Passes each complete record of the segment from an offset on to the consumer, if there is one.
+     *
+     * @return Offset just after the last complete record.
+     */
+    private static int scan(ByteBuffer segment, int start, Consumer<JournalRecord> consumer) {
+        CRC32C recordChecksum = new CRC32C();
+        byte[] bytes = new byte[RECORD_SIZE];
+        int offset = start;
+        JournalRecord.Type type = null;
+        ByteBuffer current = null;
+        ByteArrayOutputStream name = new ByteArrayOutputStream();
+        while (offset + RECORD_SIZE <= segment.capacity()) {
+            segment.position(offset);
+            segment.get(bytes);
+            int typeCode = bytes[4];
+            recordChecksum.reset();
+            recordChecksum.update(bytes, 4, RECORD_SIZE - 4);
+            boolean complete = typeCode != 0 && (int) recordChecksum.getValue() == segment.getInt(offset);
+            if (complete && typeCode == CONTINUATION && current != null) {
+                name.write(bytes, NAME_OFFSET, bytes[24]);
+                offset += RECORD_SIZE;
+                continue;
+            }
+            if (current != null && consumer != null) consumer.accept(toRecord(type, current, name));
+            current = null;
+            if (!complete || typeCode < 1 || typeCode > TYPES.length) break;
+            type = TYPES[typeCode - 1];
+            current = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+            name.reset();
+            name.write(bytes, NAME_OFFSET, bytes[24]);
+            offset += RECORD_SIZE;
+        }
+        if (current != null && consumer != null) consumer.accept(toRecord(type, current, name));
+        return offset;
+    }
+
+    private static JournalRecord toRecord(JournalRecord.Type type, ByteBuffer bytes, ByteArrayOutputStream name) {
+        int a = bytes.get(5) & 0xFF;
+        int column = (type == JournalRecord.Type.MOVE && a != NO_COLUMN) ? a : -1;
+        boolean create = type == JournalRecord.Type.CREATE;
+        boolean computer = (type == JournalRecord.Type.JOIN || type == JournalRecord.Type.QUIT) && a == 1;
+        return new JournalRecord(type, bytes.getLong(8), bytes.getLong(16), column,
+                create ? a : 0, create ? bytes.get(6) & 0xFF : 0, create ? bytes.get(7) & 0xFF : 0,
+                new String(name.toByteArray(), StandardCharsets.UTF_8), computer);
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package Server.journal;
+
+import Protocol.BinaryProtocol;
+import Server.BoardGeometry;
+import Server.GameCounters;
+import Server.GameManager;
+import Server.GameRegistry;
+import Server.GameSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Saves every game of a registry to one compact file next to the journal, and restores
+ * the games from the latest such file plus the journal records appended after it.
+ *
+ * A snapshot starts at a journal position (see GameRegistry.markJournal) and then reads
+ * each game's published GameSnapshot, so it never stops a game from changing. Every
+ * game's saved state version tells which of the journal records from that position on
+ * it already includes; recovery replays only the newer ones. Journal segments from
+ * before the position are deleted once the snapshot is safely on disk.
+ *
+ * File layout, big endian:
+ *   int   magic, int format version, long journal position, long next game id, int game count
+ * then per game:
+ *   long  game id, long state version, byte rows, byte columns, byte win length
+ *   byte  number of players, then each name as a short length and UTF-8 bytes
+ *   byte  index of the player whose turn it is
+ *   byte  index of the server's computer player, or 255 if it does not play
+ *   short length and UTF-8 bytes of the winner's name
+ *   the board in BinaryProtocol's packed layout
+ */
+public final class SnapshotFile {
+
+    public static final String FILE_NAME = "snapshot.bin";
+
+    private static final String TEMPORARY_FILE_NAME = "snapshot.tmp";
+    private static final int MAGIC = 0x46534E50;
+    private static final int FORMAT_VERSION = 1;
+    private static final int NO_COMPUTER_SEAT = 255;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot of every game in the registry to the journal's directory, then
+     * deletes the journal segments it covers. The registry must journal to the given journal.
+     *
+     * @return Number of games saved.
+     */
+    public static int write(GameRegistry registry, MoveJournal journal) throws IOException {
+        long position = registry.markJournal();
+        long nextGameId = registry.getNextGameId();
+        List<Long> gameIds = new ArrayList<>();
+        List<GameSnapshot> snapshots = new ArrayList<>();
+        registry.forEachGame((gameId, game) -> {
+            gameIds.add(gameId);
+            snapshots.add(game.getSnapshot());
+        });
+
+        Path directory = journal.getDirectory();
+        Path temporary = directory.resolve(TEMPORARY_FILE_NAME);
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(position);
+            out.writeLong(nextGameId);
+            out.writeInt(snapshots.size());
+            for (int i = 0; i < snapshots.size(); i++) {
+                writeGame(out, gameIds.get(i), snapshots.get(i));
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        MoveJournal.deleteSegmentsBefore(directory, position);
+        return snapshots.size();
+    }
+
+    /**
+     * Restores the games saved in the directory's latest snapshot and brings them up to
+     * date with the journal records appended after it. Games are decoded and replayed in
+     * parallel. Games that nobody plays in anymore are dropped, except the default game.
+     * Must be called before the registry journals or is shared with other threads.
+     *
+     * @return Number of restored games, the default game included if it was saved or journaled.
+     */
+    public static int recover(Path directory, GameRegistry registry) throws IOException {
+        GameCounters counters = registry.getCounters();
+        long countedMoves = counters.getMoves();
+        long countedWins = counters.getWins();
+        ConcurrentMap<Long, GameManager> games = new ConcurrentHashMap<>();
+        games.put(GameRegistry.DEFAULT_GAME_ID, registry.getGame(GameRegistry.DEFAULT_GAME_ID));
+        long position = 0;
+        long nextGameId = registry.getNextGameId();
+
+        Path file = directory.resolve(FILE_NAME);
+        if (Files.exists(file)) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a snapshot of format version " + FORMAT_VERSION + ".");
+            }
+            position = in.readLong();
+            nextGameId = Math.max(nextGameId, in.readLong());
+            int count = in.readInt();
+            List<SavedGame> saved = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                saved.add(readGame(in));
+            }
+            // Building a game's board and winning windows is what takes the time, not reading the file.
+            saved.parallelStream().forEach(game -> games.put(game.gameId, GameManager.restore(game.geometry,
+                    counters, game.stateVersion, game.players, game.playerTurn, game.computerSeat, game.winner,
+                    game.packedBoard)));
+        }
+
+        Map<Long, List<JournalRecord>> records = new HashMap<>();
+        MoveJournal.read(directory, position, record ->
+                records.computeIfAbsent(record.getGameId(), gameId -> new ArrayList<>()).add(record));
+        records.entrySet().parallelStream().forEach(entry -> {
+            long gameId = entry.getKey();
+            GameManager game = replay(games.get(gameId), entry.getValue(), counters);
+            if (game == null) {
+                games.remove(gameId);
+            } else {
+                games.put(gameId, game);
+            }
+        });
+        // Replayed moves and wins were counted before the restart already.
+        counters.resetTo(countedMoves, countedWins);
+
+        int restored = 0;
+        for (long gameId : records.keySet()) {
+            // Ids of games removed since are not handed out again either.
+            nextGameId = Math.max(nextGameId, gameId + 1);
+        }
+        for (Map.Entry<Long, GameManager> entry : games.entrySet()) {
+            long gameId = entry.getKey();
+            nextGameId = Math.max(nextGameId, gameId + 1);
+            GameManager game = entry.getValue();
+            if (gameId != GameRegistry.DEFAULT_GAME_ID && game.numberOfPlayers() == 0) continue;
+            registry.setGame(gameId, game);
+            restored++;
+        }
+        registry.skipGameIdsBelow(nextGameId);
+        return restored;
+    }
+
+    /**
+     * Applies one game's journal records in order, skipping those its state already includes.
+     *
+     * @param game The game as saved, or null if it was not.
+     * @return The game after the records, or null if it ended up removed.
+     */
+    private static GameManager replay(GameManager game, List<JournalRecord> records, GameCounters counters) {
+        for (JournalRecord record : records) {
+            switch (record.getType()) {
+                case CREATE:
+                    if (game == null) {
+                        game = new GameManager(BoardGeometry.of(record.getRows(), record.getColumns(),
+                                record.getWinLength()), counters);
+                    }
+                    break;
+                case REMOVE:
+                    game = null;
+                    break;
+                case WIN:
+                    // The move before it sets the winner again.
+                    break;
+                default:
+                    if (game == null || record.getStateVersion() <= game.getStateVersion()) break;
+                    int playerId = record.isComputer() ? GameManager.COMPUTER_PLAYER_ID : GameManager.NO_PLAYER_ID;
+                    if (record.getType() == JournalRecord.Type.JOIN) {
+                        game.addPlayer(playerId, record.getPlayerName());
+                    } else if (record.getType() == JournalRecord.Type.MOVE) {
+                        game.handlePlayerMove(record.getColumn());
+                    } else if (record.isComputer()) {
+                        game.removePlayer(playerId);
+                    } else {
+                        game.removePlayer(record.getPlayerName());
+                    }
+                    break;
+            }
+        }
+        return game;
+    }
+
+    private static void writeGame(DataOutputStream out, long gameId, GameSnapshot snapshot) throws IOException {
+        BoardGeometry geometry = snapshot.getGeometry();
+        out.writeLong(gameId);
+        out.writeLong(snapshot.getStateVersion());
+        out.writeByte(geometry.getRows());
+        out.writeByte(geometry.getColumns());
+        out.writeByte(geometry.getWinLength());
+        out.writeByte(snapshot.numberOfPlayers());
+        for (String player : snapshot.getPlayers()) {
+            writeName(out, player);
+        }
+        out.writeByte(snapshot.getPlayerTurnIndex());
+        out.writeByte(snapshot.getComputerSeat() < 0 ? NO_COMPUTER_SEAT : snapshot.getComputerSeat());
+        writeName(out, snapshot.getWinner());
+        out.write(snapshot.getPackedBoard());
+    }
+
+    private static SavedGame readGame(DataInputStream in) throws IOException {
+        SavedGame game = new SavedGame();
+        game.gameId = in.readLong();
+        game.stateVersion = in.readLong();
+        game.geometry = BoardGeometry.of(in.readUnsignedByte(), in.readUnsignedByte(), in.readUnsignedByte());
+        int players = in.readUnsignedByte();
+        game.players = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            game.players.add(readName(in));
+        }
+        game.playerTurn = in.readUnsignedByte();
+        int computerSeat = in.readUnsignedByte();
+        game.computerSeat = (computerSeat == NO_COMPUTER_SEAT) ? -1 : computerSeat;
+        game.winner = readName(in);
+        game.packedBoard = new byte[BinaryProtocol.packedBoardLength(game.geometry.getRows(),
+                game.geometry.getColumns())];
+        in.readFully(game.packedBoard);
+        return game;
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readName(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A game as read from the file, before its board is built.
+     */
+    private static class SavedGame {
+        long gameId;
+        long stateVersion;
+        BoardGeometry geometry;
+        List<String> players;
+        int playerTurn;
+        int computerSeat;
+        String winner;
+        byte[] packedBoard;
+    }
+}
@@ -0,0 +1,34 @@
+package Server.networking;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Selects how the WebServer runs its HTTP exchanges.
+ */
+public enum ExecutorMode {
+
+    /** A fixed pool of platform threads, so at most FIXED_POOL_SIZE exchanges run at once. */
+    FIXED_POOL,
+
+    /** A new virtual thread per exchange. Needs a JDK with virtual threads (21 or later). */
+    VIRTUAL_THREADS;
+
+    private static final int FIXED_POOL_SIZE = 8;
+
+    ExecutorService createExecutor() {
+        if (this == FIXED_POOL) return Executors.newFixedThreadPool(FIXED_POOL_SIZE);
+        // Looked up reflectively so that the default build can still target Java 11.
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads need JDK 21 or later, running on "
+                    + System.getProperty("java.version"), e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create a virtual thread executor.", e);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package Server.networking;
+
+import Server.GameEvent;
+import Server.GameEventListener;
+import Server.GameManager;
+import Server.GameSnapshot;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes game events to clients over long-lived Server-Sent Events responses.
+ * Each open stream is an HttpExchange plus a queue of encoded events; streams with
+ * pending events are drained on the streams' own writer pool, so no thread is tied to a stream
+ * and a client that stops reading never holds up the request handlers.
+ *
+ * A write that blocks for longer than WRITE_TIMEOUT_MILLIS is interrupted, which drops its
+ * client, and so is a client that falls MAX_PENDING_EVENTS changes behind. Either can reconnect
+ * and start again from the game's current state.
+ */
+class GameEventStreams {
+
+    private static final long HEARTBEAT_SECONDS = 15;
+    // An SSE comment line, ignored by clients but fails fast on dead connections.
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+    static final long WRITE_TIMEOUT_MILLIS = 5000;
+    static final int MAX_PENDING_EVENTS = 1024;
+
+    private final ConcurrentMap<GameManager, Set<EventStream>> streamsByGame = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-stream-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService writeExecutor;
+    private final WriteWatchdog watchdog = new WriteWatchdog(heartbeatScheduler, WRITE_TIMEOUT_MILLIS);
+
+    GameEventStreams(int writerThreads) {
+        this.writeExecutor = Executors.newFixedThreadPool(writerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "event-stream-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatScheduler.scheduleAtFixedRate(this::sendHeartbeats,
+                HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts an event stream on the exchange and sends the game's current state as its first event.
+     * The exchange stays open after the calling handler returns.
+     *
+     * @param exchange HttpExchange object
+     * @param gameManager Game to stream
+     */
+    void open(HttpExchange exchange, GameManager gameManager) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        EventStream stream = new EventStream(exchange, gameManager);
+        // Subscribe before reading the state, so no change can fall between the two.
+        // Clients skip events that are not newer than the state event.
+        streamsByGame.computeIfAbsent(gameManager, this::watchGame).add(stream);
+        stream.enqueue(encodeState(gameManager));
+    }
+
+    /**
+     * Ends every stream of a game that is being removed.
+     */
+    void forget(GameManager gameManager) {
+        Set<EventStream> streams = streamsByGame.remove(gameManager);
+        if (streams == null) return;
+        for (EventStream stream : streams) {
+            stream.close();
+        }
+    }
+
+    void shutdown() {
+        heartbeatScheduler.shutdownNow();
+        for (GameManager gameManager : streamsByGame.keySet()) {
+            forget(gameManager);
+        }
+        writeExecutor.shutdown();
+    }
+
+    private Set<EventStream> watchGame(GameManager gameManager) {
+        Set<EventStream> streams = ConcurrentHashMap.newKeySet();
+        gameManager.addGameEventListener(new StreamPublisher(streams));
+        return streams;
+    }
+
+    private void sendHeartbeats() {
+        for (Set<EventStream> streams : streamsByGame.values()) {
+            for (EventStream stream : streams) {
+                stream.enqueue(HEARTBEAT);
+            }
+        }
+    }
+
+    /**
+     * Encodes the whole game as a single "state" event. Its data lines are the seat and name of the
+     * player whose turn it is, the winner (empty if none), then the name of each player.
+     */
+    static byte[] encodeState(GameManager gameManager) {
+        return encodeState(gameManager.getSnapshot());
+    }
+
+    static byte[] encodeState(GameSnapshot snapshot) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("event: state\n")
+                .append("id: ").append(snapshot.getStateVersion()).append('\n')
+                .append("data: ").append(snapshot.getPlayerTurnIndex()).append(' ')
+                .append(snapshot.getPlayerTurn()).append('\n')
+                .append("data: ").append(snapshot.getWinner()).append('\n');
+        for (String player : snapshot.getPlayers()) {
+            builder.append("data: ").append(player).append('\n');
+        }
+        builder.append('\n');
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes events in the text/event-stream format, using the state version as event id.
+     * A move's data is its column, row and player; a turn's is the seat and name of its player.
+     */
+    static byte[] encode(List<GameEvent> events) {
+        StringBuilder builder = new StringBuilder();
+        for (GameEvent event : events) {
+            builder.append("event: ").append(event.getType().name().toLowerCase()).append('\n')
+                    .append("id: ").append(event.getStateVersion()).append('\n')
+                    .append("data: ");
+            if (event.getType() == GameEvent.Type.MOVE) {
+                builder.append(event.getColumn()).append(' ').append(event.getRow()).append(' ');
+            } else if (event.getType() == GameEvent.Type.TURN) {
+                builder.append(event.getSeat()).append(' ');
+            }
+            builder.append(event.getPlayerName()).append("\n\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes each change once and hands the same bytes to every stream of the game.
+     */
+    private static class StreamPublisher implements GameEventListener {
+        private final Set<EventStream> streams;
+
+        StreamPublisher(Set<EventStream> streams) {
+            this.streams = streams;
+        }
+
+        @Override
+        public void onGameEvents(GameManager gameManager, List<GameEvent> events) {
+            if (streams.isEmpty() || events.isEmpty()) return;
+            byte[] encoded = encode(events);
+            for (EventStream stream : streams) {
+                stream.enqueue(encoded);
+            }
+        }
+    }
+
+    private class EventStream {
+        private final HttpExchange exchange;
+        private final GameManager gameManager;
+        private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        // Set while a drain task for this stream is queued or running.
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed = false;
+        // Only touched by the drain task, the one thread that may block on the exchange.
+        private boolean exchangeClosed = false;
+
+        EventStream(HttpExchange exchange, GameManager gameManager) {
+            this.exchange = exchange;
+            this.gameManager = gameManager;
+        }
+
+        void enqueue(byte[] bytes) {
+            if (closed) return;
+            if (pendingCount.incrementAndGet() > MAX_PENDING_EVENTS) {
+                // The client stopped reading.
+                close();
+                return;
+            }
+            pending.add(bytes);
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (!draining.compareAndSet(false, true)) return;
+            try {
+                writeExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // The server is shutting down.
+            }
+        }
+
+        /**
+         * Writes everything queued so far, or closes the exchange once the stream is closed.
+         * Only one drain runs per stream at a time, which keeps events in order without locking.
+         */
+        private void drain() {
+            WriteWatchdog.Watch watch = watchdog.start();
+            try {
+                if (!closed) {
+                    OutputStream body = exchange.getResponseBody();
+                    byte[] bytes;
+                    while ((bytes = pending.poll()) != null) {
+                        pendingCount.decrementAndGet();
+                        body.write(bytes);
+                    }
+                    body.flush();
+                }
+            } catch (IOException e) {
+                // The client disconnected, or its write timed out.
+                close();
+            } finally {
+                if (closed && !exchangeClosed) {
+                    exchangeClosed = true;
+                    exchange.close();
+                }
+                watch.end();
+                draining.set(false);
+            }
+            // An event or close may have come after the last check but before the flag was cleared.
+            if (closed ? !exchangeClosed : !pending.isEmpty()) scheduleDrain();
+        }
+
+        /**
+         * Stops the stream. The exchange is closed by the stream's drain task, since closing
+         * it writes to the client as well.
+         */
+        void close() {
+            closed = true;
+            pending.clear();
+            Set<EventStream> streams = streamsByGame.get(gameManager);
+            if (streams != null) streams.remove(this);
+            scheduleDrain();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package Server.networking;
+
+import Server.GameManager;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parks long-poll /state requests until their game changes or the poll times out.
+ * A parked request is just an open HttpExchange in a queue, so it holds no handler thread.
+ * Responses are written on the response executor, never on the thread that changed the game.
+ */
+class PendingStateRequests {
+
+    /**
+     * Writes the current game state to a parked exchange.
+     */
+    interface StateResponder {
+        void respond(HttpExchange exchange, GameManager gameManager) throws IOException;
+    }
+
+    private final ConcurrentMap<GameManager, Queue<ParkedRequest>> parkedRequests = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "long-poll-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Executor responseExecutor;
+    private final StateResponder responder;
+    private final long timeoutMillis;
+
+    PendingStateRequests(Executor responseExecutor, StateResponder responder, long timeoutMillis) {
+        this.responseExecutor = responseExecutor;
+        this.responder = responder;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Holds the exchange until the game's state version moves past the version the client has seen.
+     * Answers straight away if the client is already behind.
+     *
+     * @param exchange HttpExchange object
+     * @param gameManager Game the client is watching
+     * @param sinceVersion Last state version the client has seen
+     */
+    void park(HttpExchange exchange, GameManager gameManager, long sinceVersion) {
+        Queue<ParkedRequest> queue = parkedRequests.computeIfAbsent(gameManager, this::watchGame);
+        ParkedRequest request = new ParkedRequest(exchange, gameManager);
+        queue.add(request);
+        // The game may have changed before the request was queued, in which case no wake-up is coming.
+        if (gameManager.getStateVersion() > sinceVersion) {
+            queue.remove(request);
+            complete(request);
+            return;
+        }
+        request.timeout = timeoutScheduler.schedule(() -> {
+            queue.remove(request);
+            complete(request);
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Answers every request parked on a game that is being removed.
+     */
+    void forget(GameManager gameManager) {
+        Queue<ParkedRequest> queue = parkedRequests.remove(gameManager);
+        if (queue != null) wakeAll(queue);
+    }
+
+    void shutdown() {
+        timeoutScheduler.shutdownNow();
+    }
+
+    private Queue<ParkedRequest> watchGame(GameManager gameManager) {
+        Queue<ParkedRequest> queue = new ConcurrentLinkedQueue<>();
+        gameManager.addGameEventListener((game, events) -> wakeAll(queue));
+        return queue;
+    }
+
+    private void wakeAll(Queue<ParkedRequest> queue) {
+        ParkedRequest request;
+        while ((request = queue.poll()) != null) {
+            complete(request);
+        }
+    }
+
+    private void complete(ParkedRequest request) {
+        // Both the state change and the timeout may try to answer the same request.
+        if (!request.completed.compareAndSet(false, true)) return;
+        if (request.timeout != null) request.timeout.cancel(false);
+        responseExecutor.execute(() -> {
+            try {
+                responder.respond(request.exchange, request.gameManager);
+            } catch (IOException e) {
+                // The client went away while its request was parked.
+                request.exchange.close();
+            }
+        });
+    }
+
+    private static class ParkedRequest {
+        private final HttpExchange exchange;
+        private final GameManager gameManager;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile ScheduledFuture<?> timeout;
+
+        ParkedRequest(HttpExchange exchange, GameManager gameManager) {
+            this.exchange = exchange;
+            this.gameManager = gameManager;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package Server.networking;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Request latencies counted into fixed buckets, in the shape of a Prometheus histogram.
+ * Recording is a bucket search and three atomic increments: it never locks or allocates,
+ * so it can run on every request.
+ */
+class RequestHistogram {
+
+    // Upper bounds of the buckets in microseconds; slower requests only count towards +Inf.
+    private static final long[] BUCKET_MICROS = {
+            100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000
+    };
+    // The "le" label of each bucket, in seconds.
+    private static final String[] UPPER_BOUNDS = new String[BUCKET_MICROS.length + 1];
+
+    static {
+        for (int bucket = 0; bucket < BUCKET_MICROS.length; bucket++) {
+            UPPER_BOUNDS[bucket] = BigDecimal.valueOf(BUCKET_MICROS[bucket], 6).stripTrailingZeros().toPlainString();
+        }
+        UPPER_BOUNDS[BUCKET_MICROS.length] = "+Inf";
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_MICROS.length + 1);
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    void record(long nanos, boolean error) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_MICROS.length && micros > BUCKET_MICROS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        sumNanos.addAndGet(nanos);
+        if (error) errors.incrementAndGet();
+    }
+
+    /**
+     * Appends the cumulative buckets, sum and count, with the given labels on every sample.
+     */
+    void writeTo(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int bucket = 0; bucket <= BUCKET_MICROS.length; bucket++) {
+            cumulative += counts.get(bucket);
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(UPPER_BOUNDS[bucket])
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ").append(sumNanos.get() / 1e9).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+    }
+
+    long getErrors() {
+        return errors.get();
+    }
+}
@@ -0,0 +1,99 @@
+package Server.networking;
+
+import Server.GameCounters;
+import Server.GameRegistry;
+import Server.ai.TranspositionTable;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects request latencies per endpoint and renders them, together with the game
+ * totals, in the Prometheus text exposition format for the /metrics endpoint.
+ *
+ * Endpoints are timed by a Filter around their handler. A long poll that gets parked
+ * and a stream that gets opened count as finished once the handler returns.
+ */
+class ServerMetrics {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Filled before the server starts, only read afterwards.
+    private final Map<String, RequestHistogram> endpoints = new LinkedHashMap<>();
+
+    /**
+     * @return A filter that times every exchange of the endpoint. Responses of 400 and above count as errors.
+     */
+    Filter timerFor(String endpoint) {
+        RequestHistogram histogram = endpoints.computeIfAbsent(endpoint, name -> new RequestHistogram());
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    chain.doFilter(exchange);
+                } finally {
+                    histogram.record(System.nanoTime() - start, exchange.getResponseCode() >= 400);
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Times " + endpoint + " requests";
+            }
+        };
+    }
+
+    /**
+     * Renders every metric. Called once per scrape, so unlike recording it may allocate.
+     *
+     * @param spectators Open /watch streams.
+     * @param table The computer player's transposition table, or null if the server has none yet.
+     */
+    String render(GameRegistry gameRegistry, int spectators, TranspositionTable table) {
+        StringBuilder out = new StringBuilder(4096);
+        describe(out, "fiveinarow_request_duration_seconds", "histogram",
+                "Time spent handling requests, by endpoint.");
+        for (Map.Entry<String, RequestHistogram> endpoint : endpoints.entrySet()) {
+            endpoint.getValue().writeTo(out, "fiveinarow_request_duration_seconds",
+                    "endpoint=\"" + endpoint.getKey() + "\"");
+        }
+        describe(out, "fiveinarow_request_errors_total", "counter",
+                "Requests answered with a 4xx or 5xx status, by endpoint.");
+        for (Map.Entry<String, RequestHistogram> endpoint : endpoints.entrySet()) {
+            out.append("fiveinarow_request_errors_total{endpoint=\"").append(endpoint.getKey()).append("\"} ")
+                    .append(endpoint.getValue().getErrors()).append('\n');
+        }
+
+        GameCounters counters = gameRegistry.getCounters();
+        sample(out, "fiveinarow_games_active", "gauge", "Games currently hosted.",
+                gameRegistry.numberOfGames());
+        sample(out, "fiveinarow_players_active", "gauge", "Players currently seated across all games.",
+                gameRegistry.numberOfPlayers());
+        sample(out, "fiveinarow_spectators_active", "gauge", "Spectator streams currently open across all games.",
+                spectators);
+        sample(out, "fiveinarow_moves_total", "counter", "Discs placed in all games.",
+                counters.getMoves());
+        sample(out, "fiveinarow_wins_total", "counter", "Games won.",
+                counters.getWins());
+        if (table != null) {
+            sample(out, "fiveinarow_transposition_table_hit_ratio", "gauge",
+                    "Share of the computer player's table probes that found their position.",
+                    table.getHitRate());
+        }
+        return out.toString();
+    }
+
+    private static void describe(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String type, String help, Number value) {
+        describe(out, name, type, help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
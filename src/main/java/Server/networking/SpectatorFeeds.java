@@ -0,0 +1,312 @@
+package Server.networking;
+
+import Server.GameEvent;
+import Server.GameEventListener;
+import Server.GameManager;
+import Server.GameSnapshot;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams games to read-only spectators over Server-Sent Events, built so that any number
+ * of spectators costs the game's players nothing.
+ *
+ * A change to a watched game only flags its feed; the flagged feed is flushed at most
+ * once per batch interval, on the feed's own scheduler. A flush encodes the latest
+ * snapshot once, as one frame shared by every spectator of that version, and hands it to
+ * the feed's chunks of spectators. Each chunk is written by one task at a time on the
+ * fan-out pool and always writes the newest frame it was given, so a slow spectator holds
+ * back only its own chunk, and a chunk that falls behind skips straight to the latest state.
+ * A write to one spectator that blocks for longer than WRITE_TIMEOUT_MILLIS is interrupted and
+ * the spectator dropped, so a stalled connection holds its chunk up for that long at most.
+ * Nothing runs on the handler executor or on the thread that changed the game.
+ */
+class SpectatorFeeds {
+
+    static final long BATCH_MILLIS = 50;
+    private static final int CHUNK_SIZE = 256;
+    private static final long HEARTBEAT_SECONDS = 15;
+    static final long WRITE_TIMEOUT_MILLIS = 5000;
+    private static final Frame HEARTBEAT = new Frame(-1, ":\n\n".getBytes(StandardCharsets.UTF_8));
+
+    private final ConcurrentMap<GameManager, Feed> feeds = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spectator-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService fanOutPool;
+    private final WriteWatchdog watchdog = new WriteWatchdog(flushScheduler, WRITE_TIMEOUT_MILLIS);
+
+    SpectatorFeeds(int fanOutThreads) {
+        this.fanOutPool = Executors.newFixedThreadPool(fanOutThreads, runnable -> {
+            Thread thread = new Thread(runnable, "spectator-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushScheduler.scheduleAtFixedRate(this::sendHeartbeats, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts a spectator stream on the exchange, beginning with the game's current state.
+     * The exchange stays open after the calling handler returns.
+     */
+    void open(HttpExchange exchange, GameManager gameManager) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        Feed feed = feeds.computeIfAbsent(gameManager, Feed::new);
+        Chunk chunk = feed.add(new Spectator(exchange));
+        // Spectators already past this version skip it, so the rest of the chunk gets nothing new.
+        chunk.offer(feed.frameFor(gameManager.getSnapshot()));
+    }
+
+    /**
+     * @return Number of open spectator streams across all games.
+     */
+    int numberOfSpectators() {
+        int spectators = 0;
+        for (Feed feed : feeds.values()) {
+            for (Chunk chunk : feed.chunks) {
+                spectators += chunk.spectators.size();
+            }
+        }
+        return spectators;
+    }
+
+    /**
+     * Ends every spectator stream of a game that is being removed.
+     */
+    void forget(GameManager gameManager) {
+        Feed feed = feeds.remove(gameManager);
+        if (feed == null) return;
+        gameManager.removeGameEventListener(feed);
+        for (Chunk chunk : feed.chunks) {
+            chunk.close();
+        }
+    }
+
+    void shutdown() {
+        flushScheduler.shutdownNow();
+        for (GameManager gameManager : feeds.keySet()) {
+            forget(gameManager);
+        }
+        fanOutPool.shutdownNow();
+    }
+
+    private void sendHeartbeats() {
+        for (Feed feed : feeds.values()) {
+            for (Chunk chunk : feed.chunks) {
+                chunk.offer(HEARTBEAT);
+            }
+        }
+    }
+
+    /**
+     * Encodes a snapshot as a "state" event followed by a "board" event holding one row of the text board per data line.
+     */
+    static byte[] encode(GameSnapshot snapshot) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(new String(GameEventStreams.encodeState(snapshot), StandardCharsets.UTF_8))
+                .append("event: board\n")
+                .append("id: ").append(snapshot.getStateVersion()).append('\n');
+        String board = new String(snapshot.getBoardBytes(), StandardCharsets.US_ASCII);
+        for (String row : board.split("\n")) {
+            if (!row.isEmpty()) builder.append("data: ").append(row).append('\n');
+        }
+        builder.append('\n');
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An encoded state, shared by every spectator that is sent this version.
+     */
+    private static final class Frame {
+        final long stateVersion;
+        final byte[] bytes;
+
+        Frame(long stateVersion, byte[] bytes) {
+            this.stateVersion = stateVersion;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The spectators of one game. As a listener it only flags the feed, so it adds
+     * one compare-and-set to a change of the game however many spectators there are.
+     */
+    private class Feed implements GameEventListener {
+        private final GameManager gameManager;
+        private final List<Chunk> chunks = new CopyOnWriteArrayList<>();
+        // Set while a flush is scheduled and has not read the game's snapshot yet.
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private volatile Frame latestFrame = new Frame(-1, new byte[0]);
+
+        Feed(GameManager gameManager) {
+            this.gameManager = gameManager;
+            gameManager.addGameEventListener(this);
+        }
+
+        @Override
+        public void onGameEvents(GameManager game, List<GameEvent> events) {
+            if (flushScheduled.compareAndSet(false, true)) {
+                flushScheduler.schedule(this::flush, BATCH_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flush() {
+            // Cleared before reading the snapshot, so a change after the read schedules the next flush.
+            flushScheduled.set(false);
+            Frame frame = frameFor(gameManager.getSnapshot());
+            for (Chunk chunk : chunks) {
+                chunk.offer(frame);
+            }
+        }
+
+        /**
+         * Returns the frame of the snapshot's version, encoding it only if no one has yet.
+         */
+        Frame frameFor(GameSnapshot snapshot) {
+            Frame frame = latestFrame;
+            if (frame.stateVersion == snapshot.getStateVersion()) return frame;
+            // Racing encoders produce equal frames, and either may be kept.
+            frame = new Frame(snapshot.getStateVersion(), encode(snapshot));
+            if (frame.stateVersion > latestFrame.stateVersion) latestFrame = frame;
+            return frame;
+        }
+
+        Chunk add(Spectator spectator) {
+            synchronized (chunks) {
+                for (Chunk chunk : chunks) {
+                    if (chunk.spectators.size() < CHUNK_SIZE) {
+                        chunk.spectators.add(spectator);
+                        return chunk;
+                    }
+                }
+                Chunk chunk = new Chunk();
+                chunk.spectators.add(spectator);
+                chunks.add(chunk);
+                return chunk;
+            }
+        }
+    }
+
+    /**
+     * Spectators written together by one task at a time, which keeps each stream's frames in order.
+     */
+    private class Chunk {
+        private final Set<Spectator> spectators = ConcurrentHashMap.newKeySet();
+        private final AtomicReference<Frame> newest = new AtomicReference<>();
+        private final AtomicReference<Frame> heartbeat = new AtomicReference<>();
+        // Set while a write task for this chunk is queued or running.
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private volatile boolean closed = false;
+
+        void offer(Frame frame) {
+            if (frame == HEARTBEAT) {
+                heartbeat.set(frame);
+            } else {
+                newest.accumulateAndGet(frame, (current, offered) ->
+                        (current == null || offered.stateVersion > current.stateVersion) ? offered : current);
+            }
+            scheduleWrite();
+        }
+
+        /**
+         * Ends the chunk's streams on its write task, since closing an exchange writes to the client as well.
+         */
+        void close() {
+            closed = true;
+            scheduleWrite();
+        }
+
+        private void scheduleWrite() {
+            if (!writing.compareAndSet(false, true)) return;
+            try {
+                fanOutPool.execute(this::write);
+            } catch (RejectedExecutionException e) {
+                // The server is shutting down.
+            }
+        }
+
+        private void write() {
+            WriteWatchdog.Watch watch = watchdog.start();
+            try {
+                Frame frame;
+                while (!closed && (frame = newest.getAndSet(null)) != null) {
+                    send(frame, watch);
+                }
+                if (!closed && heartbeat.getAndSet(null) != null) {
+                    send(HEARTBEAT, watch);
+                }
+                if (closed) {
+                    for (Spectator spectator : spectators) {
+                        watch.restart();
+                        spectator.close();
+                        spectators.remove(spectator);
+                    }
+                }
+            } finally {
+                watch.end();
+                writing.set(false);
+            }
+            // A frame or close may have come after the last check but before the flag was cleared.
+            if (closed ? !spectators.isEmpty() : newest.get() != null || heartbeat.get() != null) scheduleWrite();
+        }
+
+        private void send(Frame frame, WriteWatchdog.Watch watch) {
+            for (Spectator spectator : spectators) {
+                watch.restart();
+                if (!spectator.send(frame)) spectators.remove(spectator);
+            }
+        }
+    }
+
+    private static class Spectator {
+        private final HttpExchange exchange;
+        // Only touched by the chunk's write task.
+        private long sentVersion = -1;
+
+        Spectator(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        /**
+         * Writes the frame unless this spectator has already seen its version.
+         *
+         * @return false if the spectator disconnected, or stopped reading for longer than the write timeout.
+         */
+        boolean send(Frame frame) {
+            if (frame != HEARTBEAT && frame.stateVersion <= sentVersion) return true;
+            try {
+                OutputStream body = exchange.getResponseBody();
+                body.write(frame.bytes);
+                body.flush();
+            } catch (IOException e) {
+                close();
+                return false;
+            }
+            if (frame != HEARTBEAT) sentVersion = frame.stateVersion;
+            return true;
+        }
+
+        void close() {
+            exchange.close();
+        }
+    }
+}
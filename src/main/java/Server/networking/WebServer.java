@@ -1,46 +1,231 @@
 package Server.networking;
 
+import Protocol.BinaryGameState;
+import Protocol.BinaryProtocol;
+import Protocol.CommandBatch;
+import Server.BoardGeometry;
 import Server.GameManager;
+import Server.GameRegistry;
+import Server.GameSnapshot;
+import Server.MatchmakingLobby;
+import Server.SessionTable;
+import Server.TimingWheel;
+import Server.ai.AlphaBetaSearch;
+import Server.ai.ComputerPlayer;
+import Server.ai.OpeningBook;
+import Server.ai.TranspositionTable;
+import Server.journal.MoveJournal;
+import Server.journal.SnapshotFile;
 import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles our HTTP communication with the client.
  */
 public class WebServer {
 
+    // Per-request logging is at debug level, so with the shipped configuration it costs one level check.
+    private static final Logger LOG = Logger.getLogger(WebServer.class);
+
     private static final int DEFAULT_PORT = 8082;
     private static final String STATUS_ENDPOINT = "/status";
     private static final String JOIN_ENDPOINT = "/join";
     private static final String GAME_STATE_ENDPOINT = "/state";
     private static final String PLAYER_MOVE_ENDPOINT = "/move";
     private static final String PLAYER_QUIT_ENDPOINT = "/quit";
+    private static final String EVENT_STREAM_ENDPOINT = "/stream";
+    private static final String BATCH_ENDPOINT = "/batch";
+    private static final String WATCH_ENDPOINT = "/watch";
+    private static final String METRICS_ENDPOINT = "/metrics";
+    // Bounds the time a single /batch request can hold a handler thread.
+    private static final int MAX_BATCH_COMMANDS = 10_000;
+
+    private static final String GAME_ID_PARAMETER = "game";
+    // Passed as the game id to /join to start a fresh game.
+    private static final String NEW_GAME = "new";
+    // Passed as the game id to /join to be paired with any waiting opponent, optionally of similar skill=<rating>.
+    private static final String MATCH_GAME = "match";
+    private static final String SKILL_PARAMETER = "skill";
+    // Time a /join waits in the lobby before it is answered without a game, and the client asks again.
+    private static final long LOBBY_WAIT_MILLIS = 10_000;
+    private static final String GAME_ID_HEADER = "X-Game-Id";
+    // Handed out by /join; /move and /quit requests that send it back act for that player in their game.
+    private static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+    // Seat of the requesting session's player and seat whose turn it is, which tell two players of one name apart.
+    private static final String SEAT_HEADER = "X-Seat";
+    private static final String PLAYER_TURN_SEAT_HEADER = "X-Player-Turn-Seat";
+
+    // Board size and win length passed to /join when it creates a game, e.g. rows=19&cols=19&win=5.
+    private static final String ROWS_PARAMETER = "rows";
+    private static final String COLUMNS_PARAMETER = "cols";
+    private static final String WIN_LENGTH_PARAMETER = "win";
+    private static final String BOARD_SIZE_HEADER = "X-Board-Size";
+    private static final String WIN_LENGTH_HEADER = "X-Win-Length";
+
+    // Long-poll /state requests pass the last state version they have seen.
+    private static final String SINCE_VERSION_PARAMETER = "since";
+    private static final String STATE_VERSION_HEADER = "X-State-Version";
+    private static final String ETAG_HEADER = "ETag";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final long LONG_POLL_TIMEOUT_MILLIS = 30_000;
+
+    // Clients that send BinaryProtocol.MEDIA_TYPE here get, or send, the binary encoding instead of text.
+    private static final String ACCEPT_HEADER = "Accept";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    private static final String VARY_HEADER = "Vary";
+
+    // Server cli flag that runs each exchange on its own virtual thread.
+    private static final String VIRTUAL_THREADS_FLAG = "--virtual-threads";
+    // Server cli flag setting how long the computer player thinks per move, e.g. --computer-millis=2000.
+    private static final String COMPUTER_MILLIS_FLAG = "--computer-millis=";
+    private static final long DEFAULT_COMPUTER_MILLIS = 1000;
+    // Server cli flag bounding the memory of the computer player's transposition table, e.g. --computer-hash-mb=64.
+    private static final String COMPUTER_HASH_FLAG = "--computer-hash-mb=";
+    private static final int DEFAULT_COMPUTER_HASH_MEGABYTES = 16;
+    // Server cli flag naming an opening book file for the computer player, e.g. --opening-book=book.bin.
+    private static final String OPENING_BOOK_FLAG = "--opening-book=";
+    // Server cli flag naming a directory to journal every game change to, e.g. --journal=journal.
+    private static final String JOURNAL_FLAG = "--journal=";
+    // Server cli flag setting the seconds between snapshots of all games next to the journal, e.g. --snapshot-seconds=30.
+    private static final String SNAPSHOT_SECONDS_FLAG = "--snapshot-seconds=";
+    private static final long DEFAULT_SNAPSHOT_SECONDS = 60;
+    // Server cli flags setting how long a player or a game may go without a request before it expires,
+    // e.g. --player-timeout-seconds=120. An expired player is removed as if they had quit.
+    private static final String PLAYER_TIMEOUT_FLAG = "--player-timeout-seconds=";
+    private static final String GAME_TIMEOUT_FLAG = "--game-timeout-seconds=";
+    private static final long DEFAULT_PLAYER_TIMEOUT_SECONDS = 300;
+    private static final long DEFAULT_GAME_TIMEOUT_SECONDS = 900;
+    private static final long EXPIRY_TICK_MILLIS = 1000;
+
+    // Passed as vs=server to /join to play against the computer.
+    private static final String OPPONENT_PARAMETER = "vs";
+    private static final String SERVER_OPPONENT = "server";
+
+    static {
+        // Without TCP_NODELAY, a body written after the response headers waits for the
+        // client's delayed ACK, adding about 40ms to every response that has a body.
+        // The JDK reads this setting once, when the first HttpServer is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
 
     private final int port;
+    private final ExecutorMode executorMode;
     private HttpServer server;
-    GameManager gameManager = new GameManager();
+    private ExecutorService executor;
+    private PendingStateRequests pendingStateRequests;
+    private GameEventStreams gameEventStreams;
+    private SpectatorFeeds spectatorFeeds;
+    private final GameRegistry gameRegistry = new GameRegistry();
+    private final MatchmakingLobby lobby = new MatchmakingLobby(gameRegistry);
+    private final SessionTable sessions = new SessionTable(this::expireSession);
+    // Turns once a second and expires players and games that went quiet.
+    private TimingWheel expiryWheel;
+    private long playerTimeoutSeconds = DEFAULT_PLAYER_TIMEOUT_SECONDS;
+    private long gameTimeoutSeconds = DEFAULT_GAME_TIMEOUT_SECONDS;
+    private final ConcurrentMap<GameManager, TimingWheel.Timer> gameTimers = new ConcurrentHashMap<>();
+    // Searches run here rather than on the handler executor.
+    private ForkJoinPool searchPool;
+    private AlphaBetaSearch search;
+    private long computerMoveMillis = DEFAULT_COMPUTER_MILLIS;
+    private int computerHashMegabytes = DEFAULT_COMPUTER_HASH_MEGABYTES;
+    private OpeningBook openingBook;
+    private MoveJournal journal;
+    private long snapshotSeconds = DEFAULT_SNAPSHOT_SECONDS;
+    private ScheduledExecutorService snapshotter;
+    private final ConcurrentMap<GameManager, ComputerPlayer> computerPlayers = new ConcurrentHashMap<>();
+    // Games restored by setJournal, whose computer players resume when the server starts.
+    private final List<Long> restoredGameIds = new ArrayList<>();
+    private final ServerMetrics metrics = new ServerMetrics();
 
     public WebServer(int port) {
+        this(port, ExecutorMode.FIXED_POOL);
+    }
+
+    public WebServer(int port, ExecutorMode executorMode) {
         this.port = port;
-        setGameManager(gameManager);
+        this.executorMode = executorMode;
     }
 
     public static void main(String[] args) {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        ExecutorMode executorMode = ExecutorMode.FIXED_POOL;
+        if (arguments.remove(VIRTUAL_THREADS_FLAG)) executorMode = ExecutorMode.VIRTUAL_THREADS;
+        String computerMillis = takeFlagValue(arguments, COMPUTER_MILLIS_FLAG);
+        String computerHashMegabytes = takeFlagValue(arguments, COMPUTER_HASH_FLAG);
+        String openingBook = takeFlagValue(arguments, OPENING_BOOK_FLAG);
+        String journalDirectory = takeFlagValue(arguments, JOURNAL_FLAG);
+        String snapshotSeconds = takeFlagValue(arguments, SNAPSHOT_SECONDS_FLAG);
+        String playerTimeoutSeconds = takeFlagValue(arguments, PLAYER_TIMEOUT_FLAG);
+        String gameTimeoutSeconds = takeFlagValue(arguments, GAME_TIMEOUT_FLAG);
+
         int serverPort = DEFAULT_PORT;
         // Port as cli argument.
-        if (args.length == 1) serverPort = Integer.parseInt(args[0]);
+        if (arguments.size() == 1) serverPort = Integer.parseInt(arguments.get(0));
 
-        WebServer server = new WebServer(serverPort);
+        WebServer server = new WebServer(serverPort, executorMode);
+        if (computerMillis != null) server.setComputerMoveMillis(Long.parseLong(computerMillis));
+        if (computerHashMegabytes != null) server.setComputerHashMegabytes(Integer.parseInt(computerHashMegabytes));
+        if (openingBook != null) {
+            try {
+                server.setOpeningBook(OpeningBook.open(Paths.get(openingBook)));
+            } catch (IOException e) {
+                LOG.warn("Could not open the opening book, the computer will search every move: "
+                        + e.getMessage());
+            }
+        }
+        if (snapshotSeconds != null) server.setSnapshotSeconds(Long.parseLong(snapshotSeconds));
+        if (playerTimeoutSeconds != null) server.setPlayerTimeoutSeconds(Long.parseLong(playerTimeoutSeconds));
+        if (gameTimeoutSeconds != null) server.setGameTimeoutSeconds(Long.parseLong(gameTimeoutSeconds));
+        if (journalDirectory != null) {
+            try {
+                server.setJournal(MoveJournal.open(Paths.get(journalDirectory)));
+            } catch (IOException e) {
+                LOG.error("Could not open the journal in " + journalDirectory, e);
+                return;
+            }
+        }
         server.startServer();
 
-        System.out.println("Server is listening on port " + serverPort);
+        LOG.info("Server is listening on port " + serverPort);
+    }
+
+    /**
+     * Removes a "--flag=value" argument from the list.
+     *
+     * @return The flag's value, or null if the flag was not passed.
+     */
+    private static String takeFlagValue(List<String> arguments, String flag) {
+        for (String argument : arguments) {
+            if (argument.startsWith(flag)) {
+                arguments.remove(argument);
+                return argument.substring(flag.length());
+            }
+        }
+        return null;
     }
 
     /**
@@ -48,23 +233,82 @@ public class WebServer {
      * Starts server thread pool.
      */
     public void startServer() {
+        // Create concurrent thread pool (or virtual thread executor) before binding the port,
+        // so an unsupported executor mode fails without leaving the port taken.
+        this.executor = executorMode.createExecutor();
         try {
             this.server = HttpServer.create(new InetSocketAddress(port), 0);
         } catch(IOException e) {
-            e.printStackTrace();
+            LOG.error("Could not bind port " + port, e);
         }
         setupHttpContextObjects();
-        // Create concurrent thread pool & start our server.
-        server.setExecutor(Executors.newFixedThreadPool(8));
+        // Start our server.
+        this.pendingStateRequests = new PendingStateRequests(executor,
+                this::sendGameState, LONG_POLL_TIMEOUT_MILLIS);
+        this.gameEventStreams = new GameEventStreams(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        this.spectatorFeeds = new SpectatorFeeds(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        this.searchPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.search = new AlphaBetaSearch(searchPool, new TranspositionTable(computerHashMegabytes));
+        resumeComputerPlayers();
+        this.expiryWheel = new TimingWheel(EXPIRY_TICK_MILLIS, executor);
+        // Games restored from the journal expire like any other once nobody comes back to them.
+        gameRegistry.forEachGame((gameId, gameManager) -> touchGame(gameId, gameManager));
+        expiryWheel.start();
+        if (journal != null) startSnapshots();
+        server.setExecutor(executor);
         server.start();
     }
 
+    /**
+     * Lets the computer play on in the games restored from the journal.
+     */
+    private void resumeComputerPlayers() {
+        for (long gameId : restoredGameIds) {
+            GameManager gameManager = gameRegistry.getGame(gameId);
+            if (gameManager == null) continue;
+            ComputerPlayer computer = ComputerPlayer.resume(gameManager, search, searchPool,
+                    computerMoveMillis, openingBook);
+            if (computer != null) computerPlayers.put(gameManager, computer);
+        }
+    }
+
+    /**
+     * Saves all games next to the journal every few seconds, so that recovery only replays
+     * the journal since the latest snapshot.
+     */
+    private void startSnapshots() {
+        this.snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(this::writeSnapshot, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+    }
+
+    // Synchronized, since the final snapshot at shutdown may overlap a scheduled one.
+    private synchronized void writeSnapshot() {
+        try {
+            long start = System.nanoTime();
+            int games = SnapshotFile.write(gameRegistry, journal);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Saved %d games in %dms.", games,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            }
+        } catch (IOException e) {
+            LOG.error("Could not save a snapshot of the games", e);
+        }
+    }
+
     private void setupHttpContextObjects() {
         HttpContext statusContext = server.createContext(STATUS_ENDPOINT);
         HttpContext joinContext = server.createContext(JOIN_ENDPOINT);
         HttpContext stateContext = server.createContext(GAME_STATE_ENDPOINT);
         HttpContext moveContext = server.createContext(PLAYER_MOVE_ENDPOINT);
         HttpContext quitContext = server.createContext(PLAYER_QUIT_ENDPOINT);
+        HttpContext streamContext = server.createContext(EVENT_STREAM_ENDPOINT);
+        HttpContext batchContext = server.createContext(BATCH_ENDPOINT);
+        HttpContext watchContext = server.createContext(WATCH_ENDPOINT);
+        HttpContext metricsContext = server.createContext(METRICS_ENDPOINT);
 
         // Connect endpoints to respective methods.
         statusContext.setHandler(this::handleStatusCheckRequest);
@@ -72,6 +316,15 @@ public class WebServer {
         stateContext.setHandler(this::handleGameStateCheckRequest);
         moveContext.setHandler(this::handlePlayerMoveRequest);
         quitContext.setHandler(this::handleQuitRequest);
+        streamContext.setHandler(this::handleEventStreamRequest);
+        batchContext.setHandler(this::handleBatchRequest);
+        watchContext.setHandler(this::handleWatchRequest);
+        metricsContext.setHandler(this::handleMetricsRequest);
+
+        for (HttpContext context : Arrays.asList(statusContext, joinContext, stateContext, moveContext,
+                quitContext, streamContext, batchContext, watchContext)) {
+            context.getFilters().add(metrics.timerFor(context.getPath()));
+        }
     }
 
     /**
@@ -84,15 +337,34 @@ public class WebServer {
             exchange.close();
             return;
         }
-        System.out.println("[SERVER] /status endpoint called.\n");
+        if (LOG.isDebugEnabled()) LOG.debug("/status endpoint called.");
         String responseMessage = "Server is alive!\n";
         sendResponse(responseMessage.getBytes(), exchange);
     }
 
+    /**
+     * Handles requests on the /metrics endpoint.
+     * Answers with request latencies per endpoint and game totals in the Prometheus text format.
+     *
+     * @param exchange HttpExchange object
+     */
+    private void handleMetricsRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+        String body = metrics.render(gameRegistry, spectatorFeeds.numberOfSpectators(),
+                (search == null) ? null : search.getTranspositionTable());
+        exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, ServerMetrics.CONTENT_TYPE);
+        sendResponse(body.getBytes(StandardCharsets.UTF_8), exchange);
+    }
+
     /**
      * Handles requests on the /state endpoint.
      * Retrieves state-representing data from the GameManager.
      * Adds information to the Http Response as custom headers.
+     * If the client passes the last state version it has seen, the request is
+     * parked until the game moves past that version or the long poll times out.
      *
      * @param exchange HttpExchange object
      */
@@ -101,16 +373,100 @@ public class WebServer {
             exchange.close();
             return;
         }
-        System.out.println("[SERVER] /state endpoint called.\n");
-        addGameStateToHeaders(exchange);
-        String boardState = gameManager.getBoardStateAsText();
-        sendResponse(boardState.getBytes(), exchange);
+        if (LOG.isDebugEnabled()) LOG.debug("/state endpoint called.");
+        GameManager gameManager = findRequestedGame(exchange);
+        if (gameManager == null) return;
+
+        String sinceVersion = getQueryParameter(exchange, SINCE_VERSION_PARAMETER);
+        if (sinceVersion != null) {
+            try {
+                pendingStateRequests.park(exchange, gameManager, Long.parseLong(sinceVersion));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(400, "Invalid state version.", exchange);
+            }
+            return;
+        }
+        sendGameState(exchange, gameManager);
+    }
+
+    /**
+     * Sends the board as the response body, with turn, waiting and winner as headers.
+     * Clients that accept BinaryProtocol.MEDIA_TYPE get the whole state as one binary body instead.
+     * Both get the seat whose turn it is, and a request with a session token the seat of its player.
+     * The state version doubles as the ETag: a client that already holds this version
+     * gets an empty 304 Not Modified instead.
+     */
+    private void sendGameState(HttpExchange exchange, GameManager gameManager) throws IOException {
+        // Headers and body all come from one snapshot, so they always describe the same version.
+        GameSnapshot snapshot = gameManager.getSnapshot();
+        boolean binary = isBinaryRequest(exchange, ACCEPT_HEADER);
+        // Each representation gets its own ETag, so a cached text state never answers a binary request.
+        String eTag = "\"" + snapshot.getStateVersion() + (binary ? "b" : "") + "\"";
+        exchange.getResponseHeaders().set(ETAG_HEADER, eTag);
+        exchange.getResponseHeaders().set(VARY_HEADER, ACCEPT_HEADER);
+        if (eTag.equals(exchange.getRequestHeaders().getFirst(IF_NONE_MATCH_HEADER))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set(PLAYER_TURN_SEAT_HEADER, String.valueOf(snapshot.getPlayerTurnIndex()));
+        String token = exchange.getRequestHeaders().getFirst(SESSION_TOKEN_HEADER);
+        if (token != null) {
+            SessionTable.Session session = sessions.find(token);
+            if (session != null) addSeatHeader(exchange, snapshot, session);
+        }
+        if (binary) {
+            exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, BinaryProtocol.MEDIA_TYPE);
+            sendResponse(snapshot.getBinaryState(), exchange);
+            return;
+        }
+        addGameStateToHeaders(exchange, snapshot);
+        sendResponse(snapshot.getBoardBytes(), exchange);
+    }
+
+    /**
+     * Handles requests on the /stream endpoint.
+     * Keeps the response open and pushes every join, quit, move, turn and winner
+     * event of the game to the client as Server-Sent Events.
+     *
+     * @param exchange HttpExchange object
+     */
+    private void handleEventStreamRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("/stream endpoint called.");
+        GameManager gameManager = findRequestedGame(exchange);
+        if (gameManager == null) return;
+        gameEventStreams.open(exchange, gameManager);
+    }
+
+    /**
+     * Handles requests on the /watch endpoint.
+     * Streams the game to a read-only spectator: a "state" and a "board" event for the
+     * latest version, at most once per SpectatorFeeds.BATCH_MILLIS. Spectators take no
+     * seat and never change the game.
+     *
+     * @param exchange HttpExchange object
+     */
+    private void handleWatchRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("/watch endpoint called.");
+        GameManager gameManager = findRequestedGame(exchange);
+        if (gameManager == null) return;
+        spectatorFeeds.open(exchange, gameManager);
     }
 
     /**
      * Handles requests to the /move endpoint.
      * Extracts client's column choice from request body and
      * passes information to the GameManager.
+     * The column is either text counted from 1, or a single BinaryProtocol byte counted from 0.
+     * A move into a full or missing column is answered 400 and changes nothing, so the turn stays.
      *
      * @param exchange HttpExchange object
      */
@@ -119,17 +475,54 @@ public class WebServer {
             exchange.close();
             return;
         }
-        System.out.println("[SERVER] /move endpoint called.\n");
+        if (LOG.isDebugEnabled()) LOG.debug("/move endpoint called.");
+        SessionTable.Session session = null;
+        GameManager gameManager;
+        String token = exchange.getRequestHeaders().getFirst(SESSION_TOKEN_HEADER);
+        if (token != null) {
+            session = findSession(token, exchange);
+            if (session == null) return;
+            gameManager = findSessionGame(session, exchange);
+        } else {
+            gameManager = findRequestedGame(exchange);
+        }
+        if (gameManager == null) return;
 
-        String playerMove = getStringFromRequestBody(exchange);
-        int columnChoice = Integer.parseInt(playerMove);
-        gameManager.handlePlayerMove(columnChoice-1);
+        byte[] playerMove = exchange.getRequestBody().readAllBytes();
+        int column;
+        try {
+            column = isBinaryRequest(exchange, CONTENT_TYPE_HEADER)
+                    ? BinaryProtocol.decodeMove(playerMove)
+                    : Integer.parseInt(new String(playerMove)) - 1;
+        } catch (IllegalArgumentException e) {
+            sendErrorResponse(400, "Invalid move.", exchange);
+            return;
+        }
+        // Without a session, only a player who joined by name can be moved for.
+        int playerId = (session != null) ? session.getPlayerId() : GameManager.NO_PLAYER_ID;
+        GameManager.MoveResult result = gameManager.handlePlayerMove(playerId, column);
+        if (result == GameManager.MoveResult.NOT_YOUR_TURN) {
+            sendErrorResponse(409, "Not your turn.", exchange);
+            return;
+        }
+        if (result == GameManager.MoveResult.INVALID_COLUMN) {
+            sendErrorResponse(400, "Invalid move.", exchange);
+            return;
+        }
         sendResponse(new byte[0], exchange);
     }
 
     /**
      * Handles requests to the /join endpoint.
-     * Adds client to the game if game is not full.
+     * Adds client to the requested game if game is not full.
+     * The GameManager checks for a free seat again as it adds the player,
+     * so concurrent joins can never overfill a game.
+     * A game id of "new" starts a fresh game, an unknown id creates that game.
+     * A created game gets the board size and win length passed as rows, cols and win;
+     * an existing game keeps its own.
+     * With vs=server, the computer takes the second seat.
+     * A player who gets a seat also gets a session token, to send with their later requests,
+     * and the seat they took.
      *
      * @param exchange HttpExchange object
      */
@@ -138,20 +531,129 @@ public class WebServer {
             exchange.close();
             return;
         }
-        System.out.println("[SERVER] /join endpoint called.\n");
+        if (LOG.isDebugEnabled()) LOG.debug("/join endpoint called.");
         String responseMessage = "";
+        if (MATCH_GAME.equalsIgnoreCase(getQueryParameter(exchange, GAME_ID_PARAMETER))) {
+            joinLobby(exchange);
+            return;
+        }
 
-        if (gameIsFull()) {
+        BoardGeometry geometry;
+        try {
+            geometry = getRequestedGeometry(exchange);
+        } catch (IllegalArgumentException e) {
+            sendErrorResponse(400, "Invalid board size. " + e.getMessage(), exchange);
+            return;
+        }
+
+        String clientName = getStringFromRequestBody(exchange);
+        boolean versusServer = SERVER_OPPONENT.equalsIgnoreCase(getQueryParameter(exchange, OPPONENT_PARAMETER));
+        SessionTable.Session session = openSession(clientName, exchange);
+        if (session == null) return;
+        JoinedGame joined;
+        try {
+            joined = joinGame(getQueryParameter(exchange, GAME_ID_PARAMETER), geometry,
+                    session.getPlayerId(), clientName, versusServer);
+        } catch (IllegalArgumentException e) {
+            closeUnseatedSession(session);
+            sendErrorResponse(400, "Invalid game id.", exchange);
+            return;
+        }
+        if (joined == null) {
+            closeUnseatedSession(session);
             responseMessage = "Sorry, the game is full.";
             sendResponse(responseMessage.getBytes(), exchange);
             return;
         }
-        String clientName = getStringFromRequestBody(exchange);
-        gameManager.addPlayer(clientName);
-        responseMessage = String.format("\nAll players: %s\n", gameManager.getPlayers());
+        seatSession(session, joined.gameId);
+        exchange.getResponseHeaders().put(GAME_ID_HEADER,
+                Collections.singletonList(String.valueOf(joined.gameId)));
+        exchange.getResponseHeaders().put(SESSION_TOKEN_HEADER, Collections.singletonList(session.getToken()));
+        addSeatHeader(exchange, joined.gameManager.getSnapshot(), session);
+        responseMessage = String.format("\nAll players: %s\n", joined.gameManager.getPlayers());
         sendResponse(responseMessage.getBytes(), exchange);
     }
 
+    /**
+     * Puts the player in the matchmaking lobby. The exchange is answered once an opponent
+     * is found, or without a game id once LOBBY_WAIT_MILLIS have passed; it holds no
+     * handler thread while it waits.
+     */
+    private void joinLobby(HttpExchange exchange) throws IOException {
+        int skill = MatchmakingLobby.UNRATED;
+        String skillParameter = getQueryParameter(exchange, SKILL_PARAMETER);
+        if (skillParameter != null) {
+            try {
+                skill = Math.max(0, Integer.parseInt(skillParameter));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(400, "Invalid skill rating.", exchange);
+                return;
+            }
+        }
+        String clientName = getStringFromRequestBody(exchange);
+        SessionTable.Session session = openSession(clientName, exchange);
+        if (session == null) return;
+        MatchmakingLobby.Ticket ticket = lobby.enter(session.getPlayerId(), clientName, skill);
+        if (!ticket.getMatch().isDone()) {
+            CompletableFuture.delayedExecutor(LOBBY_WAIT_MILLIS, TimeUnit.MILLISECONDS, executor)
+                    .execute(() -> lobby.leave(ticket));
+        }
+        ticket.getMatch().thenAcceptAsync(gameId -> sendMatchResponse(exchange, session, gameId), executor);
+    }
+
+    private void sendMatchResponse(HttpExchange exchange, SessionTable.Session session, long gameId) {
+        try {
+            if (gameId == MatchmakingLobby.NO_MATCH) {
+                closeUnseatedSession(session);
+                sendResponse("No opponent found yet.".getBytes(), exchange);
+                return;
+            }
+            GameManager gameManager = gameRegistry.getGame(gameId);
+            seatSession(session, gameId);
+            touchGame(gameId, gameManager);
+            exchange.getResponseHeaders().put(GAME_ID_HEADER, Collections.singletonList(String.valueOf(gameId)));
+            exchange.getResponseHeaders().put(SESSION_TOKEN_HEADER, Collections.singletonList(session.getToken()));
+            addSeatHeader(exchange, gameManager.getSnapshot(), session);
+            String responseMessage = String.format("\nAll players: %s\n", gameManager.getPlayers());
+            sendResponse(responseMessage.getBytes(), exchange);
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) LOG.debug("Could not answer a matched /join: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Seats a player in a game, shared by /join and /batch.
+     *
+     * @param requestedGame Game id, "new" for a fresh game, or null for the default game.
+     * @param geometry Board of the game if this creates it.
+     * @param playerId Id of the player's session, or GameManager.NO_PLAYER_ID.
+     * @param versusServer true to seat the computer in the second seat.
+     * @return The joined game, or null if the game is full.
+     * @throws IllegalArgumentException if the game id is invalid.
+     */
+    private JoinedGame joinGame(String requestedGame, BoardGeometry geometry, int playerId, String clientName,
+                          boolean versusServer) {
+        long gameId;
+        if (requestedGame == null) {
+            gameId = GameRegistry.DEFAULT_GAME_ID;
+        } else if (requestedGame.equalsIgnoreCase(NEW_GAME)) {
+            gameId = gameRegistry.createGame(geometry);
+        } else {
+            gameId = parseGameId(requestedGame);
+            if (gameId < 0) throw new IllegalArgumentException("Invalid game id.");
+        }
+        while (true) {
+            GameManager gameManager = gameRegistry.getOrCreateGame(gameId, geometry);
+            if (!gameIsFull(gameManager) && gameManager.addPlayer(playerId, clientName)) {
+                if (versusServer) seatComputerPlayer(gameManager);
+                touchGame(gameId, gameManager);
+                return new JoinedGame(gameId, gameManager);
+            }
+            // The game was closed as its last player left, so join the new game under its id instead.
+            if (!gameManager.isClosed()) return null;
+        }
+    }
+
     /**
      * Handles requests made to the /quit endpoint.
      *
@@ -162,15 +664,258 @@ public class WebServer {
             exchange.close();
             return;
         }
-        System.out.println("[SERVER] /quit endpoint called.\n");
-
-        String clientName = getStringFromRequestBody(exchange);
-        gameManager.removePlayer(clientName);
-        addGameStateToHeaders(exchange);
+        if (LOG.isDebugEnabled()) LOG.debug("/quit endpoint called.");
+        String token = exchange.getRequestHeaders().getFirst(SESSION_TOKEN_HEADER);
+        GameSnapshot snapshot;
+        if (token != null) {
+            SessionTable.Session session = findSession(token, exchange);
+            if (session == null) return;
+            GameManager gameManager = findSessionGame(session, exchange);
+            if (gameManager == null) return;
+            snapshot = quitGame(session.getGameId(), gameManager, session);
+        } else {
+            GameManager gameManager = findRequestedGame(exchange);
+            if (gameManager == null) return;
+            String clientName = getStringFromRequestBody(exchange);
+            snapshot = quitGame(getRequestedGameId(exchange), gameManager, clientName);
+        }
+        addGameStateToHeaders(exchange, snapshot);
         String responseMessage = "Successfully shutdown.";
         sendResponse(responseMessage.getBytes(), exchange);
     }
 
+    /**
+     * Removes a player from a game, shared by /quit and /batch.
+     * The computer leaves once it has nobody to play against, and a game
+     * other than the default game is removed once it is empty.
+     *
+     * @return The game's state after the player left.
+     */
+    private GameSnapshot quitGame(long gameId, GameManager gameManager, String clientName) {
+        gameManager.removePlayer(clientName);
+        return leftGame(gameId, gameManager);
+    }
+
+    /**
+     * Removes the player of a session from its game and closes the session,
+     * shared by /quit and the session's expiry. A session only quits once.
+     *
+     * @return The game's state after the player left.
+     */
+    private GameSnapshot quitGame(long gameId, GameManager gameManager, SessionTable.Session session) {
+        expiryWheel.cancel(session.getExpiryTimer());
+        if (!sessions.close(session)) return gameManager.getSnapshot();
+        gameManager.removePlayer(session.getPlayerId());
+        // Only now that the seat is gone may a new session get the player id.
+        sessions.release(session);
+        return leftGame(gameId, gameManager);
+    }
+
+    /**
+     * Closes the session of a player who holds no seat, so its player id is free again straight away.
+     */
+    private void closeUnseatedSession(SessionTable.Session session) {
+        if (sessions.close(session)) sessions.release(session);
+    }
+
+    private GameSnapshot leftGame(long gameId, GameManager gameManager) {
+        ComputerPlayer computer = computerPlayers.get(gameManager);
+        if (computer != null && gameManager.numberOfPlayers() == 1) {
+            // Nobody is left to play against the computer.
+            computerPlayers.remove(gameManager, computer);
+            computer.leave();
+        }
+        GameSnapshot snapshot = gameManager.getSnapshot();
+        if (snapshot.numberOfPlayers() == 0 && gameRegistry.removeGame(gameId, gameManager)) {
+            TimingWheel.Timer timer = gameTimers.remove(gameManager);
+            if (timer != null) expiryWheel.cancel(timer);
+            pendingStateRequests.forget(gameManager);
+            gameEventStreams.forget(gameManager);
+            spectatorFeeds.forget(gameManager);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Starts the session's expiry once its player has a seat.
+     */
+    private void seatSession(SessionTable.Session session, long gameId) {
+        session.setGameId(gameId);
+        expiryWheel.schedule(session.getExpiryTimer(), TimeUnit.SECONDS.toMillis(playerTimeoutSeconds));
+    }
+
+    /**
+     * Moves the game's expiry a whole game timeout ahead, starting it on the game's first request.
+     */
+    private void touchGame(long gameId, GameManager gameManager) {
+        TimingWheel.Timer timer = gameTimers.get(gameManager);
+        if (timer != null && expiryWheel.refresh(timer)) return;
+        if (timer == null) {
+            timer = gameTimers.computeIfAbsent(gameManager,
+                    game -> new TimingWheel.Timer(() -> expireGame(gameId, game)));
+        }
+        // Also restarts the expiry of a game that outlived it, e.g. one whose session players stayed.
+        expiryWheel.schedule(timer, TimeUnit.SECONDS.toMillis(gameTimeoutSeconds));
+    }
+
+    /**
+     * Removes a player whose session saw no request for the player timeout, exactly as /quit would.
+     */
+    private void expireSession(SessionTable.Session session) {
+        GameManager gameManager = gameRegistry.getGame(session.getGameId());
+        if (gameManager == null) {
+            closeUnseatedSession(session);
+            return;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Session of " + session.getPlayerName() + " expired.");
+        quitGame(session.getGameId(), gameManager, session);
+    }
+
+    /**
+     * Removes the players who joined by name only from a game that saw no request for the game timeout,
+     * exactly as /quit would. Players with a session leave once their own session expires, and the
+     * computer, whose seat has its own id, leaves with its last opponent.
+     */
+    private void expireGame(long gameId, GameManager gameManager) {
+        if (gameRegistry.getGame(gameId) != gameManager) {
+            gameTimers.remove(gameManager);
+            return;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Game " + gameId + " expired.");
+        for (String player : gameManager.getPlayersWithoutSession()) {
+            quitGame(gameId, gameManager, player);
+        }
+    }
+
+    /**
+     * Handles requests to the /batch endpoint.
+     * Applies the CommandBatch in the request body in order and answers with one
+     * result line per command, so a bot or a replay pays one round trip for many commands.
+     * A failing command gets an error line and the batch carries on with the next one.
+     *
+     * @param exchange HttpExchange object
+     */
+    private void handleBatchRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
+            exchange.close();
+            return;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("/batch endpoint called.");
+        List<String[]> commands = CommandBatch.parse(getStringFromRequestBody(exchange));
+        if (commands.size() > MAX_BATCH_COMMANDS) {
+            sendErrorResponse(400, "Too many commands, at most " + MAX_BATCH_COMMANDS + " per batch.", exchange);
+            return;
+        }
+
+        StringBuilder results = new StringBuilder();
+        long[] lastJoinedGame = {-1};
+        for (String[] command : commands) {
+            String result;
+            try {
+                result = applyBatchCommand(command, lastJoinedGame);
+            } catch (IllegalArgumentException e) {
+                result = CommandBatch.result(CommandBatch.ERROR, e.getMessage());
+            }
+            results.append(result).append('\n');
+        }
+        sendResponse(results.toString().getBytes(StandardCharsets.UTF_8), exchange);
+    }
+
+    /**
+     * Applies one batch command.
+     *
+     * @param lastJoinedGame Holds the id of the game the latest join of the batch joined.
+     * @return The command's result line.
+     * @throws IllegalArgumentException if the command is malformed or names an unknown game.
+     */
+    private String applyBatchCommand(String[] command, long[] lastJoinedGame) {
+        switch (command[0]) {
+            case CommandBatch.JOIN: {
+                requireFields(command, 3);
+                Map<String, String> options = new HashMap<>();
+                for (int i = 3; i < command.length; i++) {
+                    int separator = command[i].indexOf('=');
+                    if (separator < 0) throw new IllegalArgumentException("Invalid option " + command[i]);
+                    options.put(command[i].substring(0, separator), command[i].substring(separator + 1));
+                }
+                BoardGeometry geometry = toGeometry(options.get(ROWS_PARAMETER),
+                        options.get(COLUMNS_PARAMETER), options.get(WIN_LENGTH_PARAMETER));
+                String requestedGame = command[1].equals(CommandBatch.LAST_JOINED_GAME)
+                        ? String.valueOf(getLastJoinedGame(lastJoinedGame))
+                        : command[1];
+                JoinedGame joined = joinGame(requestedGame, geometry, GameManager.NO_PLAYER_ID, command[2],
+                        SERVER_OPPONENT.equalsIgnoreCase(options.get(OPPONENT_PARAMETER)));
+                if (joined == null) return CommandBatch.FULL;
+                lastJoinedGame[0] = joined.gameId;
+                return CommandBatch.result(CommandBatch.OK, String.valueOf(joined.gameId));
+            }
+            case CommandBatch.MOVE: {
+                requireFields(command, 3);
+                GameManager gameManager = gameRegistry.getGame(findBatchGame(command[1], lastJoinedGame));
+                // Batches carry no token, so they only move for players who joined by name, like a tokenless /move.
+                GameManager.MoveResult result =
+                        gameManager.handlePlayerMove(GameManager.NO_PLAYER_ID, Integer.parseInt(command[2]) - 1);
+                if (result == GameManager.MoveResult.NOT_YOUR_TURN) {
+                    return CommandBatch.result(CommandBatch.ERROR, "Not your turn.");
+                }
+                if (result == GameManager.MoveResult.INVALID_COLUMN) {
+                    return CommandBatch.result(CommandBatch.ERROR, "Invalid move.");
+                }
+                return CommandBatch.OK;
+            }
+            case CommandBatch.STATE: {
+                requireFields(command, 2);
+                long gameId = findBatchGame(command[1], lastJoinedGame);
+                BinaryGameState state = BinaryProtocol.decodeState(
+                        gameRegistry.getGame(gameId).getSnapshot().getBinaryState());
+                return CommandBatch.result(CommandBatch.STATE, String.valueOf(gameId),
+                        String.valueOf(state.getStateVersion()), state.getPlayerTurn(),
+                        String.valueOf(state.isWaiting()), state.getWinner(), CommandBatch.describeBoard(state));
+            }
+            case CommandBatch.QUIT: {
+                requireFields(command, 3);
+                long gameId = findBatchGame(command[1], lastJoinedGame);
+                quitGame(gameId, gameRegistry.getGame(gameId), command[2]);
+                return CommandBatch.OK;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown command " + command[0]);
+        }
+    }
+
+    /**
+     * @return Id of an existing game named by a batch command.
+     * @throws IllegalArgumentException if the id is invalid or the game does not exist.
+     */
+    private long findBatchGame(String requestedGame, long[] lastJoinedGame) {
+        long gameId = requestedGame.equals(CommandBatch.LAST_JOINED_GAME)
+                ? getLastJoinedGame(lastJoinedGame)
+                : parseGameId(requestedGame);
+        if (gameId < 0) throw new IllegalArgumentException("Invalid game id.");
+        GameManager gameManager = gameRegistry.getGame(gameId);
+        if (gameManager == null) throw new IllegalArgumentException("Game not found.");
+        touchGame(gameId, gameManager);
+        return gameId;
+    }
+
+    private long getLastJoinedGame(long[] lastJoinedGame) {
+        if (lastJoinedGame[0] < 0) throw new IllegalArgumentException("No game joined yet.");
+        return lastJoinedGame[0];
+    }
+
+    private void requireFields(String[] command, int count) {
+        if (command.length < count) throw new IllegalArgumentException("Missing fields for " + command[0]);
+    }
+
+    /**
+     * Seats the computer in a game that has only one player so far.
+     */
+    private void seatComputerPlayer(GameManager gameManager) {
+        if (gameManager.numberOfPlayers() != 1) return;
+        ComputerPlayer computer = ComputerPlayer.seat(gameManager, search, searchPool, computerMoveMillis, openingBook);
+        if (computer != null) computerPlayers.put(gameManager, computer);
+    }
+
     /**
      * Sends our HTTP response back to the client.
      *
@@ -178,8 +923,13 @@ public class WebServer {
      * @param exchange HttpExchange object
      */
     private void sendResponse(byte[] responseBytes, HttpExchange exchange) throws IOException {
+        if (responseBytes.length == 0) {
+            // A length of 0 would mean a chunked body, -1 means no body at all.
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
         exchange.sendResponseHeaders(200, responseBytes.length);
-        if (responseBytes.length == 0) return;
         OutputStream outputStream = exchange.getResponseBody();
         outputStream.write(responseBytes);
         outputStream.flush();
@@ -187,16 +937,68 @@ public class WebServer {
     }
 
     /**
-     * Retrieves state-representing values from the game manager and adds them
+     * Sends a plain text error message with the given status code.
+     */
+    private void sendErrorResponse(int statusCode, String message, HttpExchange exchange) throws IOException {
+        byte[] responseBytes = message.getBytes();
+        exchange.sendResponseHeaders(statusCode, responseBytes.length);
+        OutputStream outputStream = exchange.getResponseBody();
+        outputStream.write(responseBytes);
+        outputStream.close();
+    }
+
+    /**
+     * Retrieves state-representing values from a game snapshot and adds them
      * to the HTTP Exchange response headers.
      */
-    private void addGameStateToHeaders(HttpExchange exchange) {
+    private void addGameStateToHeaders(HttpExchange exchange, GameSnapshot snapshot) {
+        exchange.getResponseHeaders().put(STATE_VERSION_HEADER,
+                Collections.singletonList(String.valueOf(snapshot.getStateVersion())));
         exchange.getResponseHeaders().put("X-Player-Turn",
-                Collections.singletonList(gameManager.getPlayerTurn()));
+                Collections.singletonList(snapshot.getPlayerTurn()));
         exchange.getResponseHeaders().put("X-Waiting",
-                Collections.singletonList(String.valueOf(!gameIsFull())));
+                Collections.singletonList(String.valueOf(snapshot.numberOfPlayers() < GameManager.MAX_PLAYERS)));
         exchange.getResponseHeaders().put("X-Winner",
-                Collections.singletonList(gameManager.getWinner()));
+                Collections.singletonList(snapshot.getWinner()));
+        BoardGeometry geometry = snapshot.getGeometry();
+        exchange.getResponseHeaders().put(BOARD_SIZE_HEADER,
+                Collections.singletonList(geometry.getRows() + "x" + geometry.getColumns()));
+        exchange.getResponseHeaders().put(WIN_LENGTH_HEADER,
+                Collections.singletonList(String.valueOf(geometry.getWinLength())));
+    }
+
+    /**
+     * Adds the seat the session's player holds in the snapshot's game, if they are seated there.
+     * The seat changes when a player in front of it leaves.
+     */
+    private void addSeatHeader(HttpExchange exchange, GameSnapshot snapshot, SessionTable.Session session) {
+        int seat = snapshot.getSeat(session.getPlayerId());
+        if (seat >= 0) exchange.getResponseHeaders().set(SEAT_HEADER, String.valueOf(seat));
+    }
+
+    /**
+     * Reads the board size and win length from the query string, defaulting to the standard board.
+     *
+     * @throws IllegalArgumentException if a value is not a number or the board is not playable.
+     */
+    private BoardGeometry getRequestedGeometry(HttpExchange exchange) {
+        return toGeometry(getQueryParameter(exchange, ROWS_PARAMETER),
+                getQueryParameter(exchange, COLUMNS_PARAMETER),
+                getQueryParameter(exchange, WIN_LENGTH_PARAMETER));
+    }
+
+    /**
+     * @param rows Number of rows, or null for the standard board's
+     * @param columns Number of columns, or null for the standard board's
+     * @param winLength Discs in a row needed to win, or null for the standard board's
+     * @throws IllegalArgumentException if a value is not a number or the board is not playable.
+     */
+    private BoardGeometry toGeometry(String rows, String columns, String winLength) {
+        BoardGeometry standard = BoardGeometry.STANDARD;
+        return BoardGeometry.of(
+                (rows == null) ? standard.getRows() : Integer.parseInt(rows),
+                (columns == null) ? standard.getColumns() : Integer.parseInt(columns),
+                (winLength == null) ? standard.getWinLength() : Integer.parseInt(winLength));
     }
 
     /**
@@ -210,15 +1012,226 @@ public class WebServer {
         return new String(requestBytes);
     }
 
-    private boolean gameIsFull() {
-        return (gameManager.numberOfPlayers() == 2);
+    /**
+     * Opens a session for a joining player.
+     *
+     * @return The session, or null after answering 503 if no more sessions can be opened.
+     */
+    private SessionTable.Session openSession(String clientName, HttpExchange exchange) throws IOException {
+        try {
+            return sessions.open(clientName);
+        } catch (IllegalStateException e) {
+            sendErrorResponse(503, "Too many players.", exchange);
+            return null;
+        }
     }
 
+    /**
+     * @return The open session of the token, or null after answering 401 if there is none.
+     */
+    private SessionTable.Session findSession(String token, HttpExchange exchange) throws IOException {
+        SessionTable.Session session = sessions.find(token);
+        if (session == null) sendErrorResponse(401, "Unknown session.", exchange);
+        return session;
+    }
+
+    /**
+     * Refreshes the expiry of the session and its game.
+     *
+     * @return The game the session's player is seated in, or null after answering 404 if it is gone.
+     */
+    private GameManager findSessionGame(SessionTable.Session session, HttpExchange exchange) throws IOException {
+        expiryWheel.refresh(session.getExpiryTimer());
+        GameManager gameManager = gameRegistry.getGame(session.getGameId());
+        if (gameManager == null) {
+            sendErrorResponse(404, "Game not found.", exchange);
+            return null;
+        }
+        touchGame(session.getGameId(), gameManager);
+        return gameManager;
+    }
+
+    /**
+     * Looks up the game named by the request's game id parameter.
+     * Requests without a game id address the default game.
+     * Answers the request with an error if the id is invalid or unknown.
+     * Refreshes the expiry of the game, and of the request's session if it sent a token.
+     *
+     * @param exchange HttpExchange object
+     * @return The requested game, or null if an error response was sent.
+     */
+    private GameManager findRequestedGame(HttpExchange exchange) throws IOException {
+        String token = exchange.getRequestHeaders().getFirst(SESSION_TOKEN_HEADER);
+        if (token != null) {
+            SessionTable.Session session = sessions.find(token);
+            if (session != null) expiryWheel.refresh(session.getExpiryTimer());
+        }
+        long gameId = getRequestedGameId(exchange);
+        if (gameId < 0) {
+            sendErrorResponse(400, "Invalid game id.", exchange);
+            return null;
+        }
+        GameManager gameManager = gameRegistry.getGame(gameId);
+        if (gameManager == null) {
+            sendErrorResponse(404, "Game not found.", exchange);
+            return null;
+        }
+        touchGame(gameId, gameManager);
+        return gameManager;
+    }
+
+    /**
+     * @return The game id passed in the query string, the default game id if none
+     *         was passed, or -1 if the passed id is not a valid number.
+     */
+    private long getRequestedGameId(HttpExchange exchange) {
+        String requestedGame = getQueryParameter(exchange, GAME_ID_PARAMETER);
+        if (requestedGame == null) return GameRegistry.DEFAULT_GAME_ID;
+        return parseGameId(requestedGame);
+    }
+
+    private long parseGameId(String gameId) {
+        try {
+            long id = Long.parseLong(gameId);
+            return (id < 0) ? -1 : id;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Finds the value of a parameter in the request's query string.
+     *
+     * @param exchange HttpExchange object
+     * @param name Parameter name
+     * @return The parameter value, or null if the parameter is absent.
+     */
+    private String getQueryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator == name.length() && parameter.startsWith(name)) {
+                return parameter.substring(separator + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the request header names BinaryProtocol's media type.
+     */
+    private boolean isBinaryRequest(HttpExchange exchange, String header) {
+        List<String> values = exchange.getRequestHeaders().get(header);
+        if (values == null) return false;
+        for (String value : values) {
+            if (value.contains(BinaryProtocol.MEDIA_TYPE)) return true;
+        }
+        return false;
+    }
+
+    private boolean gameIsFull(GameManager gameManager) {
+        return (gameManager.numberOfPlayers() >= GameManager.MAX_PLAYERS);
+    }
+
+    /**
+     * Replaces the default game, joined by clients that do not pass a game id.
+     */
     public void setGameManager(GameManager gameManager) {
-        this.gameManager = gameManager;
+        gameRegistry.setGame(GameRegistry.DEFAULT_GAME_ID, gameManager);
+    }
+
+    public GameRegistry getGameRegistry() {
+        return gameRegistry;
+    }
+
+    /**
+     * Sets how long the computer player may think about each move.
+     */
+    public void setComputerMoveMillis(long computerMoveMillis) {
+        this.computerMoveMillis = computerMoveMillis;
+    }
+
+    /**
+     * Sets the opening book the computer player takes its early moves from.
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Sets the memory for the computer player's transposition table. Takes effect when the server starts.
+     */
+    public void setComputerHashMegabytes(int computerHashMegabytes) {
+        this.computerHashMegabytes = computerHashMegabytes;
+    }
+
+    /**
+     * Restores the games saved in the journal's directory, then records every game change in the journal.
+     * Must be called before the server starts.
+     */
+    public void setJournal(MoveJournal journal) throws IOException {
+        long start = System.nanoTime();
+        int restored = SnapshotFile.recover(journal.getDirectory(), gameRegistry);
+        gameRegistry.forEachGame((gameId, gameManager) -> restoredGameIds.add(gameId));
+        LOG.info(String.format("Restored %d games in %dms.", restored,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        this.journal = journal;
+        gameRegistry.setJournal(journal);
+    }
+
+    /**
+     * Sets the time between snapshots of all games next to the journal. Takes effect when the server starts.
+     */
+    public void setSnapshotSeconds(long snapshotSeconds) {
+        this.snapshotSeconds = snapshotSeconds;
+    }
+
+    /**
+     * Sets how long a seated player may send no request before they are removed. Takes effect when they join.
+     */
+    public void setPlayerTimeoutSeconds(long playerTimeoutSeconds) {
+        this.playerTimeoutSeconds = playerTimeoutSeconds;
+    }
+
+    /**
+     * Sets how long a game may see no request before its players who joined by name only are removed.
+     */
+    public void setGameTimeoutSeconds(long gameTimeoutSeconds) {
+        this.gameTimeoutSeconds = gameTimeoutSeconds;
     }
 
     public void shutdown() {
         server.stop(0);
+        expiryWheel.shutdown();
+        pendingStateRequests.shutdown();
+        gameEventStreams.shutdown();
+        spectatorFeeds.shutdown();
+        searchPool.shutdownNow();
+        executor.shutdown();
+        if (journal != null) {
+            snapshotter.shutdownNow();
+            // A final snapshot saves the next start from replaying the journal.
+            writeSnapshot();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOG.error("Could not close the journal", e);
+            }
+        }
+    }
+
+    /**
+     * A game a player was just seated in. The game is kept along with its id, as the registry
+     * may already have dropped the game again once its players left.
+     */
+    private static final class JoinedGame {
+        final long gameId;
+        final GameManager gameManager;
+
+        JoinedGame(long gameId, GameManager gameManager) {
+            this.gameId = gameId;
+            this.gameManager = gameManager;
+        }
     }
 }
@@ -0,0 +1,92 @@
+package Server.networking;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds how long a write to a client's connection may block.
+ *
+ * The HttpServer writes response bodies to blocking socket channels, and closing the exchange
+ * from another thread would block on the same stream. A channel is closed by interrupting the
+ * thread blocked on it, though, so a write still running after the timeout is interrupted: it
+ * fails with an IOException, and the writing thread is free for the other clients again.
+ */
+class WriteWatchdog {
+
+    private final long timeoutNanos;
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param scheduler Checks the running writes a few times per timeout.
+     * @param timeoutMillis How long a write may run before it is interrupted.
+     */
+    WriteWatchdog(ScheduledExecutorService scheduler, long timeoutMillis) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long period = Math.max(1, timeoutMillis / 4);
+        scheduler.scheduleAtFixedRate(this::interruptOverdueWrites, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts watching the writes the current thread makes until the returned watch is ended.
+     */
+    Watch start() {
+        Watch watch = new Watch(Thread.currentThread(), System.nanoTime());
+        watches.add(watch);
+        return watch;
+    }
+
+    private void interruptOverdueWrites() {
+        long now = System.nanoTime();
+        for (Watch watch : watches) {
+            watch.interruptIfOverdue(now);
+        }
+    }
+
+    /**
+     * Writes by one thread, from start() until end().
+     */
+    final class Watch {
+        private final Thread writer;
+        // All guarded by the watch, so the writer is only ever interrupted during the write that is late.
+        private long startNanos;
+        private boolean ended;
+        private boolean interrupted;
+
+        private Watch(Thread writer, long startNanos) {
+            this.writer = writer;
+            this.startNanos = startNanos;
+        }
+
+        private synchronized void interruptIfOverdue(long now) {
+            if (ended || interrupted || now - startNanos <= timeoutNanos) return;
+            interrupted = true;
+            writer.interrupt();
+        }
+
+        /**
+         * Starts the timeout again, for a write to the next client. Must be called by the writing thread.
+         */
+        synchronized void restart() {
+            startNanos = System.nanoTime();
+            // An interrupt that came as the last write finished must not fail the next one.
+            if (interrupted) {
+                interrupted = false;
+                Thread.interrupted();
+            }
+        }
+
+        /**
+         * Stops watching. Must be called by the writing thread, which it clears of an interrupt
+         * the watchdog made, so the thread can go on to write for other clients.
+         */
+        void end() {
+            synchronized (this) {
+                ended = true;
+                if (interrupted) Thread.interrupted();
+            }
+            watches.remove(this);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import Server.BoardGrid;
+import Server.ai.AlphaBetaSearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+public class AlphaBetaSearchTest {
+
+    private ForkJoinPool pool;
+    private AlphaBetaSearch search;
+    private BoardGrid board;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(4);
+        search = new AlphaBetaSearch(pool);
+        // Four x's stacked in column 3, with o's spread over the neighbouring columns.
+        board = new BoardGrid(null);
+        for (int i = 0; i < 4; i++) {
+            board.makeMove(3, 0);
+            board.makeMove(5 + i % 2, 1);
+        }
+    }
+
+    @Test
+    @DisplayName("The search completes five in a row when it can.")
+    void takesWinningMove() {
+        assertEquals(3, search.findBestMove(board, 0, 200));
+    }
+
+    @Test
+    @DisplayName("The search blocks the opponent's five in a row.")
+    void blocksOpponentsWin() {
+        assertEquals(3, search.findBestMove(board, 1, 200));
+    }
+
+    @Test
+    @DisplayName("The searched board is left untouched.")
+    void leavesBoardUnchanged() {
+        String before = describe(board);
+        search.findBestMove(board, 1, 100);
+        assertEquals(before, describe(board));
+        assertEquals(1, board.countOpenWindows(0, 4));
+    }
+
+    // Analysis boards are not rendered, so spell out the discs.
+    private static String describe(BoardGrid board) {
+        StringBuilder discs = new StringBuilder();
+        for (int row = 0; row < board.getRows(); row++) {
+            for (int col = 0; col < board.getColumns(); col++) {
+                discs.append(board.getValueAtPosition(row, col)).append(' ');
+            }
+        }
+        return discs.toString();
+    }
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+}
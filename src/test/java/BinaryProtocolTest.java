@@ -0,0 +1,58 @@
+import Protocol.BinaryGameState;
+import Protocol.BinaryProtocol;
+import Server.BoardGeometry;
+import Server.BoardGrid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class BinaryProtocolTest {
+
+    @Test
+    @DisplayName("An encoded state decodes to the same turn, winner, flags and board.")
+    void stateRoundTrip() {
+        BoardGrid board = new BoardGrid(null);
+        board.makeMove(0, 0);
+        board.makeMove(0, 1);
+        board.makeMove(8, 0);
+
+        byte[] encoded = BinaryProtocol.encodeState(300, 6, 9, 5, false, "first", "", board.getPackedBytes());
+        BinaryGameState state = BinaryProtocol.decodeState(encoded);
+
+        assertTrue(encoded.length < 40);
+        assertEquals(300, state.getStateVersion());
+        assertEquals(9, state.getColumns());
+        assertEquals(5, state.getWinLength());
+        assertEquals("first", state.getPlayerTurn());
+        assertEquals("", state.getWinner());
+        assertEquals(board.getGridAsText(), state.renderText());
+    }
+
+    @Test
+    @DisplayName("Packed boards of large geometries keep every disc in its cell.")
+    void largeBoard() {
+        BoardGrid board = new BoardGrid(null, BoardGeometry.of(40, 40, 5));
+        for (int col = 0; col < 40; col += 3) {
+            board.makeMove(col, col % 2);
+            board.makeMove(col, 1 - col % 2);
+        }
+        byte[] encoded = BinaryProtocol.encodeState(1, 40, 40, 5, true, "", "winner", board.getPackedBytes());
+        BinaryGameState state = BinaryProtocol.decodeState(encoded);
+        assertTrue(state.isWaiting());
+        assertEquals("winner", state.getWinner());
+        assertEquals(board.getGridAsText(), state.renderText());
+    }
+
+    @Test
+    @DisplayName("Moves are single bytes, and anything else is rejected.")
+    void moves() {
+        assertEquals(7, BinaryProtocol.decodeMove(BinaryProtocol.encodeMove(7)));
+        assertEquals(99, BinaryProtocol.decodeMove(BinaryProtocol.encodeMove(99)));
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeMove(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeState(new byte[] {1, 5}));
+    }
+}
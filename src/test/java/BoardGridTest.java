@@ -1,7 +1,15 @@
+import Server.BoardGeometry;
+import Server.BoardImage;
 import Server.BoardGrid;
 import Server.GameManager;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -107,4 +115,152 @@ public class BoardGridTest {
         //then
         verify(mockGameManager).setWinner(playerID);
     }
+
+    @Test
+    @DisplayName("getGridAsText renders x and o from the bottom row upward.")
+    void renderGridAsText() {
+        boardGrid.makeMove(0, 0);
+        boardGrid.makeMove(0, 1);
+        boardGrid.makeMove(8, 0);
+        String emptyRow = "[ ][ ][ ][ ][ ][ ][ ][ ][ ]\n";
+        String expected = emptyRow + emptyRow + emptyRow + emptyRow
+                + "[o][ ][ ][ ][ ][ ][ ][ ][ ]\n"
+                + "[x][ ][ ][ ][ ][ ][ ][ ][x]\n";
+        assertEquals(expected, boardGrid.getGridAsText());
+        assertEquals(-1, boardGrid.getValueAtPosition(3, 0));
+    }
+
+    @Test
+    @DisplayName("countOpenWindows tracks fours and closes windows blocked by the opponent.")
+    void countOpenWindows() {
+        // four x's along the bottom row, columns 1 to 4
+        for (int col = 1; col < 5; col++) {
+            boardGrid.makeMove(col, 0);
+        }
+        // windows 0-4 and 1-5 on the bottom row each hold four x's
+        assertEquals(2, boardGrid.countOpenWindows(0, 4));
+        // o blocks column 5, closing the window 1-5
+        boardGrid.makeMove(5, 1);
+        assertEquals(1, boardGrid.countOpenWindows(0, 4));
+        assertEquals(0, boardGrid.countOpenWindows(1, 4));
+    }
+
+    @Test
+    @DisplayName("getGridAsBytes reuses the rendered board until it changes.")
+    void cachedGridBytes() {
+        byte[] emptyGrid = boardGrid.getGridAsBytes();
+        assertSame(emptyGrid, boardGrid.getGridAsBytes());
+
+        boardGrid.makeMove(4, 1);
+        byte[] oneDisc = boardGrid.getGridAsBytes();
+        assertNotSame(emptyGrid, oneDisc);
+        assertEquals(boardGrid.getGridAsText(), new String(oneDisc));
+
+        boardGrid.initializeMatrix();
+        assertArrayEquals(emptyGrid, boardGrid.getGridAsBytes());
+    }
+
+    @Test
+    @DisplayName("undoMove takes the top disc back out, including its windows and rendering.")
+    void undoMove() {
+        boardGrid.makeMove(4, 0);
+        String oneDisc = boardGrid.getGridAsText();
+        boardGrid.makeMove(4, 1);
+        // when
+        boardGrid.undoMove(4);
+        // then
+        assertEquals(-1, boardGrid.getValueAtPosition(4, 4));
+        assertEquals(0, boardGrid.getValueAtPosition(5, 4));
+        assertEquals(oneDisc, boardGrid.getGridAsText());
+        assertEquals(0, boardGrid.countOpenWindows(1, 1));
+        assertFalse(boardGrid.isColumnFull(4));
+    }
+
+    @Test
+    @DisplayName("Mirror-image positions share a canonical hash, and undoMove restores the hash.")
+    void zobristHashes() {
+        BoardGrid mirror = new BoardGrid(mockGameManager);
+        boardGrid.makeMove(1, 0);
+        boardGrid.makeMove(2, 1);
+        mirror.makeMove(7, 0);
+        mirror.makeMove(6, 1);
+        assertEquals(boardGrid.getCanonicalHash(), mirror.getCanonicalHash());
+        assertEquals(boardGrid.getHash(), mirror.getMirrorHash());
+
+        long beforeMove = boardGrid.getHash();
+        boardGrid.makeMove(4, 0);
+        boardGrid.undoMove(4);
+        assertEquals(beforeMove, boardGrid.getHash());
+    }
+
+    @Test
+    @DisplayName("A 19x19 board with six to win finds a diagonal line and renders all its columns.")
+    void largeBoardWin() {
+        BoardGrid large = new BoardGrid(mockGameManager, BoardGeometry.of(19, 19, 6));
+        // Stairs of o's under a descending line of x's from column 18 to 13.
+        for (int col = 17; col > 12; col--) {
+            for (int i = 0; i < 18 - col; i++) {
+                large.makeMove(col, 1);
+            }
+        }
+        for (int col = 18; col > 13; col--) {
+            large.makeMove(col, 0);
+        }
+        assertFalse(large.hasWon(0));
+        large.makeMove(13, 0);
+        assertTrue(large.hasWon(0));
+        verify(mockGameManager).setWinner(0);
+        assertEquals(19 * (19 * 3 + 1), large.getGridAsBytes().length);
+    }
+
+    @Test
+    @DisplayName("A sparse 100x100 board plays and takes back moves like a dense one.")
+    void sparseBoardUndo() {
+        BoardGrid huge = new BoardGrid(null, BoardGeometry.of(100, 100, 5));
+        long emptyHash = huge.getHash();
+        for (int col = 40; col < 44; col++) {
+            huge.makeMove(col, 0);
+        }
+        assertEquals(2, huge.countOpenWindows(0, 4));
+        assertEquals(0, huge.getValueAtPosition(99, 42));
+        huge.makeMove(44, 0);
+        assertTrue(huge.hasWon(0));
+
+        for (int col = 44; col >= 40; col--) {
+            huge.undoMove(col);
+        }
+        assertFalse(huge.hasWon(0));
+        assertEquals(0, huge.getDiscCount());
+        assertEquals(emptyHash, huge.getHash());
+        assertEquals(BoardGeometry.of(100, 100, 5).getWindowCount(), huge.countOpenWindows(0, 0));
+    }
+
+    @Test
+    @DisplayName("A large game board's image renders its discs of the moment, unaffected by later moves.")
+    void largeBoardImage() {
+        BoardGrid huge = new BoardGrid(mockGameManager, BoardGeometry.of(100, 100, 5));
+        huge.makeMove(3, 0);
+        huge.makeMove(3, 1);
+        huge.makeMove(97, 1);
+        BoardImage image = huge.getImage();
+        BoardGrid expected = huge.copy();
+        huge.makeMove(50, 0);
+        huge.undoMove(3);
+
+        assertArrayEquals(expected.getGridAsBytes(), image.getText());
+        assertArrayEquals(expected.getPackedBytes(), image.getPacked());
+        assertArrayEquals(huge.copy().getPackedBytes(), huge.getImage().getPacked());
+    }
+
+    @Test
+    @DisplayName("An analysis board reports wins through hasWon without telling the game.")
+    void analysisBoardWin() {
+        BoardGrid analysis = boardGrid.copy();
+        for (int i = 0; i < 5; i++) {
+            analysis.makeMove(2, 1);
+        }
+        assertTrue(analysis.hasWon(1));
+        assertFalse(boardGrid.hasWon(1));
+        verify(mockGameManager, never()).setWinner(1);
+    }
 }
@@ -0,0 +1,41 @@
+import Protocol.CommandBatch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class CommandBatchTest {
+
+    @Test
+    @DisplayName("A batch parses back into its commands, in order.")
+    void batchRoundTrip() {
+        CommandBatch batch = new CommandBatch()
+                .join(CommandBatch.NEW_GAME, "first", "vs=server")
+                .move(CommandBatch.LAST_JOINED_GAME, 4)
+                .state("7")
+                .quit("7", "first");
+
+        List<String[]> commands = CommandBatch.parse(new String(batch.toBytes(), StandardCharsets.UTF_8));
+
+        assertEquals(4, commands.size());
+        assertArrayEquals(new String[] {"join", "new", "first", "vs=server"}, commands.get(0));
+        assertArrayEquals(new String[] {"move", "@", "4"}, commands.get(1));
+        assertArrayEquals(new String[] {"state", "7"}, commands.get(2));
+        assertArrayEquals(new String[] {"quit", "7", "first"}, commands.get(3));
+    }
+
+    @Test
+    @DisplayName("Fields that would break the line format are rejected.")
+    void rejectsSeparatorsInFields() {
+        CommandBatch batch = new CommandBatch();
+        assertThrows(IllegalArgumentException.class, () -> batch.join("new", "first\tsecond"));
+        assertThrows(IllegalArgumentException.class, () -> batch.quit("1", "first\nstate\t1"));
+        assertEquals(0, batch.size());
+    }
+}
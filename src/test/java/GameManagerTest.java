@@ -1,7 +1,16 @@
+import Server.BoardGeometry;
 import Server.BoardGrid;
+import Server.GameCounters;
+import Server.GameEvent;
 import Server.GameManager;
+import Server.GameRegistry;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.verify;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -11,6 +20,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 // Allows us to mock classes
 @ExtendWith(MockitoExtension.class)
 public class GameManagerTest {
@@ -48,6 +63,162 @@ public class GameManagerTest {
         assertEquals(fakeName2, gameManager.getPlayerTurn());
     }
 
+    @Test
+    @DisplayName("handlePlayerMove publishes a move and the next turn in one change.")
+    void publishesMoveEvents() {
+        List<GameEvent> received = new ArrayList<>();
+        gameManager.addGameEventListener((game, events) -> received.addAll(events));
+        doReturn(5).when(mockBoardGrid).makeMove(3, 0);
+        // when
+        gameManager.handlePlayerMove(3);
+        // then
+        assertEquals(2, received.size());
+        assertEquals(GameEvent.Type.MOVE, received.get(0).getType());
+        assertEquals(5, received.get(0).getRow());
+        assertEquals(fakeName2, received.get(1).getPlayerName());
+        assertEquals(gameManager.getStateVersion(), received.get(1).getStateVersion());
+    }
+
+    @Test
+    @DisplayName("Concurrent joins never seat more than two players.")
+    void concurrentJoinsNeverOverfill() throws Exception {
+        GameManager game = new GameManager();
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+        List<Future<Boolean>> joins = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            String name = "Player " + i;
+            joins.add(threads.submit(() -> game.addPlayer(name)));
+        }
+        int joined = 0;
+        for (Future<Boolean> join : joins) {
+            if (join.get()) joined++;
+        }
+        threads.shutdown();
+
+        assertEquals(2, joined);
+        assertEquals(2, game.numberOfPlayers());
+        assertEquals(2, game.getStateVersion());
+    }
+
+    @Test
+    @DisplayName("Placed discs and wins are added to the game's counters.")
+    void countsMovesAndWins() {
+        GameCounters counters = new GameCounters();
+        GameManager game = new GameManager(BoardGeometry.STANDARD, counters);
+        game.addPlayer(fakeName1);
+        game.addPlayer(fakeName2);
+        // The first player stacks five discs in the first column.
+        for (int move = 0; move < 9; move++) {
+            game.handlePlayerMove(move % 2);
+        }
+
+        assertEquals(9, counters.getMoves());
+        assertEquals(1, counters.getWins());
+        assertEquals(fakeName1, game.getWinner());
+    }
+
+    @Test
+    @DisplayName("Concurrent moves are all applied and published in order.")
+    void concurrentMovesAreNotLost() throws Exception {
+        int threadCount = 8;
+        int movesPerThread = BoardGeometry.MAX_SIZE;
+        // Each thread fills a column of its own, so every move places a disc.
+        GameManager game = new GameManager(BoardGeometry.of(movesPerThread, threadCount, 5));
+        game.addPlayer(fakeName1);
+        game.addPlayer(fakeName2);
+        // Only ever called by the single writer, so a plain list is enough.
+        List<Long> versions = new ArrayList<>();
+        game.addGameEventListener((g, events) -> versions.add(events.get(0).getStateVersion()));
+
+        ExecutorService threads = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int column = t;
+            workers.add(threads.submit(() -> {
+                for (int i = 0; i < movesPerThread; i++) {
+                    game.handlePlayerMove(column);
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        threads.shutdown();
+
+        int moves = threadCount * movesPerThread;
+        assertEquals(2 + moves, game.getStateVersion());
+        assertEquals(moves, versions.size());
+        for (int i = 0; i < moves; i++) {
+            assertEquals(3L + i, (long) versions.get(i));
+        }
+        // Every move switches the turn, and the number of moves is even.
+        assertEquals(fakeName1, game.getPlayerTurn());
+    }
+
+    @Test
+    @DisplayName("Players with a session id can only move on their own turn and only quit their own seat.")
+    void sessionPlayersAreMatchedById() {
+        GameManager game = new GameManager();
+        game.addPlayer(7, fakeName1);
+        game.addPlayer(9, fakeName2);
+
+        assertEquals(GameManager.MoveResult.NOT_YOUR_TURN, game.handlePlayerMove(9, 0));
+        assertEquals(GameManager.MoveResult.NOT_YOUR_TURN, game.handlePlayerMove(GameManager.NO_PLAYER_ID, 0));
+        assertEquals(2, game.getStateVersion());
+        assertEquals(GameManager.MoveResult.MADE, game.handlePlayerMove(7, 0));
+        assertEquals(fakeName2, game.getPlayerTurn());
+
+        game.removePlayer(fakeName1);
+        assertEquals(2, game.numberOfPlayers());
+        assertFalse(game.removePlayer(8));
+        assertTrue(game.removePlayer(7));
+        assertEquals(List.of(fakeName2), game.getPlayerNames());
+    }
+
+    @Test
+    @DisplayName("A move into a full or missing column changes nothing, so the turn stays.")
+    void moveIntoFullColumnIsRefused() {
+        GameManager game = new GameManager();
+        game.addPlayer(7, fakeName1);
+        game.addPlayer(9, fakeName2);
+        for (int move = 0; move < 6; move++) {
+            game.handlePlayerMove(move % 2 == 0 ? 7 : 9, 0);
+        }
+        long version = game.getStateVersion();
+
+        assertEquals(GameManager.MoveResult.INVALID_COLUMN, game.handlePlayerMove(7, 0));
+        assertEquals(GameManager.MoveResult.INVALID_COLUMN, game.handlePlayerMove(7, 9));
+        assertFalse(game.handlePlayerMove(9));
+        assertEquals(version, game.getStateVersion());
+        assertEquals(fakeName1, game.getPlayerTurn());
+        assertEquals(GameManager.MoveResult.MADE, game.handlePlayerMove(7, 1));
+    }
+
+    @Test
+    @DisplayName("A move made from an older state version is dropped.")
+    void moveFromOlderVersionIsDropped() {
+        GameManager game = new GameManager();
+        game.addPlayer(fakeName1);
+        game.addPlayer(fakeName2);
+        long version = game.getStateVersion();
+        game.handlePlayerMove(0);
+
+        assertFalse(game.handlePlayerMove(GameManager.NO_PLAYER_ID, 1, version));
+        assertEquals(version + 1, game.getStateVersion());
+        assertTrue(game.handlePlayerMove(GameManager.NO_PLAYER_ID, 1, version + 1));
+        assertEquals(fakeName1, game.getPlayerTurn());
+    }
+
+    @Test
+    @DisplayName("getPlayersWithoutSession lists only the players who joined by name.")
+    void playersWithoutSession() {
+        GameManager game = new GameManager();
+        game.addPlayer(7, fakeName1);
+        game.addPlayer(fakeName2);
+
+        assertEquals(List.of(fakeName2), game.getPlayersWithoutSession());
+    }
+
     @Test
     @DisplayName("removePlayer calls grid.initialiseMatrix and set playerTurn to 0")
     void checkRemovePlayer() {
@@ -58,4 +229,26 @@ public class GameManagerTest {
         verify(mockBoardGrid).initializeMatrix();
         assertEquals(fakeName1, gameManager.getPlayerTurn());
     }
+
+    @Test
+    @DisplayName("A game is only removed while empty, and a closed game is replaced by a new one.")
+    void removedGameIsClosedToJoins() {
+        GameRegistry registry = new GameRegistry();
+        long gameId = registry.createGame();
+        GameManager game = registry.getGame(gameId);
+        game.addPlayer(fakeName1);
+
+        assertFalse(registry.removeGame(gameId, game));
+        assertSame(game, registry.getGame(gameId));
+
+        game.removePlayer(fakeName1);
+        assertTrue(game.close());
+        assertFalse(game.addPlayer(fakeName2));
+        GameManager successor = registry.getOrCreateGame(gameId);
+        assertNotSame(game, successor);
+        assertTrue(successor.addPlayer(fakeName2));
+        // A late removal of the old game leaves its successor alone.
+        assertTrue(registry.removeGame(gameId, game));
+        assertSame(successor, registry.getGame(gameId));
+    }
 }
@@ -0,0 +1,30 @@
+import Server.networking.WebServer;
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LoggingConfigurationTest {
+
+    @Test
+    @DisplayName("The shipped configuration logs through a non-blocking AsyncAppender.")
+    void logsAsynchronously() {
+        AsyncAppender appender = (AsyncAppender) Logger.getRootLogger().getAppender("async");
+
+        assertFalse(appender.getBlocking());
+        assertTrue(appender.getBufferSize() > 0);
+    }
+
+    @Test
+    @DisplayName("Per-request logging is off unless the server loggers are set to debug.")
+    void requestLoggingIsOffByDefault() {
+        Logger serverLogger = Logger.getLogger(WebServer.class);
+
+        assertFalse(serverLogger.isDebugEnabled());
+        assertTrue(serverLogger.isInfoEnabled());
+    }
+}
@@ -0,0 +1,51 @@
+import Server.GameRegistry;
+import Server.MatchmakingLobby;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class MatchmakingLobbyTest {
+
+    @Test
+    @DisplayName("Players of the same skill bucket are paired into a fresh game, the earlier one first.")
+    void pairsWithinSkillBuckets() {
+        GameRegistry registry = new GameRegistry();
+        MatchmakingLobby lobby = new MatchmakingLobby(registry);
+
+        MatchmakingLobby.Ticket novice = lobby.enter("novice", 100);
+        MatchmakingLobby.Ticket expert = lobby.enter("expert", 1500);
+        assertFalse(novice.getMatch().isDone());
+        assertFalse(expert.getMatch().isDone());
+        assertEquals(2, lobby.numberOfWaitingPlayers());
+
+        MatchmakingLobby.Ticket beginner = lobby.enter("beginner", 150);
+        long gameId = beginner.getMatch().join();
+        assertEquals(gameId, (long) novice.getMatch().join());
+        assertEquals(List.of("novice", "beginner"), registry.getGame(gameId).getPlayerNames());
+        assertFalse(expert.getMatch().isDone());
+    }
+
+    @Test
+    @DisplayName("A player who leaves the lobby is never paired afterwards.")
+    void leaveBeforePairing() {
+        GameRegistry registry = new GameRegistry();
+        MatchmakingLobby lobby = new MatchmakingLobby(registry);
+
+        MatchmakingLobby.Ticket impatient = lobby.enter("impatient", MatchmakingLobby.UNRATED);
+        assertTrue(lobby.leave(impatient));
+        assertEquals(MatchmakingLobby.NO_MATCH, (long) impatient.getMatch().join());
+
+        MatchmakingLobby.Ticket late = lobby.enter("late", MatchmakingLobby.UNRATED);
+        assertFalse(late.getMatch().isDone());
+        MatchmakingLobby.Ticket later = lobby.enter("later", MatchmakingLobby.UNRATED);
+        assertFalse(lobby.leave(late));
+        assertEquals(later.getMatch().join(), late.getMatch().join());
+        assertEquals(2, registry.numberOfGames());
+    }
+}
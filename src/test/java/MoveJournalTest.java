@@ -0,0 +1,87 @@
+import Server.BoardGeometry;
+import Server.GameRegistry;
+import Server.GameManager;
+import Server.journal.JournalRecord;
+import Server.journal.MoveJournal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MoveJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Records survive rolling segments and reopening, long names included.")
+    void rollAndReopen() throws IOException {
+        String longName = "player-with-a-name-longer-than-one-record-can-hold";
+        // Room for nine records per segment.
+        MoveJournal journal = MoveJournal.open(tempDir, 10 * MoveJournal.RECORD_SIZE, 5);
+        journal.appendJoin(3, 1, longName);
+        for (int move = 0; move < 20; move++) {
+            journal.appendMove(3, move + 2, move % 9);
+        }
+        journal.close();
+        journal = MoveJournal.open(tempDir, 10 * MoveJournal.RECORD_SIZE, 5);
+        journal.appendQuit(3, 22, longName);
+        journal.close();
+
+        List<JournalRecord> records = new ArrayList<>();
+        MoveJournal.read(tempDir, records::add);
+
+        assertEquals(22, records.size());
+        assertEquals(JournalRecord.Type.JOIN, records.get(0).getType());
+        assertEquals(longName, records.get(0).getPlayerName());
+        assertEquals(4, records.get(5).getColumn());
+        assertEquals(6, records.get(5).getStateVersion());
+        assertEquals(JournalRecord.Type.QUIT, records.get(21).getType());
+        assertEquals(longName, records.get(21).getPlayerName());
+        try (Stream<Path> segments = Files.list(tempDir)) {
+            assertEquals(3, segments.count());
+        }
+    }
+
+    @Test
+    @DisplayName("Games of a registry journal their creation, joins, moves, wins and quits.")
+    void journalsGameChanges() throws IOException {
+        GameRegistry registry = new GameRegistry();
+        MoveJournal journal = MoveJournal.open(tempDir);
+        registry.setJournal(journal);
+        long gameId = registry.createGame(BoardGeometry.of(5, 5, 4));
+        GameManager game = registry.getGame(gameId);
+        game.addPlayer("first");
+        game.addPlayer("second");
+        for (int move = 0; move < 7; move++) {
+            game.handlePlayerMove(move % 2);
+        }
+        game.removePlayer("second");
+        journal.close();
+
+        List<JournalRecord.Type> types = new ArrayList<>();
+        List<JournalRecord> records = new ArrayList<>();
+        MoveJournal.read(tempDir, record -> {
+            types.add(record.getType());
+            records.add(record);
+        });
+
+        assertEquals(List.of(JournalRecord.Type.CREATE, JournalRecord.Type.JOIN, JournalRecord.Type.JOIN,
+                JournalRecord.Type.MOVE, JournalRecord.Type.MOVE, JournalRecord.Type.MOVE, JournalRecord.Type.MOVE,
+                JournalRecord.Type.MOVE, JournalRecord.Type.MOVE, JournalRecord.Type.MOVE, JournalRecord.Type.WIN,
+                JournalRecord.Type.QUIT), types);
+        assertEquals(5, records.get(0).getRows());
+        assertEquals(4, records.get(0).getWinLength());
+        assertEquals("first", records.get(10).getPlayerName());
+        assertEquals(records.get(9).getStateVersion(), records.get(10).getStateVersion());
+    }
+}
@@ -0,0 +1,47 @@
+import Server.BoardGrid;
+import Server.ai.OpeningBook;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OpeningBookTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("A written book finds its positions, their mirror images, and nothing else.")
+    void writeAndLookup() throws IOException {
+        BoardGrid empty = new BoardGrid(null);
+        BoardGrid position = new BoardGrid(null);
+        position.makeMove(1, 1);
+        BoardGrid mirrored = new BoardGrid(null);
+        mirrored.makeMove(mirrored.getColumns() - 2, 1);
+        BoardGrid unknown = new BoardGrid(null);
+        unknown.makeMove(4, 1);
+
+        int move = 2;
+        int canonicalMove = position.isCanonicalMirrored() ? position.getColumns() - 1 - move : move;
+        Map<Long, Integer> moves = new HashMap<>();
+        moves.put(empty.getCanonicalHash(), 4);
+        moves.put(position.getCanonicalHash(), canonicalMove);
+
+        Path file = tempDir.resolve("book.bin");
+        OpeningBook.write(file, empty.getGeometry(), moves);
+        OpeningBook book = OpeningBook.open(file);
+
+        assertEquals(2, book.size());
+        assertEquals(4, book.lookup(empty));
+        assertEquals(move, book.lookup(position));
+        assertEquals(mirrored.getColumns() - 1 - move, book.lookup(mirrored));
+        assertEquals(-1, book.lookup(unknown));
+    }
+}
@@ -0,0 +1,60 @@
+import Server.SessionTable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SessionTableTest {
+
+    @Test
+    @DisplayName("A token resolves to its session until the session is closed, even once its id is reused.")
+    void tokensResolveToOpenSessions() {
+        SessionTable sessions = new SessionTable();
+        SessionTable.Session first = sessions.open("first");
+        SessionTable.Session second = sessions.open("second");
+        assertNotEquals(first.getPlayerId(), second.getPlayerId());
+        assertSame(first, sessions.find(first.getToken()));
+        assertSame(second, sessions.find(second.getToken()));
+        assertEquals(2, sessions.numberOfSessions());
+
+        sessions.close(first);
+        assertFalse(sessions.close(first));
+        assertNull(sessions.find(first.getToken()));
+        sessions.release(first);
+        SessionTable.Session third = sessions.open("third");
+        assertEquals(first.getPlayerId(), third.getPlayerId());
+        assertNull(sessions.find(first.getToken()));
+        assertSame(third, sessions.find(third.getToken()));
+    }
+
+    @Test
+    @DisplayName("A closed session's player id is only handed out again once it is released.")
+    void closedIdsWaitForRelease() {
+        SessionTable sessions = new SessionTable();
+        SessionTable.Session first = sessions.open("first");
+        sessions.close(first);
+
+        SessionTable.Session second = sessions.open("second");
+        assertNotEquals(first.getPlayerId(), second.getPlayerId());
+        sessions.release(first);
+        assertEquals(first.getPlayerId(), sessions.open("third").getPlayerId());
+    }
+
+    @Test
+    @DisplayName("Malformed and unknown tokens resolve to no session.")
+    void unknownTokens() {
+        SessionTable sessions = new SessionTable();
+        sessions.open("first");
+        assertNull(sessions.find(null));
+        assertNull(sessions.find(""));
+        assertNull(sessions.find("not a token"));
+        assertNull(sessions.find("00000000000000000"));
+        assertNull(sessions.find("0000000000000000"));
+        assertNull(sessions.find("0000000100fff000"));
+    }
+}
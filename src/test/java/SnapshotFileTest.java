@@ -0,0 +1,80 @@
+import Server.BoardGeometry;
+import Server.GameManager;
+import Server.GameRegistry;
+import Server.GameSnapshot;
+import Server.journal.MoveJournal;
+import Server.journal.SnapshotFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SnapshotFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Games are restored from a snapshot plus the journal records appended after it.")
+    void recoverFromSnapshotAndJournal() throws IOException {
+        GameRegistry registry = new GameRegistry();
+        MoveJournal journal = MoveJournal.open(tempDir);
+        registry.setJournal(journal);
+        long wonGame = registry.createGame(BoardGeometry.of(5, 5, 4));
+        GameManager won = registry.getGame(wonGame);
+        won.addPlayer("first");
+        won.addPlayer("second");
+        won.handlePlayerMove(0);
+        won.handlePlayerMove(1);
+        long playingGame = registry.createGame();
+        GameManager playing = registry.getGame(playingGame);
+        playing.addPlayer("third");
+        playing.addPlayer(GameManager.COMPUTER_PLAYER_ID, "fourth");
+        playing.handlePlayerMove(4);
+
+        assertEquals(3, SnapshotFile.write(registry, journal));
+        for (int move = 0; move < 5; move++) {
+            won.handlePlayerMove(move % 2);
+        }
+        long emptiedGame = registry.createGame();
+        registry.getGame(emptiedGame).addPlayer("fifth");
+        registry.getGame(emptiedGame).removePlayer("fifth");
+        long joinedGame = registry.createGame();
+        registry.getGame(joinedGame).addPlayer("Computer");
+        registry.getGame(joinedGame).addPlayer(GameManager.COMPUTER_PLAYER_ID, "sixth");
+        journal.close();
+
+        GameRegistry restored = new GameRegistry();
+        assertEquals(4, SnapshotFile.recover(tempDir, restored));
+
+        assertSameState(won.getSnapshot(), restored.getGame(wonGame).getSnapshot());
+        assertEquals("first", restored.getGame(wonGame).getWinner());
+        assertSameState(playing.getSnapshot(), restored.getGame(playingGame).getSnapshot());
+        assertEquals("fourth", restored.getGame(playingGame).getPlayerTurn());
+        assertEquals(1, restored.getGame(playingGame).getSnapshot().getComputerSeat());
+        assertNull(restored.getGame(emptiedGame));
+        assertEquals(List.of("Computer", "sixth"), restored.getGame(joinedGame).getPlayerNames());
+        assertEquals(1, restored.getGame(joinedGame).getSnapshot().getComputerSeat());
+        assertEquals(-1, restored.getGame(wonGame).getSnapshot().getComputerSeat());
+        assertEquals(joinedGame + 1, restored.createGame());
+        assertEquals(0, restored.getCounters().getMoves());
+        assertEquals(0, restored.getCounters().getWins());
+    }
+
+    private static void assertSameState(GameSnapshot expected, GameSnapshot actual) {
+        assertEquals(expected.getStateVersion(), actual.getStateVersion());
+        assertEquals(expected.getPlayers(), actual.getPlayers());
+        assertEquals(expected.getPlayerTurn(), actual.getPlayerTurn());
+        assertEquals(expected.getWinner(), actual.getWinner());
+        assertEquals(expected.getGeometry().getRows(), actual.getGeometry().getRows());
+        assertArrayEquals(expected.getPackedBoard(), actual.getPackedBoard());
+    }
+}
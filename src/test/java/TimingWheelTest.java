@@ -0,0 +1,88 @@
+import Server.TimingWheel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TimingWheelTest {
+
+    private static final long TICK_MILLIS = 10;
+
+    private TimingWheel wheel;
+    private AtomicInteger expiries;
+    private TimingWheel.Timer timer;
+
+    @BeforeEach
+    void setUp() {
+        // Expired actions run on the ticking thread, and the test turns the wheel itself.
+        wheel = new TimingWheel(TICK_MILLIS, Runnable::run);
+        expiries = new AtomicInteger();
+        timer = new TimingWheel.Timer(expiries::incrementAndGet);
+    }
+
+    @Test
+    @DisplayName("A timer expires once, at the tick of its timeout.")
+    void expiresAfterTimeout() {
+        wheel.schedule(timer, 5 * TICK_MILLIS);
+        advance(4);
+        assertEquals(0, expiries.get());
+        advance(1);
+        assertEquals(1, expiries.get());
+        assertFalse(timer.isScheduled());
+        assertEquals(0, wheel.numberOfTimers());
+        advance(100);
+        assertEquals(1, expiries.get());
+    }
+
+    @Test
+    @DisplayName("Refreshing a timer counts its timeout again from the refresh.")
+    void refreshPostponesExpiry() {
+        wheel.schedule(timer, 5 * TICK_MILLIS);
+        advance(3);
+        assertTrue(wheel.refresh(timer));
+        advance(4);
+        assertEquals(0, expiries.get());
+        advance(1);
+        assertEquals(1, expiries.get());
+        assertFalse(wheel.refresh(timer));
+    }
+
+    @Test
+    @DisplayName("A cancelled timer never expires.")
+    void cancelledTimerDoesNotExpire() {
+        wheel.schedule(timer, 5 * TICK_MILLIS);
+        wheel.cancel(timer);
+        advance(10);
+        assertEquals(0, expiries.get());
+        assertEquals(0, wheel.numberOfTimers());
+    }
+
+    @Test
+    @DisplayName("Timeouts beyond the lowest level expire on time after moving down the levels.")
+    void longTimeoutsExpireOnTime() {
+        TimingWheel.Timer longer = new TimingWheel.Timer(expiries::incrementAndGet);
+        wheel.schedule(timer, 5000 * TICK_MILLIS);
+        advance(100);
+        wheel.schedule(longer, 300000 * TICK_MILLIS);
+        advance(4899);
+        assertEquals(0, expiries.get());
+        advance(1);
+        assertEquals(1, expiries.get());
+        advance(300100 - 5000 - 1);
+        assertEquals(1, expiries.get());
+        advance(1);
+        assertEquals(2, expiries.get());
+    }
+
+    private void advance(int ticks) {
+        for (int tick = 0; tick < ticks; tick++) {
+            wheel.tick();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import Server.ai.TranspositionTable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TranspositionTableTest {
+
+    private TranspositionTable table;
+
+    @BeforeEach
+    void setUp() {
+        table = new TranspositionTable(1);
+    }
+
+    @Test
+    @DisplayName("A stored result is found again, with all its fields.")
+    void storeAndProbe() {
+        long key = 0x123456789ABCDEFL;
+        table.store(key, 7, TranspositionTable.LOWER_BOUND, 4, -2500);
+
+        long entry = table.probe(key);
+        assertEquals(7, TranspositionTable.getDepth(entry));
+        assertEquals(TranspositionTable.LOWER_BOUND, TranspositionTable.getBound(entry));
+        assertEquals(4, TranspositionTable.getMove(entry));
+        assertEquals(-2500, TranspositionTable.getScore(entry));
+        assertEquals(TranspositionTable.MISS, table.probe(key + 1));
+        assertEquals(0.5, table.getHitRate());
+    }
+
+    @Test
+    @DisplayName("A shallower result does not replace a deeper one from the same search.")
+    void keepsDeeperResult() {
+        long key = 42;
+        table.store(key, 9, TranspositionTable.EXACT, 2, 100);
+        table.store(key, 3, TranspositionTable.EXACT, 5, -100);
+        assertEquals(9, TranspositionTable.getDepth(table.probe(key)));
+
+        table.newSearch();
+        table.store(key, 3, TranspositionTable.EXACT, 5, -100);
+        assertEquals(3, TranspositionTable.getDepth(table.probe(key)));
+    }
+
+    @Test
+    @DisplayName("Memory is bounded by the configured size.")
+    void boundedCapacity() {
+        assertTrue(table.getCapacity() * 16L <= 1024 * 1024);
+        assertEquals(Integer.highestOneBit(table.getCapacity()), table.getCapacity());
+    }
+}
@@ -1,8 +1,16 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
+import Protocol.BinaryGameState;
+import Protocol.BinaryProtocol;
+import Protocol.CommandBatch;
+import Server.BoardGeometry;
 import Server.GameManager;
+import Server.GameSnapshot;
 import Server.networking.WebServer;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
@@ -11,14 +19,23 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 // Allows us to mock classes
 @ExtendWith(MockitoExtension.class)
@@ -48,7 +65,6 @@ public class WebServerTest {
     @DisplayName("/state endpoint returns status 200.")
     void testStateRequest() throws IOException {
         stubGameManagerStateMethods();
-        doReturn("fakeBoard").when(mockGameManager).getBoardStateAsText();
 
         HttpUriRequest request = new HttpGet(serverAddress + "/state");
         CloseableHttpClient httpClient = HttpClientBuilder.create().build();
@@ -61,7 +77,6 @@ public class WebServerTest {
     void checkStateResponseHeaders() throws IOException {
         String turn = "your turn";
         stubGameManagerStateMethods();
-        doReturn("fakeBoard").when(mockGameManager).getBoardStateAsText();
 
         HttpUriRequest request = new HttpGet(serverAddress + "/state");
         CloseableHttpClient httpClient = HttpClientBuilder.create().build();
@@ -73,6 +88,52 @@ public class WebServerTest {
         assertTrue(present);
     }
 
+    @Test
+    @DisplayName("/state answers 304 when the client already holds the current version.")
+    void testStateRequestNotModified() throws IOException {
+        doReturn(new GameSnapshot(7, List.of("first", "second"), "first", "",
+                BoardGeometry.STANDARD, "fakeBoard".getBytes(), new byte[16]))
+                .when(mockGameManager).getSnapshot();
+
+        HttpUriRequest request = new HttpGet(serverAddress + "/state");
+        request.setHeader("If-None-Match", "\"7\"");
+        HttpResponse response = HttpClientBuilder.create().build().execute(request);
+
+        assertEquals(304, response.getStatusLine().getStatusCode());
+        assertEquals("\"7\"", response.getFirstHeader("ETag").getValue());
+        assertNull(response.getEntity());
+    }
+
+    @Test
+    @DisplayName("/state answers clients that accept the binary encoding with one binary body.")
+    void testBinaryStateRequest() throws IOException {
+        stubGameManagerStateMethods();
+
+        HttpUriRequest request = new HttpGet(serverAddress + "/state");
+        request.setHeader("Accept", BinaryProtocol.MEDIA_TYPE);
+        HttpResponse response = HttpClientBuilder.create().build().execute(request);
+
+        assertEquals(BinaryProtocol.MEDIA_TYPE, response.getFirstHeader("Content-Type").getValue());
+        assertNull(response.getFirstHeader("X-Player-Turn"));
+        BinaryGameState state = BinaryProtocol.decodeState(EntityUtils.toByteArray(response.getEntity()));
+        assertEquals(3, state.getStateVersion());
+        assertEquals("your turn", state.getPlayerTurn());
+        assertEquals("fakeName", state.getWinner());
+    }
+
+    @Test
+    @DisplayName("/move takes a binary column counted from 0.")
+    void testBinaryMoveRequest() throws IOException {
+        HttpPost request = new HttpPost(serverAddress + "/move");
+        request.setEntity(new ByteArrayEntity(BinaryProtocol.encodeMove(3)));
+        request.setHeader("Content-Type", BinaryProtocol.MEDIA_TYPE);
+        doReturn(GameManager.MoveResult.MADE).when(mockGameManager).handlePlayerMove(GameManager.NO_PLAYER_ID, 3);
+        HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
+
+        verify(mockGameManager).handlePlayerMove(GameManager.NO_PLAYER_ID, 3);
+        assertEquals(200, httpResponse.getStatusLine().getStatusCode());
+    }
+
     @Test
     @DisplayName("/move endpoint calls handlePlayerMove and returns status 200.")
     void testMoveRequest() throws IOException {
@@ -83,19 +144,38 @@ public class WebServerTest {
         HttpPost request = new HttpPost(serverAddress + "/move");
         // Assign column choice to request body
         request.setEntity(new StringEntity(columnText));
+        doReturn(GameManager.MoveResult.MADE).when(mockGameManager)
+                .handlePlayerMove(GameManager.NO_PLAYER_ID, columnInt);
         HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
 
-        verify(mockGameManager).handlePlayerMove(columnInt);
+        verify(mockGameManager).handlePlayerMove(GameManager.NO_PLAYER_ID, columnInt);
         assertEquals(200, httpResponse.getStatusLine().getStatusCode());
     }
 
+    @Test
+    @DisplayName("/move into a full or missing column returns status 400.")
+    void testInvalidMoveRequest() throws IOException {
+        HttpPost request = new HttpPost(serverAddress + "/move");
+        request.setEntity(new StringEntity("10"));
+        doReturn(GameManager.MoveResult.INVALID_COLUMN).when(mockGameManager)
+                .handlePlayerMove(GameManager.NO_PLAYER_ID, 9);
+        HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
+
+        assertEquals(400, httpResponse.getStatusLine().getStatusCode());
+        assertEquals("Invalid move.", EntityUtils.toString(httpResponse.getEntity()));
+    }
+
     @Test
     @DisplayName("/join endpoint returns status 200")
     void testJoinEndpoint() throws IOException {
         doReturn(1).when(mockGameManager).numberOfPlayers();
         doReturn("players").when(mockGameManager).getPlayers();
-
         String name = "mockName";
+        doReturn(true).when(mockGameManager).addPlayer(anyInt(), eq(name));
+        doReturn(new GameSnapshot(1, List.of(name), name, "",
+                BoardGeometry.STANDARD, "fakeBoard".getBytes(), new byte[16]))
+                .when(mockGameManager).getSnapshot();
+
         // Create Http request to /join
         HttpPost request = new HttpPost(serverAddress + "/join");
         // Assign name to request body
@@ -103,6 +183,7 @@ public class WebServerTest {
         HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
 
         assertEquals(200, httpResponse.getStatusLine().getStatusCode());
+        assertEquals(16, httpResponse.getFirstHeader("X-Session-Token").getValue().length());
     }
 
     @Test
@@ -133,7 +214,286 @@ public class WebServerTest {
         request.setEntity(new StringEntity(mockName));
         HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
         // verify that local name is passed to addPlayer
-        verify(mockGameManager).addPlayer(mockName);
+        verify(mockGameManager).addPlayer(anyInt(), eq(mockName));
+    }
+
+    @Test
+    @DisplayName("/join with game=new creates a separate game and returns its id.")
+    void testJoinNewGame() throws IOException {
+        HttpPost request = new HttpPost(serverAddress + "/join?game=new");
+        request.setEntity(new StringEntity("mocky"));
+        HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
+
+        long gameId = Long.parseLong(httpResponse.getFirstHeader("X-Game-Id").getValue());
+        assertTrue(gameId > 0);
+        assertEquals(1, webServer.getGameRegistry().getGame(gameId).numberOfPlayers());
+        verify(mockGameManager, never()).addPlayer(anyInt(), anyString());
+    }
+
+    @Test
+    @DisplayName("/join with vs=server seats the computer as the second player.")
+    void testJoinVersusServer() throws IOException {
+        HttpPost request = new HttpPost(serverAddress + "/join?game=new&vs=server");
+        request.setEntity(new StringEntity("mocky"));
+        HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
+
+        long gameId = Long.parseLong(httpResponse.getFirstHeader("X-Game-Id").getValue());
+        GameManager game = webServer.getGameRegistry().getGame(gameId);
+        assertEquals(List.of("mocky", "Computer"), game.getPlayerNames());
+        assertEquals("mocky", game.getPlayerTurn());
+    }
+
+    @Test
+    @DisplayName("/join creates a new game with the requested board size and win length.")
+    void testJoinWithBoardSize() throws IOException {
+        HttpPost request = new HttpPost(serverAddress + "/join?game=new&rows=19&cols=19&win=6");
+        request.setEntity(new StringEntity("mocky"));
+        HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
+
+        long gameId = Long.parseLong(httpResponse.getFirstHeader("X-Game-Id").getValue());
+        GameManager game = webServer.getGameRegistry().getGame(gameId);
+        assertEquals(BoardGeometry.of(19, 19, 6), game.getBoardGeometry());
+
+        HttpResponse state = HttpClientBuilder.create().build()
+                .execute(new HttpGet(serverAddress + "/state?game=" + gameId));
+        assertEquals("19x19", state.getFirstHeader("X-Board-Size").getValue());
+        assertEquals("6", state.getFirstHeader("X-Win-Length").getValue());
+
+        HttpPost unwinnable = new HttpPost(serverAddress + "/join?game=new&rows=4&cols=4&win=5");
+        unwinnable.setEntity(new StringEntity("mocky"));
+        assertEquals(400, HttpClientBuilder.create().build().execute(unwinnable).getStatusLine().getStatusCode());
+    }
+
+    @Test
+    @DisplayName("/join with game=match waits for an opponent and seats both in a fresh game.")
+    void testJoinLobby() throws Exception {
+        CompletableFuture<HttpResponse> first = CompletableFuture.supplyAsync(() -> join("/join?game=match", "first"));
+        HttpResponse second = join("/join?game=match", "second");
+        HttpResponse firstResponse = first.get(5, TimeUnit.SECONDS);
+
+        String gameId = second.getFirstHeader("X-Game-Id").getValue();
+        assertEquals(gameId, firstResponse.getFirstHeader("X-Game-Id").getValue());
+        GameManager game = webServer.getGameRegistry().getGame(Long.parseLong(gameId));
+        // Either request may reach the lobby first.
+        assertEquals(2, game.numberOfPlayers());
+        assertTrue(game.getPlayerNames().containsAll(List.of("first", "second")));
+        verify(mockGameManager, never()).addPlayer(anyInt(), anyString());
+    }
+
+    private HttpResponse join(String path, String name) {
+        try {
+            HttpPost request = new HttpPost(serverAddress + path);
+            request.setEntity(new StringEntity(name));
+            return HttpClientBuilder.create().build().execute(request);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    @DisplayName("/batch applies its commands in order and answers with one result per command.")
+    void testBatchRequest() throws IOException {
+        CommandBatch batch = new CommandBatch()
+                .join(CommandBatch.NEW_GAME, "first", "rows=6", "cols=7", "win=4")
+                .join(CommandBatch.LAST_JOINED_GAME, "second")
+                .move(CommandBatch.LAST_JOINED_GAME, 1)
+                .move(CommandBatch.LAST_JOINED_GAME, 2)
+                .move(CommandBatch.LAST_JOINED_GAME, 1)
+                .state(CommandBatch.LAST_JOINED_GAME)
+                .state("12345");
+        HttpPost request = new HttpPost(serverAddress + "/batch");
+        request.setEntity(new ByteArrayEntity(batch.toBytes()));
+        HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
+        List<String[]> results = CommandBatch.parse(EntityUtils.toString(httpResponse.getEntity()));
+
+        assertEquals(batch.size(), results.size());
+        assertEquals(CommandBatch.OK, results.get(0)[0]);
+        String gameId = results.get(0)[1];
+        assertArrayEquals(new String[] {CommandBatch.OK, gameId}, results.get(1));
+        assertArrayEquals(new String[] {CommandBatch.OK}, results.get(4));
+        assertArrayEquals(new String[] {CommandBatch.STATE, gameId, "5", "second", "false", "", "xx/o/////"},
+                results.get(5));
+        assertArrayEquals(new String[] {CommandBatch.ERROR, "Game not found."}, results.get(6));
+    }
+
+    @Test
+    @DisplayName("/metrics reports request latencies and game totals in the Prometheus text format.")
+    void testMetricsRequest() throws IOException {
+        HttpResponse joined = join("/join?game=new", "mocky");
+        String gameId = joined.getFirstHeader("X-Game-Id").getValue();
+        join("/join?game=" + gameId, "second");
+        HttpPost moveRequest = new HttpPost(serverAddress + "/move");
+        moveRequest.setHeader("X-Session-Token", joined.getFirstHeader("X-Session-Token").getValue());
+        moveRequest.setEntity(new StringEntity("3"));
+        HttpClientBuilder.create().build().execute(moveRequest);
+
+        HttpResponse httpResponse = HttpClientBuilder.create().build().execute(new HttpGet(serverAddress + "/metrics"));
+        String metrics = EntityUtils.toString(httpResponse.getEntity());
+
+        assertEquals(200, httpResponse.getStatusLine().getStatusCode());
+        assertTrue(httpResponse.getFirstHeader("Content-Type").getValue().startsWith("text/plain; version=0.0.4"));
+        assertTrue(metrics.contains("# TYPE fiveinarow_request_duration_seconds histogram\n"));
+        assertTrue(metrics.contains("fiveinarow_request_duration_seconds_bucket{endpoint=\"/move\",le=\"+Inf\"}"));
+        assertTrue(metrics.contains("fiveinarow_games_active 2\n"));
+        assertTrue(metrics.contains("fiveinarow_players_active 2\n"));
+        assertTrue(metrics.contains("fiveinarow_moves_total 1\n"));
+        assertTrue(metrics.contains("fiveinarow_wins_total 0\n"));
+    }
+
+    @Test
+    @DisplayName("/state endpoint returns 404 for an unknown game.")
+    void testStateRequestForUnknownGame() throws IOException {
+        HttpUriRequest request = new HttpGet(serverAddress + "/state?game=12345");
+        HttpResponse httpResponse = HttpClientBuilder.create().build().execute(request);
+        assertEquals(404, httpResponse.getStatusLine().getStatusCode());
+    }
+
+    @Test
+    @DisplayName("/state with a since version is answered once the game changes.")
+    void testLongPollStateRequest() throws Exception {
+        HttpPost joinRequest = new HttpPost(serverAddress + "/join?game=new");
+        joinRequest.setEntity(new StringEntity("first"));
+        String gameId = HttpClientBuilder.create().build().execute(joinRequest)
+                .getFirstHeader("X-Game-Id").getValue();
+        long version = webServer.getGameRegistry().getGame(Long.parseLong(gameId)).getStateVersion();
+
+        // Park a long poll, then let a second player join.
+        CompletableFuture<HttpResponse> longPoll = CompletableFuture.supplyAsync(() -> {
+            try {
+                HttpGet request = new HttpGet(serverAddress + "/state?game=" + gameId + "&since=" + version);
+                return HttpClientBuilder.create().build().execute(request);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(longPoll.isDone());
+
+        HttpPost secondJoin = new HttpPost(serverAddress + "/join?game=" + gameId);
+        secondJoin.setEntity(new StringEntity("second"));
+        HttpClientBuilder.create().build().execute(secondJoin);
+
+        HttpResponse response = longPoll.get(5, TimeUnit.SECONDS);
+        assertEquals("false", response.getFirstHeader("X-Waiting").getValue());
+        assertEquals(String.valueOf(version + 1), response.getFirstHeader("X-State-Version").getValue());
+    }
+
+    @Test
+    @DisplayName("/stream starts with the current state and then pushes game events.")
+    void testEventStream() throws Exception {
+        HttpPost joinRequest = new HttpPost(serverAddress + "/join?game=new");
+        joinRequest.setEntity(new StringEntity("first"));
+        String gameId = HttpClientBuilder.create().build().execute(joinRequest)
+                .getFirstHeader("X-Game-Id").getValue();
+
+        HttpResponse streamResponse = HttpClientBuilder.create().build()
+                .execute(new HttpGet(serverAddress + "/stream?game=" + gameId));
+        BufferedReader events = new BufferedReader(
+                new InputStreamReader(streamResponse.getEntity().getContent()));
+        assertEquals("event: state", events.readLine());
+
+        HttpPost secondJoin = new HttpPost(serverAddress + "/join?game=" + gameId);
+        secondJoin.setEntity(new StringEntity("second"));
+        HttpClientBuilder.create().build().execute(secondJoin);
+
+        String line;
+        do {
+            line = events.readLine();
+        } while (!line.startsWith("event: join"));
+        events.readLine();
+        assertEquals("data: second", events.readLine());
+    }
+
+    @Test
+    @DisplayName("/watch streams the latest state and board to a spectator without seating them.")
+    void testWatchStream() throws Exception {
+        HttpResponse joined = join("/join?game=new", "first");
+        String gameId = joined.getFirstHeader("X-Game-Id").getValue();
+
+        HttpResponse watchResponse = HttpClientBuilder.create().build()
+                .execute(new HttpGet(serverAddress + "/watch?game=" + gameId));
+        BufferedReader events = new BufferedReader(
+                new InputStreamReader(watchResponse.getEntity().getContent()));
+        assertEquals("event: state", events.readLine());
+        assertEquals("id: 1", events.readLine());
+
+        HttpPost secondJoin = new HttpPost(serverAddress + "/join?game=" + gameId);
+        secondJoin.setEntity(new StringEntity("second"));
+        HttpClientBuilder.create().build().execute(secondJoin);
+        HttpPost move = new HttpPost(serverAddress + "/move");
+        move.setHeader("X-Session-Token", joined.getFirstHeader("X-Session-Token").getValue());
+        move.setEntity(new StringEntity("3"));
+        HttpClientBuilder.create().build().execute(move);
+
+        // Both changes arrive as the latest state, or one after the other.
+        String line;
+        do {
+            line = events.readLine();
+        } while (!line.equals("id: 3"));
+        assertEquals("data: 1 second", events.readLine());
+        do {
+            line = events.readLine();
+        } while (!line.equals("event: board"));
+        events.readLine();
+        String bottomRow = null;
+        while (!(line = events.readLine()).isEmpty()) {
+            bottomRow = line;
+        }
+        assertEquals("data: [ ][ ][x][ ][ ][ ][ ][ ][ ]", bottomRow);
+        assertEquals(2, webServer.getGameRegistry().getGame(Long.parseLong(gameId)).numberOfPlayers());
+    }
+
+    @Test
+    @DisplayName("/move and /quit with a session token act only for the player the token was issued to.")
+    void testSessionToken() throws IOException {
+        HttpResponse first = join("/join?game=new", "first");
+        String gameId = first.getFirstHeader("X-Game-Id").getValue();
+        HttpResponse second = join("/join?game=" + gameId, "second");
+        String secondToken = second.getFirstHeader("X-Session-Token").getValue();
+        GameManager game = webServer.getGameRegistry().getGame(Long.parseLong(gameId));
+
+        assertEquals(409, post("/move", secondToken, "1").getStatusLine().getStatusCode());
+        assertEquals(409, post("/move?game=" + gameId, null, "1").getStatusLine().getStatusCode());
+        assertEquals(2, game.getStateVersion());
+        assertEquals(401, post("/move", "0123456789abcdef", "1").getStatusLine().getStatusCode());
+        String batchMove = new String(new CommandBatch().move(gameId, 1).toBytes(), StandardCharsets.UTF_8);
+        List<String[]> results = CommandBatch.parse(EntityUtils.toString(post("/batch", null, batchMove).getEntity()));
+        assertArrayEquals(new String[] {CommandBatch.ERROR, "Not your turn."}, results.get(0));
+        assertEquals(2, game.getStateVersion());
+
+        assertEquals(200, post("/quit", secondToken, "first").getStatusLine().getStatusCode());
+        assertEquals(List.of("first"), game.getPlayerNames());
+        assertEquals(401, post("/quit", secondToken, "second").getStatusLine().getStatusCode());
+    }
+
+    @Test
+    @DisplayName("/join and /state tell two players of the same name apart by their seats.")
+    void testSeatHeaders() throws IOException {
+        HttpResponse first = join("/join?game=new", "twin");
+        String gameId = first.getFirstHeader("X-Game-Id").getValue();
+        HttpResponse second = join("/join?game=" + gameId, "twin");
+        assertEquals("0", first.getFirstHeader("X-Seat").getValue());
+        assertEquals("1", second.getFirstHeader("X-Seat").getValue());
+
+        String firstToken = first.getFirstHeader("X-Session-Token").getValue();
+        assertEquals(200, post("/move", firstToken, "1").getStatusLine().getStatusCode());
+        HttpGet stateRequest = new HttpGet(serverAddress + "/state?game=" + gameId);
+        stateRequest.setHeader("X-Session-Token", second.getFirstHeader("X-Session-Token").getValue());
+        HttpResponse state = HttpClientBuilder.create().build().execute(stateRequest);
+        assertEquals("1", state.getFirstHeader("X-Player-Turn-Seat").getValue());
+        assertEquals("1", state.getFirstHeader("X-Seat").getValue());
+
+        // The second player moves up to the first seat once the first one leaves.
+        post("/quit", firstToken, "twin");
+        state = HttpClientBuilder.create().build().execute(stateRequest);
+        assertEquals("0", state.getFirstHeader("X-Seat").getValue());
+    }
+
+    private HttpResponse post(String path, String sessionToken, String body) throws IOException {
+        HttpPost request = new HttpPost(serverAddress + path);
+        if (sessionToken != null) request.setHeader("X-Session-Token", sessionToken);
+        request.setEntity(new StringEntity(body));
+        return HttpClientBuilder.create().build().execute(request);
     }
 
     @Test
@@ -168,9 +528,9 @@ public class WebServerTest {
 
     void stubGameManagerStateMethods() {
         // Return random values from mock method invocations
-        doReturn("your turn").when(mockGameManager).getPlayerTurn();
-        doReturn(2).when(mockGameManager).numberOfPlayers();
-        doReturn("fakeName").when(mockGameManager).getWinner();
+        GameSnapshot snapshot = new GameSnapshot(3, List.of("your turn", "fakeName"),
+                "your turn", "fakeName", BoardGeometry.STANDARD, "fakeBoard".getBytes(), new byte[16]);
+        doReturn(snapshot).when(mockGameManager).getSnapshot();
     }
 
     @AfterEach